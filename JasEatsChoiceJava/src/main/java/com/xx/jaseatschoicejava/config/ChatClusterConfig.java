@@ -0,0 +1,40 @@
+package com.xx.jaseatschoicejava.config;
+
+import com.xx.jaseatschoicejava.netty.cluster.ClusterTransport;
+import com.xx.jaseatschoicejava.netty.cluster.InMemoryClusterTransport;
+import com.xx.jaseatschoicejava.netty.cluster.RedisClusterTransport;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * 聊天集群通信配置
+ * 启用多节点部署（netty.cluster.enabled=true）时使用Redis登记在线状态并中转跨节点消息，否则使用进程内实现
+ */
+@Configuration
+public class ChatClusterConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "netty.cluster.enabled", havingValue = "true")
+    public RedisMessageListenerContainer chatClusterListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "netty.cluster.enabled", havingValue = "true")
+    public ClusterTransport redisClusterTransport(StringRedisTemplate redisTemplate,
+                                                  RedisMessageListenerContainer chatClusterListenerContainer) {
+        return new RedisClusterTransport(redisTemplate, chatClusterListenerContainer);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "netty.cluster.enabled", havingValue = "false", matchIfMissing = true)
+    public ClusterTransport localClusterTransport() {
+        return new InMemoryClusterTransport();
+    }
+}
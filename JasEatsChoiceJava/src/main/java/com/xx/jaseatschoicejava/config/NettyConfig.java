@@ -30,12 +30,90 @@ public class NettyConfig {
     @Value("${netty.workerGroup.threads:8}")
     private int workerGroupThreads;
 
+    /**
+     * 业务线程模式：group（固定大小线程池）或 virtual（虚拟线程，每个连接串行执行）
+     */
+    @Value("${netty.executor.mode:group}")
+    private String executorMode;
+
+    /**
+     * group模式下的业务线程数
+     */
+    @Value("${netty.executor.groupThreads:16}")
+    private int executorGroupThreads;
+
     /**
      * 最大帧长度
      */
     @Value("${netty.maxFrameLength:65536}")
     private int maxFrameLength;
 
+    /**
+     * WebSocket握手HTTP请求的最大内容长度
+     */
+    @Value("${netty.maxContentLength:65536}")
+    private int maxContentLength;
+
+    /**
+     * 是否启用WebSocket permessage-deflate压缩
+     */
+    @Value("${netty.compression.enabled:true}")
+    private boolean compressionEnabled;
+
+    /**
+     * 压缩级别（0-9）
+     */
+    @Value("${netty.compression.level:6}")
+    private int compressionLevel;
+
+    /**
+     * 压缩阈值（字节），小于该长度的帧不压缩
+     */
+    @Value("${netty.compression.threshold:1024}")
+    private int compressionThreshold;
+
+    /**
+     * 写缓冲区低水位（字节），待发送数据回落到该值以下时Channel恢复可写
+     */
+    @Value("${netty.writeBuffer.lowWaterMark:32768}")
+    private int writeBufferLowWaterMark;
+
+    /**
+     * 写缓冲区高水位（字节），待发送数据超过该值时Channel变为不可写
+     */
+    @Value("${netty.writeBuffer.highWaterMark:65536}")
+    private int writeBufferHighWaterMark;
+
+    /**
+     * 合并flush时最多累积的flush次数，达到后立即flush；0表示不合并
+     */
+    @Value("${netty.flushConsolidation.maxFlushes:256}")
+    private int flushConsolidationMaxFlushes;
+
+    /**
+     * Channel不可写时每个Channel最多暂存的消息数
+     */
+    @Value("${netty.slowConsumer.pendingLimit:256}")
+    private int slowConsumerPendingLimit;
+
+    /**
+     * 暂存队列已满时的处理策略：drop(丢弃)、spill(转存离线消息)、disconnect(断开连接)
+     */
+    @Value("${netty.slowConsumer.policy:spill}")
+    private String slowConsumerPolicy;
+
+    /**
+     * 读空闲检测时间（秒），超过该时间未收到数据则发送Ping
+     */
+    @Value("${netty.heartbeat.readerIdleSeconds:60}")
+    private int heartbeatReaderIdleSeconds;
+
+    /**
+     * 连续多少次Ping未收到任何数据后关闭连接
+     */
+    @Value("${netty.heartbeat.maxMissed:2}")
+    private int heartbeatMaxMissed;
+
     /**
      * 长度字段偏移量
      */
@@ -60,6 +138,157 @@ public class NettyConfig {
     @Value("${netty.initialBytesToStrip:4}")
     private int initialBytesToStrip;
 
+    /**
+     * 离线消息写入队列容量，队列满时退化为同步写库
+     */
+    @Value("${netty.offline.queueCapacity:10000}")
+    private int offlineQueueCapacity;
+
+    /**
+     * 离线消息批量写入的最大条数
+     */
+    @Value("${netty.offline.batchSize:200}")
+    private int offlineBatchSize;
+
+    /**
+     * 离线消息批量写入的最长等待时间（毫秒）
+     */
+    @Value("${netty.offline.flushIntervalMs:200}")
+    private long offlineFlushIntervalMs;
+
+    /**
+     * 用户上线补发离线消息时每页的条数
+     */
+    @Value("${netty.offline.replayPageSize:100}")
+    private int offlineReplayPageSize;
+
+    /**
+     * 是否启用多节点部署，启用后在线状态与跨节点消息经由Redis中转
+     */
+    @Value("${netty.cluster.enabled:false}")
+    private boolean clusterEnabled;
+
+    /**
+     * 当前节点ID，为空时启动时随机生成
+     */
+    @Value("${netty.cluster.nodeId:}")
+    private String clusterNodeId;
+
+    /**
+     * 在线状态有效期（毫秒），节点需在有效期内续期，宕机节点上的用户到期后视为离线
+     */
+    @Value("${netty.cluster.presenceTtlMs:30000}")
+    private long clusterPresenceTtlMs;
+
+    /**
+     * 是否要求接收方确认（client_ack），未确认的消息超时重传，多次未确认后转存离线消息；
+     * 开启后也只跟踪发送过client_ack的连接
+     */
+    @Value("${netty.ack.enabled:false}")
+    private boolean ackEnabled;
+
+    /**
+     * 等待接收方确认的超时时间（毫秒）
+     */
+    @Value("${netty.ack.timeoutMs:5000}")
+    private long ackTimeoutMs;
+
+    /**
+     * 超时后的最大重传次数
+     */
+    @Value("${netty.ack.maxRetries:2}")
+    private int ackMaxRetries;
+
+    /**
+     * 每个Channel最多同时等待确认的消息数，超出的消息排队等待
+     */
+    @Value("${netty.ack.windowSize:64}")
+    private int ackWindowSize;
+
+    /**
+     * 是否限制客户端的发送频率
+     */
+    @Value("${netty.rateLimit.enabled:true}")
+    private boolean rateLimitEnabled;
+
+    /**
+     * 每个连接的令牌桶容量，即允许的突发消息数
+     */
+    @Value("${netty.rateLimit.channel.burst:20}")
+    private int rateLimitChannelBurst;
+
+    /**
+     * 每个连接每秒补充的令牌数
+     */
+    @Value("${netty.rateLimit.channel.ratePerSecond:10}")
+    private double rateLimitChannelRatePerSecond;
+
+    /**
+     * 每个用户（所有设备合计）的令牌桶容量
+     */
+    @Value("${netty.rateLimit.user.burst:40}")
+    private int rateLimitUserBurst;
+
+    /**
+     * 每个用户每秒补充的令牌数
+     */
+    @Value("${netty.rateLimit.user.ratePerSecond:20}")
+    private double rateLimitUserRatePerSecond;
+
+    /**
+     * 一条群消息消耗的令牌数
+     */
+    @Value("${netty.rateLimit.groupCost:5}")
+    private int rateLimitGroupCost;
+
+    /**
+     * 超限处理策略：error(回复错误消息)、drop(直接丢弃)
+     */
+    @Value("${netty.rateLimit.policy:error}")
+    private String rateLimitPolicy;
+
+    /**
+     * 头像更新通知的合并窗口（毫秒），窗口内多次更换头像只通知最后一次
+     */
+    @Value("${netty.avatarNotify.coalesceMs:2000}")
+    private long avatarNotifyCoalesceMs;
+
+    /**
+     * 好友关系缓存有效期（毫秒）
+     */
+    @Value("${netty.avatarNotify.friendCacheTtlMs:300000}")
+    private long avatarNotifyFriendCacheTtlMs;
+
+    /**
+     * 是否支持断线重连后恢复会话，恢复窗口内的离线消息先进入缓冲区
+     */
+    @Value("${netty.resume.enabled:true}")
+    private boolean resumeEnabled;
+
+    /**
+     * 恢复窗口（毫秒），连接断开后在该时间内携带令牌重连可以恢复会话
+     */
+    @Value("${netty.resume.windowMs:60000}")
+    private long resumeWindowMs;
+
+    /**
+     * 每个用户的缓冲区最多容纳的消息数，超出后直接写库，恢复时改为从数据库补发
+     */
+    @Value("${netty.resume.bufferSize:200}")
+    private int resumeBufferSize;
+
+    /**
+     * 停机时通知客户端重连的最大随机延迟（毫秒），客户端在0到该值之间随机等待后重连，避免同时重连
+     */
+    @Value("${netty.drain.reconnectJitterMs:30000}")
+    private long drainReconnectJitterMs;
+
+    /**
+     * 停机时等待连接全部关闭的最长时间（毫秒）
+     */
+    @Value("${netty.drain.timeoutMs:10000}")
+    private long drainTimeoutMs;
+
     public int getPort() {
         return port;
     }
@@ -92,6 +321,86 @@ public class NettyConfig {
         this.maxFrameLength = maxFrameLength;
     }
 
+    public int getMaxContentLength() {
+        return maxContentLength;
+    }
+
+    public void setMaxContentLength(int maxContentLength) {
+        this.maxContentLength = maxContentLength;
+    }
+
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    public void setCompressionEnabled(boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public int getWriteBufferLowWaterMark() {
+        return writeBufferLowWaterMark;
+    }
+
+    public void setWriteBufferLowWaterMark(int writeBufferLowWaterMark) {
+        this.writeBufferLowWaterMark = writeBufferLowWaterMark;
+    }
+
+    public int getWriteBufferHighWaterMark() {
+        return writeBufferHighWaterMark;
+    }
+
+    public void setWriteBufferHighWaterMark(int writeBufferHighWaterMark) {
+        this.writeBufferHighWaterMark = writeBufferHighWaterMark;
+    }
+
+    public int getSlowConsumerPendingLimit() {
+        return slowConsumerPendingLimit;
+    }
+
+    public void setSlowConsumerPendingLimit(int slowConsumerPendingLimit) {
+        this.slowConsumerPendingLimit = slowConsumerPendingLimit;
+    }
+
+    public String getSlowConsumerPolicy() {
+        return slowConsumerPolicy;
+    }
+
+    public void setSlowConsumerPolicy(String slowConsumerPolicy) {
+        this.slowConsumerPolicy = slowConsumerPolicy;
+    }
+
+    public int getHeartbeatReaderIdleSeconds() {
+        return heartbeatReaderIdleSeconds;
+    }
+
+    public void setHeartbeatReaderIdleSeconds(int heartbeatReaderIdleSeconds) {
+        this.heartbeatReaderIdleSeconds = heartbeatReaderIdleSeconds;
+    }
+
+    public int getHeartbeatMaxMissed() {
+        return heartbeatMaxMissed;
+    }
+
+    public void setHeartbeatMaxMissed(int heartbeatMaxMissed) {
+        this.heartbeatMaxMissed = heartbeatMaxMissed;
+    }
+
     public int getLengthFieldOffset() {
         return lengthFieldOffset;
     }
@@ -123,5 +432,228 @@ public class NettyConfig {
     public void setInitialBytesToStrip(int initialBytesToStrip) {
         this.initialBytesToStrip = initialBytesToStrip;
     }
-}
 
+    public int getOfflineQueueCapacity() {
+        return offlineQueueCapacity;
+    }
+
+    public void setOfflineQueueCapacity(int offlineQueueCapacity) {
+        this.offlineQueueCapacity = offlineQueueCapacity;
+    }
+
+    public int getOfflineBatchSize() {
+        return offlineBatchSize;
+    }
+
+    public void setOfflineBatchSize(int offlineBatchSize) {
+        this.offlineBatchSize = offlineBatchSize;
+    }
+
+    public long getOfflineFlushIntervalMs() {
+        return offlineFlushIntervalMs;
+    }
+
+    public void setOfflineFlushIntervalMs(long offlineFlushIntervalMs) {
+        this.offlineFlushIntervalMs = offlineFlushIntervalMs;
+    }
+
+    public int getOfflineReplayPageSize() {
+        return offlineReplayPageSize;
+    }
+
+    public void setOfflineReplayPageSize(int offlineReplayPageSize) {
+        this.offlineReplayPageSize = offlineReplayPageSize;
+    }
+
+    public boolean isClusterEnabled() {
+        return clusterEnabled;
+    }
+
+    public void setClusterEnabled(boolean clusterEnabled) {
+        this.clusterEnabled = clusterEnabled;
+    }
+
+    public String getClusterNodeId() {
+        return clusterNodeId;
+    }
+
+    public void setClusterNodeId(String clusterNodeId) {
+        this.clusterNodeId = clusterNodeId;
+    }
+
+    public long getClusterPresenceTtlMs() {
+        return clusterPresenceTtlMs;
+    }
+
+    public void setClusterPresenceTtlMs(long clusterPresenceTtlMs) {
+        this.clusterPresenceTtlMs = clusterPresenceTtlMs;
+    }
+
+    public boolean isAckEnabled() {
+        return ackEnabled;
+    }
+
+    public void setAckEnabled(boolean ackEnabled) {
+        this.ackEnabled = ackEnabled;
+    }
+
+    public long getAckTimeoutMs() {
+        return ackTimeoutMs;
+    }
+
+    public void setAckTimeoutMs(long ackTimeoutMs) {
+        this.ackTimeoutMs = ackTimeoutMs;
+    }
+
+    public int getAckMaxRetries() {
+        return ackMaxRetries;
+    }
+
+    public void setAckMaxRetries(int ackMaxRetries) {
+        this.ackMaxRetries = ackMaxRetries;
+    }
+
+    public int getAckWindowSize() {
+        return ackWindowSize;
+    }
+
+    public void setAckWindowSize(int ackWindowSize) {
+        this.ackWindowSize = ackWindowSize;
+    }
+
+    public int getFlushConsolidationMaxFlushes() {
+        return flushConsolidationMaxFlushes;
+    }
+
+    public void setFlushConsolidationMaxFlushes(int flushConsolidationMaxFlushes) {
+        this.flushConsolidationMaxFlushes = flushConsolidationMaxFlushes;
+    }
+
+    public String getExecutorMode() {
+        return executorMode;
+    }
+
+    public void setExecutorMode(String executorMode) {
+        this.executorMode = executorMode;
+    }
+
+    public int getExecutorGroupThreads() {
+        return executorGroupThreads;
+    }
+
+    public void setExecutorGroupThreads(int executorGroupThreads) {
+        this.executorGroupThreads = executorGroupThreads;
+    }
+
+    public boolean isRateLimitEnabled() {
+        return rateLimitEnabled;
+    }
+
+    public void setRateLimitEnabled(boolean rateLimitEnabled) {
+        this.rateLimitEnabled = rateLimitEnabled;
+    }
+
+    public int getRateLimitChannelBurst() {
+        return rateLimitChannelBurst;
+    }
+
+    public void setRateLimitChannelBurst(int rateLimitChannelBurst) {
+        this.rateLimitChannelBurst = rateLimitChannelBurst;
+    }
+
+    public double getRateLimitChannelRatePerSecond() {
+        return rateLimitChannelRatePerSecond;
+    }
+
+    public void setRateLimitChannelRatePerSecond(double rateLimitChannelRatePerSecond) {
+        this.rateLimitChannelRatePerSecond = rateLimitChannelRatePerSecond;
+    }
+
+    public int getRateLimitUserBurst() {
+        return rateLimitUserBurst;
+    }
+
+    public void setRateLimitUserBurst(int rateLimitUserBurst) {
+        this.rateLimitUserBurst = rateLimitUserBurst;
+    }
+
+    public double getRateLimitUserRatePerSecond() {
+        return rateLimitUserRatePerSecond;
+    }
+
+    public void setRateLimitUserRatePerSecond(double rateLimitUserRatePerSecond) {
+        this.rateLimitUserRatePerSecond = rateLimitUserRatePerSecond;
+    }
+
+    public int getRateLimitGroupCost() {
+        return rateLimitGroupCost;
+    }
+
+    public void setRateLimitGroupCost(int rateLimitGroupCost) {
+        this.rateLimitGroupCost = rateLimitGroupCost;
+    }
+
+    public String getRateLimitPolicy() {
+        return rateLimitPolicy;
+    }
+
+    public void setRateLimitPolicy(String rateLimitPolicy) {
+        this.rateLimitPolicy = rateLimitPolicy;
+    }
+
+    public long getAvatarNotifyCoalesceMs() {
+        return avatarNotifyCoalesceMs;
+    }
+
+    public void setAvatarNotifyCoalesceMs(long avatarNotifyCoalesceMs) {
+        this.avatarNotifyCoalesceMs = avatarNotifyCoalesceMs;
+    }
+
+    public long getAvatarNotifyFriendCacheTtlMs() {
+        return avatarNotifyFriendCacheTtlMs;
+    }
+
+    public void setAvatarNotifyFriendCacheTtlMs(long avatarNotifyFriendCacheTtlMs) {
+        this.avatarNotifyFriendCacheTtlMs = avatarNotifyFriendCacheTtlMs;
+    }
+
+    public boolean isResumeEnabled() {
+        return resumeEnabled;
+    }
+
+    public void setResumeEnabled(boolean resumeEnabled) {
+        this.resumeEnabled = resumeEnabled;
+    }
+
+    public long getResumeWindowMs() {
+        return resumeWindowMs;
+    }
+
+    public void setResumeWindowMs(long resumeWindowMs) {
+        this.resumeWindowMs = resumeWindowMs;
+    }
+
+    public int getResumeBufferSize() {
+        return resumeBufferSize;
+    }
+
+    public void setResumeBufferSize(int resumeBufferSize) {
+        this.resumeBufferSize = resumeBufferSize;
+    }
+
+    public long getDrainReconnectJitterMs() {
+        return drainReconnectJitterMs;
+    }
+
+    public void setDrainReconnectJitterMs(long drainReconnectJitterMs) {
+        this.drainReconnectJitterMs = drainReconnectJitterMs;
+    }
+
+    public long getDrainTimeoutMs() {
+        return drainTimeoutMs;
+    }
+
+    public void setDrainTimeoutMs(long drainTimeoutMs) {
+        this.drainTimeoutMs = drainTimeoutMs;
+    }
+}
@@ -1,14 +1,17 @@
 package com.xx.jaseatschoicejava.controller;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
-import java.util.List;
-import java.util.Map;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
+import java.util.Map;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.xx.jaseatschoicejava.common.ResponseResult;
+import com.xx.jaseatschoicejava.entity.ChatConversation;
 import com.xx.jaseatschoicejava.entity.ChatMsg;
+import com.xx.jaseatschoicejava.enums.MsgType;
+import com.xx.jaseatschoicejava.service.ChatConversationService;
 import com.xx.jaseatschoicejava.service.ChatMsgService;
+import com.xx.jaseatschoicejava.util.ConversationKeys;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -28,49 +31,66 @@ public class ChatController {
     @Autowired
     private ChatMsgService chatMsgService;
 
+    @Autowired
+    private ChatConversationService chatConversationService;
+
     /**
      * 获取聊天会话列表
+     * 从会话摘要表按最后消息时间倒序分页读取，每个会话返回其最后一条消息，与原有返回格式一致
      */
     @ApiOperation("获取聊天会话列表")
     @GetMapping("/users/{userId}/chat-sessions")
-    public ResponseResult<?> getChatSessions(@PathVariable String userId) {
-        // 会话列表是与该用户有过聊天记录的所有用户/群组的列表
-        // 查询条件：fromId或toId等于当前用户ID，然后按时间倒序取最新的消息
-        LambdaQueryWrapper<ChatMsg> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.or(wrapper -> wrapper.eq(ChatMsg::getFromId, userId)
-                .or().eq(ChatMsg::getToId, userId))
-                .orderByDesc(ChatMsg::getCreateTime);
-
-        // 查询所有相关聊天记录
-        List<ChatMsg> chatMessages = chatMsgService.list(queryWrapper);
-
-        // 将聊天记录按会话分组，取每个会话的最新一条消息
-        // 会话标识：单聊是对方用户ID，群聊是群组ID（toId）
-        Map<String, ChatMsg> sessionMap = new LinkedHashMap<>();
-
-        for (ChatMsg message : chatMessages) {
-            String sessionId = "";
-            if ("group".equals(message.getMsgType())) {
-                // 群聊：会话ID是toId
-                sessionId = message.getToId().toString();
-            } else {
-                // 单聊：会话ID是对方用户ID
-                sessionId = message.getFromId().equals(userId) ? message.getToId().toString() : message.getFromId().toString();
-            }
-
-            // 如果会话不存在，则将当前消息加入
-            if (!sessionMap.containsKey(sessionId)) {
-                sessionMap.put(sessionId, message);
-            }
-            // 否则保留第一条（因为已经按时间倒序排列）
+    public ResponseResult<?> getChatSessions(
+            @PathVariable Long userId,
+            @RequestParam(defaultValue = "1") Integer page,
+            @RequestParam(defaultValue = "50") Integer size) {
+        Page<ChatConversation> conversations = chatConversationService.pageConversations(userId, page, size);
+
+        // 转换为会话列表：单聊的toId为收发双方中另一方，群聊的toId为群ID
+        List<ChatMsg> sessionList = new ArrayList<>(conversations.getRecords().size());
+        for (ChatConversation conversation : conversations.getRecords()) {
+            ChatMsg message = new ChatMsg();
+            message.setId(conversation.getLastMsgId());
+            message.setFromId(conversation.getLastFromId());
+            boolean group = MsgType.GROUP.getValue().equals(conversation.getConvType());
+            message.setToId(group || userId.equals(conversation.getLastFromId()) ? conversation.getPeerId() : userId);
+            message.setMsgType(conversation.getLastMsgType());
+            message.setContent(conversation.getLastContent());
+            message.setReadStatus(conversation.getUnreadCount() == 0);
+            message.setCreateTime(conversation.getLastTime());
+            sessionList.add(message);
         }
 
-        // 转换为会话列表
-        List<ChatMsg> sessionList = new ArrayList<>(sessionMap.values());
-
         return ResponseResult.success(sessionList);
     }
 
+    /**
+     * 分页获取会话摘要
+     */
+    @ApiOperation("分页获取会话摘要（含未读数）")
+    @GetMapping("/users/{userId}/conversations")
+    public ResponseResult<?> getConversations(
+            @PathVariable Long userId,
+            @RequestParam(defaultValue = "1") Integer page,
+            @RequestParam(defaultValue = "20") Integer size) {
+        return ResponseResult.success(chatConversationService.pageConversations(userId, page, size));
+    }
+
+    /**
+     * 将会话标记为已读
+     * @param upToId 已读到的消息ID，为空时表示当前所有消息
+     */
+    @ApiOperation("将会话标记为已读")
+    @PutMapping("/users/{userId}/conversations/{convType}/{peerId}/read")
+    public ResponseResult<?> clearConversationUnread(
+            @PathVariable Long userId,
+            @PathVariable String convType,
+            @PathVariable Long peerId,
+            @RequestParam(required = false) Long upToId) {
+        chatConversationService.markRead(userId, convType, peerId, upToId);
+        return ResponseResult.success("会话已标记为已读");
+    }
+
     /**
      * 获取聊天记录
      * @param sessionId 会话ID，可以是：
@@ -110,6 +130,39 @@ public class ChatController {
         return ResponseResult.success(result);
     }
 
+    /**
+     * 按游标获取聊天记录
+     * 按会话键和消息ID向前翻页，每页耗时与会话历史长度无关
+     * @param sessionId 会话ID，格式同获取聊天记录接口
+     * @param beforeId 游标，返回ID小于它的消息；为空时从最新一条开始
+     * @param limit 每页条数
+     */
+    @ApiOperation("按游标获取聊天记录")
+    @GetMapping("/{sessionId}/messages/cursor")
+    public ResponseResult<?> getChatMessagesBefore(
+            @PathVariable String sessionId,
+            @RequestParam(required = false) Long beforeId,
+            @RequestParam(defaultValue = "20") Integer limit) {
+        String conversationKey = ConversationKeys.fromSessionId(sessionId);
+        if (conversationKey == null) {
+            return ResponseResult.fail("400", "会话ID格式错误");
+        }
+        int pageSize = Math.max(1, Math.min(limit, 100));
+
+        // 多取一条判断是否还有更早的消息
+        List<ChatMsg> messages = chatMsgService.listBefore(conversationKey, beforeId, pageSize + 1);
+        boolean hasMore = messages.size() > pageSize;
+        if (hasMore) {
+            messages = messages.subList(0, pageSize);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("records", messages);
+        result.put("hasMore", hasMore);
+        result.put("nextBeforeId", hasMore ? messages.get(messages.size() - 1).getId() : null);
+        return ResponseResult.success(result);
+    }
+
     /**
      * 发送消息
      */
@@ -120,8 +173,8 @@ public class ChatController {
         chatMsg.setReadStatus(false);
         chatMsg.setCreateTime(LocalDateTime.now());
 
-        // 保存消息
-        boolean success = chatMsgService.save(chatMsg);
+        // 保存消息并更新会话摘要
+        boolean success = chatMsgService.saveMessage(chatMsg);
         if (success) {
             return ResponseResult.success(chatMsg);
         } else {
@@ -135,11 +188,8 @@ public class ChatController {
     @ApiOperation("标记消息已读")
     @PutMapping("/messages/{messageId}/read")
     public ResponseResult<?> markMessageAsRead(@PathVariable Long messageId) {
-        ChatMsg chatMsg = new ChatMsg();
-        chatMsg.setId(messageId);
-        chatMsg.setReadStatus(true);
-
-        boolean success = chatMsgService.updateById(chatMsg);
+        // 首次标记已读时同步减少接收方的会话未读数
+        boolean success = chatMsgService.markRead(messageId);
         if (success) {
             return ResponseResult.success("消息标记已读成功");
         } else {
@@ -3,6 +3,8 @@ package com.xx.jaseatschoicejava.controller;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.xx.jaseatschoicejava.common.ResponseResult;
 import com.xx.jaseatschoicejava.entity.ChatMsg;
+import com.xx.jaseatschoicejava.enums.MsgType;
+import com.xx.jaseatschoicejava.service.ChatConversationService;
 import com.xx.jaseatschoicejava.service.ChatMsgService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
@@ -19,12 +21,15 @@ public class ChatMsgController {
     @Autowired
     private ChatMsgService chatMsgService;
 
+    @Autowired
+    private ChatConversationService chatConversationService;
+
     /**
      * 发送消息
      */
     @PostMapping
     public ResponseResult<?> sendMessage(@RequestBody ChatMsg message) {
-        boolean success = chatMsgService.save(message);
+        boolean success = chatMsgService.saveMessage(message);
         if (success) {
             return ResponseResult.success(message.getId());
         }
@@ -48,13 +53,21 @@ public class ChatMsgController {
         queryWrapper.orderByAsc(ChatMsg::getCreateTime); // 按创建时间升序排列
         List<ChatMsg> messages = chatMsgService.list(queryWrapper);
 
-        // 标记未读消息为已读
-        messages.stream()
-                .filter(msg -> msg.getToId().equals(fromId) && !msg.getReadStatus())
-                .forEach(msg -> {
-                    msg.setReadStatus(true);
-                    chatMsgService.updateById(msg);
-                });
+        // 标记未读消息为已读：只推进到本次返回的最后一条，消息行由后台任务分批更新
+        Long readerId = Long.valueOf(fromId);
+        Long upToId = null;
+        for (ChatMsg msg : messages) {
+            if (readerId.equals(msg.getToId()) && !Boolean.TRUE.equals(msg.getReadStatus())) {
+                msg.setReadStatus(true);
+                upToId = upToId == null ? msg.getId() : Math.max(upToId, msg.getId());
+            }
+        }
+        if (upToId != null) {
+            chatConversationService.markRead(readerId, MsgType.SINGLE.getValue(), Long.valueOf(toId), upToId);
+        } else {
+            // 对话已读，清零会话未读数
+            chatConversationService.clearUnread(readerId, MsgType.SINGLE.getValue(), Long.valueOf(toId));
+        }
 
         return ResponseResult.success(messages);
     }
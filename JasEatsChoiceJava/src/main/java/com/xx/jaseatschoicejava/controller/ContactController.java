@@ -2,6 +2,8 @@ package com.xx.jaseatschoicejava.controller;
 
 import com.xx.jaseatschoicejava.common.ResponseResult;
 import com.xx.jaseatschoicejava.entity.Contact;
+import com.xx.jaseatschoicejava.netty.AvatarUpdateNotifier;
+import com.xx.jaseatschoicejava.netty.GroupChannelRegistry;
 import com.xx.jaseatschoicejava.service.ContactService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -21,6 +23,12 @@ public class ContactController {
     @Autowired
     private ContactService contactService;
 
+    @Autowired
+    private GroupChannelRegistry groupChannelRegistry;
+
+    @Autowired
+    private AvatarUpdateNotifier avatarUpdateNotifier;
+
     /**
      * 获取我的好友列表
      */
@@ -58,6 +66,8 @@ public class ContactController {
         contact.setStatus("normal");
         boolean success = contactService.save(contact);
         if (success) {
+            // 同步更新群成员在线路由
+            groupChannelRegistry.joinGroup(String.valueOf(contact.getUserId()), String.valueOf(contact.getTargetId()));
             return ResponseResult.success("加入群成功");
         } else {
             return ResponseResult.fail("500", "加入群失败");
@@ -75,6 +85,8 @@ public class ContactController {
                 .eq(Contact::getTargetId, groupId)
                 .eq(Contact::getRelationType, "group"));
         if (success) {
+            // 同步更新群成员在线路由
+            groupChannelRegistry.leaveGroup(String.valueOf(userId), String.valueOf(groupId));
             return ResponseResult.success("退出群成功");
         } else {
             return ResponseResult.fail("500", "退出群失败");
@@ -114,6 +126,10 @@ public class ContactController {
                 .eq(Contact::getTargetId, userId)
                 .eq(Contact::getRelationType, "friend"));
 
+        // 好友关系变化，清除双方的好友缓存
+        avatarUpdateNotifier.invalidateFriends(userId);
+        avatarUpdateNotifier.invalidateFriends(friendId);
+
         if (success1 && success2) {
             return ResponseResult.success("删除好友成功");
         } else {
@@ -5,12 +5,15 @@ import com.xx.jaseatschoicejava.common.ResponseResult;
 import com.xx.jaseatschoicejava.dto.MenuWithDishStatusDTO;
 import com.xx.jaseatschoicejava.entity.Dish;
 import com.xx.jaseatschoicejava.exception.BusinessException;
+import com.xx.jaseatschoicejava.service.DishCatalogService;
 import com.xx.jaseatschoicejava.service.DishService;
 import com.xx.jaseatschoicejava.service.MenuService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -27,6 +30,9 @@ public class DishController {
     @Autowired
     private MenuService menuService;
 
+    @Autowired
+    private DishCatalogService dishCatalogService;
+
     /**
      * 获取菜品列表
      */
@@ -75,6 +81,7 @@ public class DishController {
         }
         boolean saved = dishService.save(dish);
         if (saved) {
+            dishCatalogService.refresh(Collections.singletonList(dish.getId()));
             return ResponseResult.success(dish); // 返回创建的菜品数据
         }
         return ResponseResult.fail("500", "菜品创建失败");
@@ -86,8 +93,11 @@ public class DishController {
     @PutMapping("/{dishId}")
     public ResponseResult<?> updateDish(@PathVariable Long dishId, @RequestBody Dish dish) {
         dish.setId(dishId);
+        // 显式更新时间，其他节点的菜品目录按update_time增量刷新
+        dish.setUpdateTime(LocalDateTime.now());
         boolean updated = dishService.updateById(dish);
         if (updated) {
+            dishCatalogService.refresh(Collections.singletonList(dishId));
             return ResponseResult.success(dishService.getById(dishId)); // 返回更新后的菜品数据
         }
         return ResponseResult.fail("500", "菜品更新失败");
@@ -104,10 +114,12 @@ public class DishController {
             throw new BusinessException("404", "菜品不存在");
         }
         dish.setStatus(status);
+        dish.setUpdateTime(LocalDateTime.now());
         boolean updated = dishService.updateById(dish);
         log.info("更新菜品状态 {} {}", dishId, status);
         log.info("updated {} ", updated);
         if (updated) {
+            dishCatalogService.refresh(Collections.singletonList(dishId));
             // 当菜品下架时，同步更新该菜品在所有菜单中的状态为下架
             if (!status) {
                 // 获取该菜品关联的所有菜单
@@ -136,12 +148,15 @@ public class DishController {
         }
 
         List<Dish> dishes = dishService.listByIds(dishIds);
+        LocalDateTime now = LocalDateTime.now();
         for (Dish dish : dishes) {
             dish.setStatus(status);
+            dish.setUpdateTime(now);
         }
         boolean updated = dishService.updateBatchById(dishes);
 
         if (updated) {
+            dishCatalogService.refresh(dishes.stream().map(Dish::getId).toList());
             return ResponseResult.success("批量更新菜品状态成功");
         }
         return ResponseResult.fail("500", "批量更新菜品状态失败");
@@ -2,6 +2,7 @@ package com.xx.jaseatschoicejava.controller;
 
 import com.xx.jaseatschoicejava.common.ResponseResult;
 import com.xx.jaseatschoicejava.entity.Group;
+import com.xx.jaseatschoicejava.netty.GroupChannelRegistry;
 import com.xx.jaseatschoicejava.service.GroupService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -21,6 +22,8 @@ public class GroupController {
 
     private final GroupService groupService;
 
+    private final GroupChannelRegistry groupChannelRegistry;
+
     /**
      * 创建群
      */
@@ -72,6 +75,8 @@ public class GroupController {
     public ResponseResult<?> deleteGroup(@PathVariable Long groupId) {
         boolean success = groupService.removeById(groupId);
         if (success) {
+            // 移除该群的在线路由
+            groupChannelRegistry.removeGroup(String.valueOf(groupId));
             return ResponseResult.success("删除群成功");
         } else {
             return ResponseResult.fail("500", "删除群失败");
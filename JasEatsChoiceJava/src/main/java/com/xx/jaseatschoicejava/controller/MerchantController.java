@@ -20,7 +20,7 @@ import com.xx.jaseatschoicejava.entity.OrderDish;
 import com.xx.jaseatschoicejava.service.OrderDishService;
 import com.xx.jaseatschoicejava.entity.Dish;
 import com.xx.jaseatschoicejava.entity.Review;
-import com.xx.jaseatschoicejava.entity.MessageRecord;
+import com.xx.jaseatschoicejava.util.IdPrefixUtil;
 import com.xx.jaseatschoicejava.service.DishService;
 import com.xx.jaseatschoicejava.service.ReviewService;
 import com.xx.jaseatschoicejava.service.MessageRecordService;
@@ -771,11 +771,9 @@ public class MerchantController {
             );
             overview.put("commentsTrend", commentsTrend);  // 新增评价趋势
 
-            // 未读消息数量（查询接收者为该商家且未读的消息）
-            LambdaQueryWrapper<MessageRecord> messageQueryWrapper = new LambdaQueryWrapper<>();
-            messageQueryWrapper.eq(MessageRecord::getReceiverId, merchantId)
-                             .eq(MessageRecord::getReadStatus, 0); // 0表示未读
-            long unreadMessagesCount = messageRecordService.count(messageQueryWrapper);
+            // 未读消息数量（接收者为该商家的未读消息，从Redis计数读取）
+            long unreadMessagesCount = messageRecordService.getUnreadMessageCountByUserId(
+                    Long.valueOf(IdPrefixUtil.removePrefix(merchantId)));
             overview.put("unreadMessages", unreadMessagesCount);  // 未读消息
 
             // 未读消息趋势（简单处理：有消息显示上升，无消息显示持平）
@@ -4,8 +4,10 @@ import com.xx.jaseatschoicejava.common.ResponseResult;
 import com.xx.jaseatschoicejava.entity.MessageRecord;
 import com.xx.jaseatschoicejava.service.MessageRecordService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -26,10 +28,12 @@ public class MessageController {
     @GetMapping("/list")
     public ResponseResult<?> getMessageList(@RequestParam Long userId,
                                             @RequestParam(defaultValue = "10") Integer pageSize,
-                                            @RequestParam(defaultValue = "1") Integer pageNum) {
+                                            @RequestParam(required = false)
+                                            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime beforeTime,
+                                            @RequestParam(required = false) Long beforeId) {
         try {
-            // 从数据库获取消息列表
-            List<MessageRecord> messages = messageRecordService.getMessageRecordsByUserId(userId, pageSize, pageNum);
+            // 从数据库按游标获取消息列表
+            List<MessageRecord> messages = messageRecordService.getMessageRecordsByUserId(userId, pageSize, beforeTime, beforeId);
             return ResponseResult.success(messages);
         } catch (Exception e) {
             e.printStackTrace();
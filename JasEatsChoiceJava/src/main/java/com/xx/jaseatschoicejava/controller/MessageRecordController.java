@@ -4,9 +4,16 @@ import com.xx.jaseatschoicejava.common.ResponseResult;
 import com.xx.jaseatschoicejava.entity.MessageRecord;
 import com.xx.jaseatschoicejava.service.MessageRecordService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 消息记录控制器
@@ -23,20 +30,96 @@ public class MessageRecordController {
 
     /**
      * 根据用户ID获取消息记录列表
+     * 按发送时间倒序，下一页传入本页最后一条的sendTime和id作为游标，不再支持按页码跳页
      *
      * @param userId 用户ID
      * @param pageSize 分页大小（默认10）
-     * @param pageNum 当前页码（默认1）
+     * @param beforeTime 游标的发送时间，为空时从最新一条开始
+     * @param beforeId 游标的消息ID
      * @return 消息记录列表
      */
     @GetMapping("/records")
     public ResponseResult<?> getMessageRecords(@RequestParam Long userId,
                                               @RequestParam(defaultValue = "10") Integer pageSize,
-                                              @RequestParam(defaultValue = "1") Integer pageNum) {
-        List<MessageRecord> records = messageRecordService.getMessageRecordsByUserId(userId, pageSize, pageNum);
+                                              @RequestParam(required = false)
+                                              @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime beforeTime,
+                                              @RequestParam(required = false) Long beforeId) {
+        List<MessageRecord> records = messageRecordService.getMessageRecordsByUserId(userId, pageSize, beforeTime, beforeId);
         return ResponseResult.success(records);
     }
 
+    /**
+     * 按游标获取消息记录，同时返回是否还有更早的消息和下一页的游标
+     *
+     * @param userId 用户ID
+     * @param pageSize 分页大小（默认20，最大100）
+     * @param beforeTime 游标的发送时间，为空时从最新一条开始
+     * @param beforeId 游标的消息ID
+     * @return 消息记录和下一页游标
+     */
+    @GetMapping("/records/cursor")
+    public ResponseResult<?> getMessageRecordsBefore(@RequestParam Long userId,
+                                                    @RequestParam(defaultValue = "20") Integer pageSize,
+                                                    @RequestParam(required = false)
+                                                    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime beforeTime,
+                                                    @RequestParam(required = false) Long beforeId) {
+        int limit = Math.max(1, Math.min(pageSize, 100));
+
+        // 多取一条判断是否还有更早的消息
+        List<MessageRecord> records = messageRecordService.getMessageRecordsByUserId(userId, limit + 1, beforeTime, beforeId);
+        boolean hasMore = records.size() > limit;
+        if (hasMore) {
+            records = records.subList(0, limit);
+        }
+        MessageRecord last = hasMore ? records.get(records.size() - 1) : null;
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("records", records);
+        result.put("hasMore", hasMore);
+        result.put("nextBeforeTime", last != null ? last.getSendTime() : null);
+        result.put("nextBeforeId", last != null ? last.getId() : null);
+        return ResponseResult.success(result);
+    }
+
+    /**
+     * 以CSV流式导出用户的全部消息记录，边读边写，不在内存中缓存整个结果集
+     *
+     * @param userId 用户ID
+     * @param response HTTP响应
+     */
+    @GetMapping("/records/export")
+    public void exportMessageRecords(@RequestParam Long userId, HttpServletResponse response) throws IOException {
+        response.setContentType("text/csv;charset=UTF-8");
+        response.setHeader("Content-Disposition", "attachment; filename=message_records_" + userId + ".csv");
+        PrintWriter writer = response.getWriter();
+        // BOM便于Excel识别UTF-8编码
+        writer.write('\uFEFF');
+        writer.println("id,sender_id,receiver_id,message_type,content,send_time,read_status");
+        messageRecordService.exportMessageRecords(userId, record -> writer.println(
+                record.getId() + "," +
+                csv(record.getSenderId()) + "," +
+                csv(record.getReceiverId()) + "," +
+                csv(record.getMessageType()) + "," +
+                csv(record.getContent()) + "," +
+                csv(record.getSendTime()) + "," +
+                csv(record.getReadStatus())));
+        writer.flush();
+    }
+
+    /**
+     * CSV字段转义，包含逗号、引号或换行时用引号包裹
+     */
+    private static String csv(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            return text;
+        }
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+
     /**
      * 根据用户ID获取未读消息数量
      *
@@ -49,6 +132,17 @@ public class MessageRecordController {
         return ResponseResult.success(count);
     }
 
+    /**
+     * 根据用户ID获取按发送者区分的未读消息数量
+     *
+     * @param userId 用户ID
+     * @return 发送者ID -> 未读消息数量
+     */
+    @GetMapping("/unread-count/conversations")
+    public ResponseResult<?> getConversationUnreadCounts(@RequestParam Long userId) {
+        return ResponseResult.success(messageRecordService.getConversationUnreadCounts(userId));
+    }
+
     /**
      * 发送消息
      *
@@ -86,6 +180,23 @@ public class MessageRecordController {
         }
     }
 
+    /**
+     * 标记与某个发送者的所有消息为已读
+     *
+     * @param userId 用户ID
+     * @param senderId 发送者ID
+     * @return 标记结果
+     */
+    @PutMapping("/records/conversation-read")
+    public ResponseResult<?> markConversationAsRead(@RequestParam Long userId, @RequestParam Long senderId) {
+        Boolean success = messageRecordService.markConversationAsRead(userId, senderId);
+        if (success) {
+            return ResponseResult.success("会话消息已标记为已读");
+        } else {
+            return ResponseResult.fail("500", "消息标记失败");
+        }
+    }
+
     /**
      * 标记所有消息为已读
      *
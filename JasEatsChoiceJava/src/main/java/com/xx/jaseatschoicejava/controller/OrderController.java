@@ -3,8 +3,10 @@ package com.xx.jaseatschoicejava.controller;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.xx.jaseatschoicejava.common.ResponseResult;
 import com.xx.jaseatschoicejava.entity.Order;
+import com.xx.jaseatschoicejava.event.OrderStatusChangedEvent;
 import com.xx.jaseatschoicejava.service.OrderService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -19,6 +21,9 @@ public class OrderController {
     @Autowired
     private OrderService orderService;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     /**
      * 创建订单
      */
@@ -75,6 +80,12 @@ public class OrderController {
         order.setStatus(status);
         boolean success = orderService.updateById(order);
         if (success) {
+            // 推送给下单用户和商家，客户端无需轮询订单状态
+            Order updated = orderService.getById(orderId);
+            if (updated != null) {
+                eventPublisher.publishEvent(new OrderStatusChangedEvent(
+                        updated.getId(), updated.getUserId(), updated.getMerchantId(), status));
+            }
             return ResponseResult.success("更新成功");
         }
         return ResponseResult.fail("500", "更新失败");
@@ -5,12 +5,14 @@ import com.xx.jaseatschoicejava.entity.Dish;
 import com.xx.jaseatschoicejava.entity.RejectRecommendation;
 import com.xx.jaseatschoicejava.entity.UserPreference;
 import com.xx.jaseatschoicejava.mapper.RejectRecommendationMapper;
-import com.xx.jaseatschoicejava.service.DishService;
+import com.xx.jaseatschoicejava.service.DishCatalogService;
+import com.xx.jaseatschoicejava.service.DishFeatures;
 import com.xx.jaseatschoicejava.service.UserPreferenceService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -24,7 +26,7 @@ import java.util.Map;
 public class RecommendController {
 
     @Autowired
-    private DishService dishService;
+    private DishCatalogService dishCatalogService;
 
     @Autowired
     private UserPreferenceService userPreferenceService;
@@ -34,6 +36,7 @@ public class RecommendController {
 
     /**
      * 获取个性化推荐菜品
+     * 推荐接口的菜品都从内存中的菜品目录快照读取，不查询数据库
      */
     @GetMapping("/recommend/{userId}")
     public ResponseResult<?> getRecommendDishes(@PathVariable Long userId,
@@ -46,7 +49,7 @@ public class RecommendController {
         UserPreference userPreference = userPreferenceService.getByUserId(userId);
 
         if (userPreference != null) {
-            List<Dish> filteredDishes = dishService.list();
+            List<Dish> filteredDishes = dishCatalogService.current().dishes();
 
             // 根据饮食目标筛选（示例：低卡、高蛋白等）
             if (userPreference.getDietGoal() != null && !userPreference.getDietGoal().isEmpty()) {
@@ -97,7 +100,7 @@ public class RecommendController {
             }
         } else {
             // 用户没有设置偏好，返回默认推荐
-            finalDishes = dishService.list();
+            finalDishes = dishCatalogService.current().dishes();
             recommendResult.put("dishes", finalDishes);
             recommendResult.put("recommendReason", "Default recommendation for new users");
         }
@@ -135,7 +138,7 @@ public class RecommendController {
 
         // 获取用户推荐偏好
         UserPreference userPreference = userPreferenceService.getByUserId(userId);
-        List<Dish> candidateDishes = dishService.list();
+        List<Dish> candidateDishes = dishCatalogService.current().dishes();
 
         // 根据用户偏好筛选可替换的菜品
         if (userPreference != null) {
@@ -163,69 +166,69 @@ public class RecommendController {
 
     /**
      * 筛选推荐菜品
+     * 在快照的特征列存上按位图逐个条件求交，最后按位图取出菜品
      */
     @PostMapping("/recommend/{userId}/filter")
     public ResponseResult<?> filterRecommendDishes(@PathVariable Long userId, @RequestBody Map<String, Object> params) {
         // 获取用户推荐偏好
         UserPreference userPreference = userPreferenceService.getByUserId(userId);
-        List<Dish> filteredDishes = dishService.list();
+        DishCatalogService.Snapshot catalog = dishCatalogService.current();
+        DishFeatures features = catalog.features();
+
+        // 只返回上架状态的菜品
+        long[] matched = features.all();
+        features.retainOnSale(matched);
 
         // 首先应用用户的个性化偏好
-        if (userPreference != null) {
-            if (userPreference.getDietGoal() != null && !userPreference.getDietGoal().isEmpty()) {
-                if ("low_calorie".equals(userPreference.getDietGoal())) {
-                    filteredDishes = filteredDishes.stream()
-                        .filter(dish -> dish.getCalorie() != null && dish.getCalorie() < 500)
-                        .toList();
-                }
-            }
+        if (userPreference != null && "low_calorie".equals(userPreference.getDietGoal())) {
+            features.retainCalorieBetween(matched, Integer.MIN_VALUE, 499);
         }
 
         // 应用请求中的筛选条件
         // 菜品分类筛选
         if (params.get("category") != null) {
-            String category = (String) params.get("category");
-            filteredDishes = filteredDishes.stream()
-                .filter(dish -> category.equals(dish.getCategory()))
-                .toList();
+            features.retainCategory(matched, features.categoryId((String) params.get("category")));
         }
 
-        // 卡路里范围筛选
+        // 卡路里范围筛选，小数边界下限向上、上限向下取整，与按原值比较的结果相同
         if (params.get("minCalorie") != null || params.get("maxCalorie") != null) {
-            Integer minCalorie = (Integer) params.get("minCalorie");
-            Integer maxCalorie = (Integer) params.get("maxCalorie");
-            filteredDishes = filteredDishes.stream()
-                .filter(dish -> dish.getCalorie() != null &&
-                        (minCalorie == null || dish.getCalorie() >= minCalorie) &&
-                        (maxCalorie == null || dish.getCalorie() <= maxCalorie))
-                .toList();
+            BigDecimal minCalorie = toBigDecimal(params.get("minCalorie"));
+            BigDecimal maxCalorie = toBigDecimal(params.get("maxCalorie"));
+            features.retainCalorieBetween(matched,
+                    minCalorie != null ? toCalorie(minCalorie, RoundingMode.CEILING) : Integer.MIN_VALUE,
+                    maxCalorie != null ? toCalorie(maxCalorie, RoundingMode.FLOOR) : Integer.MAX_VALUE);
         }
 
-        // 价格范围筛选
+        // 价格范围筛选，按分比较
         if (params.get("minPrice") != null || params.get("maxPrice") != null) {
-            BigDecimal minPrice = params.get("minPrice") instanceof String ?
-                new BigDecimal((String) params.get("minPrice")) :
-                (BigDecimal) params.get("minPrice");
-            BigDecimal maxPrice = params.get("maxPrice") instanceof String ?
-                new BigDecimal((String) params.get("maxPrice")) :
-                (BigDecimal) params.get("maxPrice");
-            filteredDishes = filteredDishes.stream()
-                .filter(dish -> dish.getPrice() != null &&
-                        (minPrice == null || dish.getPrice().compareTo(minPrice) >= 0) &&
-                        (maxPrice == null || dish.getPrice().compareTo(maxPrice) <= 0))
-                .toList();
+            BigDecimal minPrice = toBigDecimal(params.get("minPrice"));
+            BigDecimal maxPrice = toBigDecimal(params.get("maxPrice"));
+            features.retainPriceBetween(matched,
+                    minPrice != null ? DishFeatures.toCents(minPrice, RoundingMode.CEILING) : Long.MIN_VALUE,
+                    maxPrice != null ? DishFeatures.toCents(maxPrice, RoundingMode.FLOOR) : Long.MAX_VALUE);
         }
 
-        // 只返回上架状态的菜品
-        filteredDishes = filteredDishes.stream().filter(Dish::getStatus).toList();
-
         Map<String, Object> result = new HashMap<>();
-        result.put("filteredDishes", filteredDishes);
+        result.put("filteredDishes", features.select(matched, catalog.dishes()));
         result.put("filterParams", params);
 
         return ResponseResult.success(result);
     }
 
+    private static BigDecimal toBigDecimal(Object value) {
+        if (value == null) {
+            return null;
+        }
+        return value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal(value.toString());
+    }
+
+    private static int toCalorie(BigDecimal calorie, RoundingMode mode) {
+        BigDecimal rounded = calorie.setScale(0, mode)
+                .max(BigDecimal.valueOf(Integer.MIN_VALUE))
+                .min(BigDecimal.valueOf(Integer.MAX_VALUE));
+        return rounded.intValue();
+    }
+
     /**
      * 一键生成购物清单
      */
@@ -6,6 +6,7 @@ import com.xx.jaseatschoicejava.dto.UserDTO;
 import com.xx.jaseatschoicejava.entity.RegisterRequest;
 import com.xx.jaseatschoicejava.entity.User;
 import com.xx.jaseatschoicejava.entity.UserPreference;
+import com.xx.jaseatschoicejava.netty.AvatarUpdateNotifier;
 import com.xx.jaseatschoicejava.service.UserService;
 import com.xx.jaseatschoicejava.service.UserPreferenceService;
 import com.xx.jaseatschoicejava.service.AliyunSMSService;
@@ -39,6 +40,9 @@ public class UserController {
     @Autowired
     private UserPreferenceService userPreferenceService;
 
+    @Autowired
+    private AvatarUpdateNotifier avatarUpdateNotifier;
+
     /**
      * 用户注册
      */
@@ -418,7 +422,7 @@ public class UserController {
                 result.put("avatarBase64", avatarBase64);
 
                 // 通过WebSocket发送头像更新通知
-                com.xx.jaseatschoicejava.netty.NettyChatHandler.sendAvatarUpdateNotification(String.valueOf(userId), avatarBase64);
+                avatarUpdateNotifier.notifyAvatarUpdated(userId, avatarBase64);
 
                 return ResponseResult.success(result);
             }
@@ -469,7 +473,7 @@ public class UserController {
                 result.put("avatarBase64", avatarBase64);
 
                 // 通过WebSocket发送头像更新通知
-                com.xx.jaseatschoicejava.netty.NettyChatHandler.sendAvatarUpdateNotification(user.getUserId(), avatarBase64);
+                avatarUpdateNotifier.notifyAvatarUpdated(user.getUserId(), avatarBase64);
 //                log.info("Sending avatar update notification to user {} base64 {}", userId , avatarBase64);
 
                 return ResponseResult.success(result);
@@ -0,0 +1,69 @@
+package com.xx.jaseatschoicejava.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 会话摘要实体类
+ * 每个用户的每个会话（单聊对方或群）一行，记录最后一条消息和未读数，随消息写入原子更新
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@TableName("t_chat_conversation")
+@ApiModel(description = "会话摘要实体")
+public class ChatConversation {
+
+    @TableId(type = IdType.AUTO)
+    @ApiModelProperty(value = "主键ID")
+    private Long id; // 主键ID
+
+    @TableField("user_id")
+    @ApiModelProperty(value = "会话所属用户ID")
+    private Long userId; // 会话所属用户ID
+
+    @TableField("conv_type")
+    @ApiModelProperty(value = "会话类型（single/group）")
+    private String convType; // 会话类型（single/group）
+
+    @TableField("peer_id")
+    @ApiModelProperty(value = "对方用户ID或群ID")
+    private Long peerId; // 对方用户ID或群ID
+
+    @TableField("last_msg_id")
+    @ApiModelProperty(value = "最后一条消息ID")
+    private Long lastMsgId; // 最后一条消息ID
+
+    @TableField("last_from_id")
+    @ApiModelProperty(value = "最后一条消息的发送者ID")
+    private Long lastFromId; // 最后一条消息的发送者ID
+
+    @TableField("last_msg_type")
+    @ApiModelProperty(value = "最后一条消息的类型")
+    private String lastMsgType; // 最后一条消息的类型
+
+    @TableField("last_content")
+    @ApiModelProperty(value = "最后一条消息内容摘要")
+    private String lastContent; // 最后一条消息内容摘要
+
+    @TableField("unread_count")
+    @ApiModelProperty(value = "未读消息数")
+    private Integer unreadCount; // 未读消息数
+
+    @TableField("last_time")
+    @ApiModelProperty(value = "最后一条消息时间")
+    private LocalDateTime lastTime; // 最后一条消息时间
+
+    @TableField("update_time")
+    @ApiModelProperty(value = "更新时间")
+    private LocalDateTime updateTime; // 更新时间
+}
@@ -45,6 +45,14 @@ public class ChatMsg {
     @ApiModelProperty(value = "已读状态：true-已读，false-未读")
     private Boolean readStatus; // 已读状态：true-已读，false-未读
 
+    @TableField("delivered")
+    @ApiModelProperty(value = "投递状态：true-已通过长连接投递，false-未投递")
+    private Boolean delivered; // 投递状态：true-已通过长连接投递，false-未投递
+
+    @TableField("conversation_key")
+    @ApiModelProperty(value = "会话键：单聊为s:较小用户ID_较大用户ID，群聊为g:群ID")
+    private String conversationKey; // 会话键
+
     @TableField("create_time")
     @ApiModelProperty(value = "创建时间")
     private LocalDateTime createTime; // 创建时间
@@ -0,0 +1,58 @@
+package com.xx.jaseatschoicejava.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 已读水位实体类
+ * 记录用户在某个范围内已读到的消息ID，ID不大于水位的消息视为已读；
+ * 消息行的read_status由后台任务分批补写，补写到的位置记录在applied_up_to_id
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@TableName("t_read_watermark")
+@ApiModel(description = "已读水位实体")
+public class ReadWatermark {
+
+    @TableId(type = IdType.AUTO)
+    @ApiModelProperty(value = "主键ID")
+    private Long id; // 主键ID
+
+    @TableField("user_id")
+    @ApiModelProperty(value = "用户ID")
+    private Long userId; // 用户ID
+
+    @TableField("scope")
+    @ApiModelProperty(value = "水位范围（record_all/record/chat）")
+    private String scope; // 水位范围（record_all/record/chat）
+
+    @TableField("peer_id")
+    @ApiModelProperty(value = "对方用户ID，全部消息记录时为0")
+    private Long peerId; // 对方用户ID，全部消息记录时为0
+
+    @TableField("read_up_to_id")
+    @ApiModelProperty(value = "已读到的消息ID")
+    private Long readUpToId; // 已读到的消息ID
+
+    @TableField("applied_up_to_id")
+    @ApiModelProperty(value = "已补写到消息行的水位")
+    private Long appliedUpToId; // 已补写到消息行的水位
+
+    @TableField("pending")
+    @ApiModelProperty(value = "是否有待补写的消息行")
+    private Boolean pending; // 是否有待补写的消息行
+
+    @TableField("update_time")
+    @ApiModelProperty(value = "更新时间")
+    private LocalDateTime updateTime; // 更新时间
+}
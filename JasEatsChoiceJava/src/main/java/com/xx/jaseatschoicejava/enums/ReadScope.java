@@ -0,0 +1,47 @@
+package com.xx.jaseatschoicejava.enums;
+
+/**
+ * 已读水位范围枚举
+ */
+public enum ReadScope {
+
+    /**
+     * 用户收到的全部消息记录，对方ID固定为0
+     */
+    RECORD_ALL("record_all", "全部消息记录"),
+
+    /**
+     * 用户收到的某个发送者的消息记录
+     */
+    RECORD("record", "单个发送者的消息记录"),
+
+    /**
+     * 用户收到的某个单聊对象的聊天消息
+     */
+    CHAT("chat", "单聊消息");
+
+    private String value;
+    private String desc;
+
+    ReadScope(String value, String desc) {
+        this.value = value;
+        this.desc = desc;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+
+    public static ReadScope of(String value) {
+        for (ReadScope scope : values()) {
+            if (scope.value.equals(value)) {
+                return scope;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,11 @@
+package com.xx.jaseatschoicejava.event;
+
+/**
+ * 拼单同步事件
+ * 拼单同步消息写库成功后发布，由Netty推送给群内的在线成员
+ *
+ * @param groupId 群ID
+ * @param content 同步消息内容
+ */
+public record GroupOrderSyncEvent(String groupId, String content) {
+}
@@ -0,0 +1,13 @@
+package com.xx.jaseatschoicejava.event;
+
+/**
+ * 订单状态变更事件
+ * 订单状态写库成功后发布，由Netty推送给下单用户和商家，客户端无需轮询订单接口
+ *
+ * @param orderId    订单ID
+ * @param userId     下单用户ID
+ * @param merchantId 商家ID
+ * @param status     新的订单状态：0-待支付、1-待接单、2-备菜中、3-烹饪中、4-待上菜、5-已完成、6-已取消
+ */
+public record OrderStatusChangedEvent(String orderId, String userId, String merchantId, Integer status) {
+}
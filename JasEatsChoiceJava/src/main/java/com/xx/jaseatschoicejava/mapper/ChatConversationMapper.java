@@ -0,0 +1,117 @@
+package com.xx.jaseatschoicejava.mapper;
+
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.xx.jaseatschoicejava.entity.ChatConversation;
+import com.xx.jaseatschoicejava.entity.ChatMsg;
+
+import java.util.List;
+
+/**
+ * 会话摘要Mapper接口
+ * 摘要通过INSERT ... ON DUPLICATE KEY UPDATE原子更新，不先查再改；
+ * 只有比当前最后一条更新的消息才会替换摘要，未读数直接累加。
+ * MySQL按顺序执行赋值，后面的赋值会读到前面已更新的值，所以last_time必须最后赋值
+ */
+@Mapper
+public interface ChatConversationMapper extends BaseMapper<ChatConversation> {
+
+    String ON_DUPLICATE_UPDATE = "ON DUPLICATE KEY UPDATE " +
+            "last_msg_id = IF(VALUES(last_time) >= last_time, VALUES(last_msg_id), last_msg_id), " +
+            "last_from_id = IF(VALUES(last_time) >= last_time, VALUES(last_from_id), last_from_id), " +
+            "last_msg_type = IF(VALUES(last_time) >= last_time, VALUES(last_msg_type), last_msg_type), " +
+            "last_content = IF(VALUES(last_time) >= last_time, VALUES(last_content), last_content), " +
+            "unread_count = unread_count + VALUES(unread_count), " +
+            "update_time = NOW(), " +
+            "last_time = GREATEST(last_time, VALUES(last_time))";
+
+    /**
+     * 用一条消息更新用户的会话摘要，会话不存在时创建
+     * @param userId 会话所属用户ID
+     * @param convType 会话类型
+     * @param peerId 对方用户ID或群ID
+     * @param msg 消息
+     * @param unread 增加的未读数
+     * @return 影响行数
+     */
+    @Insert("INSERT INTO t_chat_conversation (user_id, conv_type, peer_id, last_msg_id, last_from_id, last_msg_type, " +
+            "last_content, unread_count, last_time, update_time) " +
+            "VALUES (#{userId}, #{convType}, #{peerId}, #{msg.id}, #{msg.fromId}, #{msg.msgType}, " +
+            "LEFT(#{msg.content}, 255), #{unread}, #{msg.createTime}, NOW()) " +
+            ON_DUPLICATE_UPDATE)
+    int upsert(@Param("userId") Long userId, @Param("convType") String convType, @Param("peerId") Long peerId,
+               @Param("msg") ChatMsg msg, @Param("unread") int unread);
+
+    /**
+     * 批量更新会话摘要，每个会话一行，由调用方预先合并同一会话的多条消息
+     * @param rows 会话摘要，lastMsgId等字段为会话中最新的一条消息，unreadCount为增加的未读数
+     * @return 影响行数
+     */
+    @Insert("<script>INSERT INTO t_chat_conversation (user_id, conv_type, peer_id, last_msg_id, last_from_id, last_msg_type, " +
+            "last_content, unread_count, last_time, update_time) VALUES " +
+            "<foreach collection='rows' item='row' separator=','>" +
+            "(#{row.userId}, #{row.convType}, #{row.peerId}, #{row.lastMsgId}, #{row.lastFromId}, #{row.lastMsgType}, " +
+            "LEFT(#{row.lastContent}, 255), #{row.unreadCount}, #{row.lastTime}, NOW())" +
+            "</foreach> " +
+            ON_DUPLICATE_UPDATE + "</script>")
+    int upsertBatch(@Param("rows") List<ChatConversation> rows);
+
+    /**
+     * 用一条群消息更新所有群成员的会话摘要，发送者本人不计未读
+     * @param groupId 群ID
+     * @param msg 消息
+     * @return 影响行数
+     */
+    @Insert("INSERT INTO t_chat_conversation (user_id, conv_type, peer_id, last_msg_id, last_from_id, last_msg_type, " +
+            "last_content, unread_count, last_time, update_time) " +
+            "SELECT c.user_id, 'group', #{groupId}, #{msg.id}, #{msg.fromId}, #{msg.msgType}, " +
+            "LEFT(#{msg.content}, 255), IF(c.user_id = #{msg.fromId}, 0, 1), #{msg.createTime}, NOW() " +
+            "FROM t_contact c " +
+            "WHERE c.target_id = #{groupId} AND c.relation_type = 'group' AND c.status = 'normal' " +
+            ON_DUPLICATE_UPDATE)
+    int upsertGroupMembers(@Param("groupId") Long groupId, @Param("msg") ChatMsg msg);
+
+    /**
+     * 清零会话未读数
+     * @return 影响行数
+     */
+    @Update("UPDATE t_chat_conversation SET unread_count = 0, update_time = NOW() " +
+            "WHERE user_id = #{userId} AND conv_type = #{convType} AND peer_id = #{peerId} AND unread_count > 0")
+    int clearUnread(@Param("userId") Long userId, @Param("convType") String convType, @Param("peerId") Long peerId);
+
+    /**
+     * 单聊会话部分已读后重新计算未读数：已读到最后一条消息时清零，否则统计对方发来的、ID大于已读位置且仍未读的消息
+     * @param readUpToId 已读到的消息ID
+     * @return 影响行数
+     */
+    @Update("UPDATE t_chat_conversation SET update_time = NOW(), unread_count = IF(#{readUpToId} >= last_msg_id, 0, " +
+            "(SELECT COUNT(*) FROM t_chat_msg m WHERE m.to_id = #{userId} AND m.from_id = #{peerId} " +
+            "AND m.msg_type <> 'group' AND m.read_status = 0 AND m.id > #{readUpToId})) " +
+            "WHERE user_id = #{userId} AND conv_type = #{convType} AND peer_id = #{peerId} AND unread_count > 0")
+    int recountUnread(@Param("userId") Long userId, @Param("convType") String convType, @Param("peerId") Long peerId,
+                      @Param("readUpToId") Long readUpToId);
+
+    /**
+     * 群会话部分已读后重新计算未读数：已读到最后一条消息时清零，否则不超过已读位置之后他人发送的消息数
+     * @param readUpToId 已读到的消息ID
+     * @return 影响行数
+     */
+    @Update("UPDATE t_chat_conversation SET update_time = NOW(), unread_count = IF(#{readUpToId} >= last_msg_id, 0, " +
+            "LEAST(unread_count, (SELECT COUNT(*) FROM t_chat_msg m WHERE m.to_id = #{groupId} " +
+            "AND m.msg_type = 'group' AND m.from_id <> #{userId} AND m.id > #{readUpToId}))) " +
+            "WHERE user_id = #{userId} AND conv_type = 'group' AND peer_id = #{groupId} AND unread_count > 0")
+    int recountGroupUnread(@Param("userId") Long userId, @Param("groupId") Long groupId,
+                           @Param("readUpToId") Long readUpToId);
+
+    /**
+     * 会话未读数减一
+     * @return 影响行数
+     */
+    @Update("UPDATE t_chat_conversation SET unread_count = unread_count - 1, update_time = NOW() " +
+            "WHERE user_id = #{userId} AND conv_type = #{convType} AND peer_id = #{peerId} AND unread_count > 0")
+    int decrementUnread(@Param("userId") Long userId, @Param("convType") String convType, @Param("peerId") Long peerId);
+}
@@ -4,8 +4,12 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.xx.jaseatschoicejava.entity.MessageRecord;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.cursor.Cursor;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 消息记录Mapper
@@ -17,16 +21,26 @@ import java.util.List;
 public interface MessageRecordMapper extends BaseMapper<MessageRecord> {
 
     /**
-     * 根据用户ID获取消息记录列表
+     * 根据用户ID按游标获取消息记录列表，按发送时间和ID倒序
      *
      * @param userId 用户ID
      * @param pageSize 分页大小
-     * @param pageNum 当前页码
+     * @param beforeTime 游标的发送时间，为null时从最新一条开始
+     * @param beforeId 游标的消息ID
      * @return 消息记录列表
      */
     List<MessageRecord> getMessageRecordsByUserId(@Param("userId") Long userId,
                                                   @Param("pageSize") Integer pageSize,
-                                                  @Param("pageNum") Integer pageNum);
+                                                  @Param("beforeTime") LocalDateTime beforeTime,
+                                                  @Param("beforeId") Long beforeId);
+
+    /**
+     * 流式读取用户发出和收到的全部消息记录，需在事务内遍历
+     *
+     * @param userId 用户ID
+     * @return 消息记录游标
+     */
+    Cursor<MessageRecord> streamMessageRecordsByUserId(@Param("userId") Long userId);
 
     /**
      * 根据用户ID获取未读消息数量
@@ -35,4 +49,12 @@ public interface MessageRecordMapper extends BaseMapper<MessageRecord> {
      * @return 未读消息数量
      */
     Integer getUnreadMessageCountByUserId(@Param("userId") Long userId);
+
+    /**
+     * 按接收者和发送者分组统计未读消息数量
+     *
+     * @param userIds 接收者ID
+     * @return 每行包含receiverId、senderId、unreadCount
+     */
+    List<Map<String, Object>> getUnreadCountsByReceiverIds(@Param("userIds") Collection<Long> userIds);
 }
@@ -0,0 +1,55 @@
+package com.xx.jaseatschoicejava.mapper;
+
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.xx.jaseatschoicejava.entity.ReadWatermark;
+
+import java.util.List;
+
+/**
+ * 已读水位Mapper接口
+ * 水位只前进不后退；pending必须在read_up_to_id之前赋值，才能和旧水位比较
+ */
+@Mapper
+public interface ReadWatermarkMapper extends BaseMapper<ReadWatermark> {
+
+    /**
+     * 推进已读水位，水位不存在时创建
+     * @param userId 用户ID
+     * @param scope 水位范围
+     * @param peerId 对方用户ID
+     * @param upToId 已读到的消息ID
+     * @return 影响行数
+     */
+    @Insert("INSERT INTO t_read_watermark (user_id, scope, peer_id, read_up_to_id, applied_up_to_id, pending, update_time) " +
+            "VALUES (#{userId}, #{scope}, #{peerId}, #{upToId}, 0, 1, NOW()) " +
+            "ON DUPLICATE KEY UPDATE " +
+            "pending = IF(VALUES(read_up_to_id) > applied_up_to_id, 1, pending), " +
+            "update_time = NOW(), " +
+            "read_up_to_id = GREATEST(read_up_to_id, VALUES(read_up_to_id))")
+    int advance(@Param("userId") Long userId, @Param("scope") String scope, @Param("peerId") Long peerId,
+                @Param("upToId") Long upToId);
+
+    /**
+     * 查询待补写的水位，先推进的先处理
+     * @param limit 最多条数
+     * @return 水位列表
+     */
+    @Select("SELECT * FROM t_read_watermark WHERE pending = 1 ORDER BY update_time, id LIMIT #{limit}")
+    List<ReadWatermark> selectPending(@Param("limit") int limit);
+
+    /**
+     * 记录补写进度，期间水位又被推进时保持待补写
+     * @param id 水位ID
+     * @param appliedUpToId 已补写到的水位
+     * @return 影响行数
+     */
+    @Update("UPDATE t_read_watermark SET pending = IF(read_up_to_id > #{appliedUpToId}, 1, 0), " +
+            "applied_up_to_id = GREATEST(applied_up_to_id, #{appliedUpToId}) WHERE id = #{id}")
+    int markApplied(@Param("id") Long id, @Param("appliedUpToId") Long appliedUpToId);
+}
@@ -0,0 +1,222 @@
+package com.xx.jaseatschoicejava.netty;
+
+import com.xx.jaseatschoicejava.config.NettyConfig;
+import com.xx.jaseatschoicejava.entity.Contact;
+import com.xx.jaseatschoicejava.netty.cluster.ChatClusterRouter;
+import com.xx.jaseatschoicejava.netty.codec.ChatMessage;
+import com.xx.jaseatschoicejava.netty.codec.SharedFrames;
+import com.xx.jaseatschoicejava.service.ContactService;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 头像更新通知
+ * 只通知把该用户加为好友的在线用户（t_contact中targetId为该用户、relationType为friend、status为normal的记录），
+ * 好友关系按用户缓存，过期或好友关系变化后重新加载；同一用户在合并窗口内多次更换头像时只发送最后一次。
+ * 通知按各Channel协商的协议编码并经ChatChannelWriter写出；多节点部署时广播给其他节点，由各节点通知本地的在线好友
+ */
+@Component
+public class AvatarUpdateNotifier {
+
+    private static final Logger logger = LoggerFactory.getLogger(AvatarUpdateNotifier.class);
+
+    private final ContactService contactService;
+    private final UserChannelRegistry userChannelRegistry;
+    private final ChatChannelWriter chatChannelWriter;
+    private final ChatClusterRouter chatClusterRouter;
+    private final ChatMetrics chatMetrics;
+    private final long coalesceMs;
+    private final long friendCacheTtlMs;
+
+    // 用户ID -> 把该用户加为好友的用户ID
+    private final ConcurrentHashMap<String, FriendSet> friendCache = new ConcurrentHashMap<>();
+
+    // 合并窗口内待发送的最新头像，用户ID -> 头像
+    private final ConcurrentHashMap<String, String> pendingAvatars = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+
+    public AvatarUpdateNotifier(ContactService contactService, UserChannelRegistry userChannelRegistry,
+                                ChatChannelWriter chatChannelWriter, ChatClusterRouter chatClusterRouter,
+                                ChatMetrics chatMetrics, NettyConfig nettyConfig) {
+        this.contactService = contactService;
+        this.userChannelRegistry = userChannelRegistry;
+        this.chatChannelWriter = chatChannelWriter;
+        this.chatClusterRouter = chatClusterRouter;
+        this.chatMetrics = chatMetrics;
+        this.coalesceMs = Math.max(0, nettyConfig.getAvatarNotifyCoalesceMs());
+        this.friendCacheTtlMs = Math.max(0, nettyConfig.getAvatarNotifyFriendCacheTtlMs());
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "avatar-notifier");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 提交头像更新通知，在合并窗口结束后发送给该用户的在线好友
+     *
+     * @param userId 用户ID
+     * @param avatar 新的头像
+     */
+    public void notifyAvatarUpdated(Object userId, String avatar) {
+        String key = ChatIds.normalize(String.valueOf(userId));
+        // 窗口内已有待发送的通知时只替换头像，由已安排的任务发送
+        if (pendingAvatars.put(key, avatar) != null) {
+            return;
+        }
+        try {
+            scheduler.schedule(() -> flush(key), coalesceMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            pendingAvatars.remove(key);
+            logger.warn("Avatar notifier is shut down, skip notification for user {}", key);
+        }
+    }
+
+    /**
+     * 好友关系变化后清除缓存，下次通知时重新加载
+     */
+    public void invalidateFriends(Object userId) {
+        friendCache.remove(ChatIds.normalize(String.valueOf(userId)));
+    }
+
+    /**
+     * 处理其他节点广播的头像更新，在通知线程上查询好友并通知本节点上的在线好友
+     */
+    public void deliverFromCluster(String userId, ChatMessage message) {
+        try {
+            scheduler.execute(() -> deliverLocal(userId, message));
+        } catch (RejectedExecutionException e) {
+            logger.warn("Avatar notifier is shut down, skip relayed notification for user {}", userId);
+        }
+    }
+
+    private void flush(String userId) {
+        String avatar = pendingAvatars.remove(userId);
+        if (avatar == null) {
+            return;
+        }
+        ChatMessage message = ChatMessage.avatarUpdate(userId, avatar);
+        // 其他节点上的好友由各节点通知
+        chatClusterRouter.relayAvatarUpdate(userId, message);
+        deliverLocal(userId, message);
+    }
+
+    private void deliverLocal(String userId, ChatMessage message) {
+        try {
+            send(userId, message);
+        } catch (Exception e) {
+            logger.error("Failed to send avatar update notification for user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    private void send(String userId, ChatMessage message) {
+        Set<String> friendIds = friendsOf(userId);
+        if (friendIds.isEmpty()) {
+            return;
+        }
+
+        // 好友和在线用户取较小的一方遍历
+        Set<String> onlineUserIds = userChannelRegistry.onlineUserIds();
+        Collection<String> candidates = friendIds.size() <= onlineUserIds.size() ? friendIds : onlineUserIds;
+        Set<String> filter = candidates == friendIds ? onlineUserIds : friendIds;
+
+        int sent = 0;
+        // 每种协议只编码一次，各Channel共享同一缓冲区
+        try (SharedFrames frames = new SharedFrames(message, ByteBufAllocator.DEFAULT)) {
+            for (String candidate : candidates) {
+                if (!filter.contains(candidate)) {
+                    continue;
+                }
+                for (Channel channel : userChannelRegistry.getChannels(candidate)) {
+                    if (!channel.isActive()) {
+                        continue;
+                    }
+                    try {
+                        // 头像通知可以丢弃，不转存离线
+                        chatChannelWriter.write(channel, frames.frameFor(channel), null);
+                        sent++;
+                    } catch (Exception e) {
+                        logger.error("Failed to send avatar update of user {} to {}: {}", userId, candidate, e.getMessage());
+                    }
+                }
+            }
+        }
+        if (sent > 0) {
+            chatMetrics.messageOut(message.msgType(), sent);
+        }
+        logger.debug("Avatar update of user {} sent to {} channels", userId, sent);
+    }
+
+    private Set<String> friendsOf(String userId) {
+        long now = System.currentTimeMillis();
+        FriendSet cached = friendCache.get(userId);
+        if (cached != null && now - cached.loadedAt < friendCacheTtlMs) {
+            return cached.userIds;
+        }
+
+        Long targetId = ChatIds.toLong(userId);
+        if (targetId == null) {
+            return Set.of();
+        }
+        List<Contact> relations = contactService.lambdaQuery()
+                .select(Contact::getUserId)
+                .eq(Contact::getTargetId, targetId)
+                .eq(Contact::getRelationType, "friend")
+                .eq(Contact::getStatus, "normal")
+                .list();
+        Set<String> userIds = new HashSet<>(relations.size() * 2);
+        for (Contact relation : relations) {
+            userIds.add(String.valueOf(relation.getUserId()));
+        }
+        FriendSet loaded = new FriendSet(Set.copyOf(userIds), now);
+        friendCache.put(userId, loaded);
+        return loaded.userIds;
+    }
+
+    /**
+     * 定期清理过期的好友缓存
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictExpiredFriends() {
+        long now = System.currentTimeMillis();
+        friendCache.values().removeIf(friendSet -> now - friendSet.loadedAt >= friendCacheTtlMs);
+    }
+
+    private static final class FriendSet {
+        private final Set<String> userIds;
+        private final long loadedAt;
+
+        private FriendSet(Set<String> userIds, long loadedAt) {
+            this.userIds = userIds;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
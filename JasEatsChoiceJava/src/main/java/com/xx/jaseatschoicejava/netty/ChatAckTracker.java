@@ -0,0 +1,285 @@
+package com.xx.jaseatschoicejava.netty;
+
+import com.xx.jaseatschoicejava.config.NettyConfig;
+import com.xx.jaseatschoicejava.netty.codec.ChatCodecs;
+import com.xx.jaseatschoicejava.netty.codec.ChatMessage;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 投递确认跟踪
+ * 可离线存储的消息写给接收方后进入该Channel的等待确认窗口，收到client_ack后移出；
+ * 超时未确认时重传，超过最大重传次数或连接断开后，若用户的其他设备也未确认则转存离线消息。
+ * 窗口已满时消息排队，有消息被确认后再发出。窗口状态只在Channel的EventLoop中访问。
+ * 只有发送过client_ack的Channel才跟踪确认，其余Channel按普通方式写出，避免不回复确认的客户端收到重传和重复的离线补发
+ */
+@Component
+public class ChatAckTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatAckTracker.class);
+
+    private static final AttributeKey<AckWindow> WINDOW_KEY = AttributeKey.valueOf("ackWindow");
+
+    private static final AttributeKey<Boolean> ACK_CAPABLE_KEY = AttributeKey.valueOf("ackCapable");
+
+    private final ChatChannelWriter chatChannelWriter;
+    private final OfflineMessageWriter offlineMessageWriter;
+    private final ChatMetrics chatMetrics;
+    private final boolean enabled;
+    private final long timeoutMs;
+    private final int maxRetries;
+    private final int windowSize;
+    private final int queueLimit;
+    private final AckHandler ackHandler = new AckHandler();
+
+    public ChatAckTracker(ChatChannelWriter chatChannelWriter, OfflineMessageWriter offlineMessageWriter,
+                          ChatMetrics chatMetrics, NettyConfig nettyConfig) {
+        this.chatChannelWriter = chatChannelWriter;
+        this.offlineMessageWriter = offlineMessageWriter;
+        this.chatMetrics = chatMetrics;
+        this.enabled = nettyConfig.isAckEnabled();
+        this.timeoutMs = Math.max(1, nettyConfig.getAckTimeoutMs());
+        this.maxRetries = Math.max(0, nettyConfig.getAckMaxRetries());
+        this.windowSize = Math.max(1, nettyConfig.getAckWindowSize());
+        this.queueLimit = Math.max(1, nettyConfig.getSlowConsumerPendingLimit());
+    }
+
+    /**
+     * 在连接断开时清理等待确认窗口的Pipeline处理器，需运行在EventLoop上
+     */
+    public ChannelHandler handler() {
+        return ackHandler;
+    }
+
+    /**
+     * 消息是否需要接收方确认
+     */
+    public boolean isTracked(ChatMessage message) {
+        return enabled && message.msgId() != null && offlineMessageWriter.isStorable(message);
+    }
+
+    /**
+     * 标记Channel的客户端支持投递确认
+     */
+    public void enableFor(Channel channel) {
+        if (enabled) {
+            channel.attr(ACK_CAPABLE_KEY).set(Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Channel是否跟踪确认
+     */
+    public boolean isTracked(Channel channel) {
+        return enabled && Boolean.TRUE.equals(channel.attr(ACK_CAPABLE_KEY).get());
+    }
+
+    /**
+     * 将消息发给接收方的各个在线设备，并等待确认
+     *
+     * @param channels       接收方支持确认的在线Channel，不能为空
+     * @param receiverId     接收方用户ID，未确认时按该ID转存离线消息
+     * @param message        带投递ID的消息
+     * @param storeOnExpiry  所有设备都未确认时是否转存离线；消息已写给不支持确认的设备时为false，避免重复投递
+     */
+    public void send(Collection<Channel> channels, String receiverId, ChatMessage message, boolean storeOnExpiry) {
+        Delivery delivery = new Delivery(message, receiverId, channels.size(), storeOnExpiry);
+        for (Channel channel : channels) {
+            if (channel.eventLoop().inEventLoop()) {
+                enqueue(channel, delivery);
+            } else {
+                channel.eventLoop().execute(() -> enqueue(channel, delivery));
+            }
+        }
+    }
+
+    /**
+     * 处理接收方的确认
+     */
+    public void ack(Channel channel, Long msgId) {
+        if (msgId == null) {
+            return;
+        }
+        if (channel.eventLoop().inEventLoop()) {
+            doAck(channel, msgId);
+        } else {
+            channel.eventLoop().execute(() -> doAck(channel, msgId));
+        }
+    }
+
+    private void enqueue(Channel channel, Delivery delivery) {
+        if (!channel.isActive()) {
+            expire(channel, delivery);
+            return;
+        }
+        AckWindow window = channel.attr(WINDOW_KEY).get();
+        if (window == null) {
+            window = new AckWindow();
+            channel.attr(WINDOW_KEY).set(window);
+        }
+        InFlight inFlight = new InFlight(delivery);
+        if (window.inFlight.size() < windowSize) {
+            window.inFlight.put(delivery.message.msgId(), inFlight);
+            transmit(channel, inFlight);
+        } else if (window.waiting.size() < queueLimit) {
+            window.waiting.add(inFlight);
+        } else {
+            // 接收方长期不确认，排队也已满，直接按未确认处理
+            expire(channel, delivery);
+        }
+    }
+
+    private void transmit(Channel channel, InFlight inFlight) {
+        inFlight.attempts++;
+        ChatMessage message = inFlight.delivery.message;
+        try {
+            // 未确认的消息由本跟踪器负责转存离线，写出器不再转存
+            chatChannelWriter.write(channel, ChatCodecs.encodeFrame(channel, message), null);
+        } catch (IOException e) {
+            // 编码失败时仍等待超时，按重传和转存离线流程处理
+            logger.error("Failed to encode message {} for {}: {}", message.msgId(), channel.remoteAddress(), e.getMessage());
+        }
+        inFlight.timeout = channel.eventLoop().schedule(
+                () -> onTimeout(channel, message.msgId()), timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void onTimeout(Channel channel, Long msgId) {
+        AckWindow window = channel.attr(WINDOW_KEY).get();
+        InFlight inFlight = window != null ? window.inFlight.get(msgId) : null;
+        if (inFlight == null) {
+            return;
+        }
+        // 用户的其他设备已确认，无需重传
+        if (inFlight.delivery.acked.get()) {
+            window.inFlight.remove(msgId);
+            promote(channel, window);
+            return;
+        }
+        if (inFlight.attempts <= maxRetries && channel.isActive()) {
+            chatMetrics.ackRetransmitted();
+            transmit(channel, inFlight);
+            return;
+        }
+        window.inFlight.remove(msgId);
+        logger.info("Message {} not acknowledged by {} after {} attempts", msgId, channel.remoteAddress(), inFlight.attempts);
+        expire(channel, inFlight.delivery);
+        promote(channel, window);
+    }
+
+    private void doAck(Channel channel, Long msgId) {
+        AckWindow window = channel.attr(WINDOW_KEY).get();
+        InFlight inFlight = window != null ? window.inFlight.remove(msgId) : null;
+        if (inFlight == null) {
+            return;
+        }
+        inFlight.delivery.acked.set(true);
+        if (inFlight.timeout != null) {
+            inFlight.timeout.cancel(false);
+        }
+        promote(channel, window);
+    }
+
+    /**
+     * 窗口有空位时发出排队的消息，已被其他设备确认的消息直接跳过
+     */
+    private void promote(Channel channel, AckWindow window) {
+        InFlight next;
+        while (window.inFlight.size() < windowSize && (next = window.waiting.poll()) != null) {
+            if (next.delivery.acked.get()) {
+                continue;
+            }
+            window.inFlight.put(next.delivery.message.msgId(), next);
+            transmit(channel, next);
+        }
+    }
+
+    /**
+     * 某个设备放弃投递，所有设备都放弃且均未确认时转存离线消息；
+     * 在EventLoop上调用，转存可能同步写库或访问Redis，交给Channel的业务线程执行
+     */
+    private void expire(Channel channel, Delivery delivery) {
+        if (delivery.remaining.decrementAndGet() == 0 && !delivery.acked.get()) {
+            chatMetrics.ackExpired();
+            if (delivery.storeOnExpiry) {
+                ChatTaskExecutor.executeBlocking(channel,
+                        () -> offlineMessageWriter.submit(delivery.message, delivery.receiverId));
+            }
+        }
+    }
+
+    /**
+     * 一条消息对一个接收方的投递，用户的多个设备共享
+     */
+    private static final class Delivery {
+        private final ChatMessage message;
+        private final String receiverId;
+        private final AtomicBoolean acked = new AtomicBoolean();
+        private final AtomicInteger remaining;
+        private final boolean storeOnExpiry;
+
+        private Delivery(ChatMessage message, String receiverId, int channels, boolean storeOnExpiry) {
+            this.message = message;
+            this.receiverId = receiverId;
+            this.remaining = new AtomicInteger(channels);
+            this.storeOnExpiry = storeOnExpiry;
+        }
+    }
+
+    /**
+     * 一条消息在某个设备上的投递状态
+     */
+    private static final class InFlight {
+        private final Delivery delivery;
+        private int attempts;
+        private ScheduledFuture<?> timeout;
+
+        private InFlight(Delivery delivery) {
+            this.delivery = delivery;
+        }
+    }
+
+    /**
+     * Channel的等待确认窗口
+     */
+    private static final class AckWindow {
+        private final LinkedHashMap<Long, InFlight> inFlight = new LinkedHashMap<>();
+        private final ArrayDeque<InFlight> waiting = new ArrayDeque<>();
+    }
+
+    @ChannelHandler.Sharable
+    private final class AckHandler extends ChannelInboundHandlerAdapter {
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            // 连接断开时未确认的消息不再等待超时，直接按未确认处理
+            AckWindow window = ctx.channel().attr(WINDOW_KEY).getAndSet(null);
+            if (window != null) {
+                for (InFlight inFlight : window.inFlight.values()) {
+                    if (inFlight.timeout != null) {
+                        inFlight.timeout.cancel(false);
+                    }
+                    expire(ctx.channel(), inFlight.delivery);
+                }
+                for (InFlight inFlight : window.waiting) {
+                    expire(ctx.channel(), inFlight.delivery);
+                }
+            }
+            super.channelInactive(ctx);
+        }
+    }
+}
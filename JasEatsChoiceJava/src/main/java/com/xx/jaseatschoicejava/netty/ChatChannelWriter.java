@@ -0,0 +1,211 @@
+package com.xx.jaseatschoicejava.netty;
+
+import com.xx.jaseatschoicejava.config.NettyConfig;
+import com.xx.jaseatschoicejava.netty.codec.ChatMessage;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+
+/**
+ * 带背压的消息写出器
+ * Channel可写时直接写出；不可写时消息进入该Channel的有界暂存队列，恢复可写后按顺序补写；
+ * 队列已满时按配置的策略处理：丢弃、转存离线消息或断开连接，避免慢客户端在堆上堆积无限的待发送数据
+ */
+@Component
+public class ChatChannelWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatChannelWriter.class);
+
+    /**
+     * Channel的暂存队列，只在该Channel的EventLoop中访问
+     */
+    private static final AttributeKey<ArrayDeque<Pending>> PENDING_KEY = AttributeKey.valueOf("pendingWrites");
+
+    /**
+     * Channel变为不可写的时间（纳秒），可写时为null，只在该Channel的EventLoop中访问
+     */
+    private static final AttributeKey<Long> UNWRITABLE_SINCE_KEY = AttributeKey.valueOf("unwritableSince");
+
+    /**
+     * 慢消费者处理策略
+     */
+    public enum SlowConsumerPolicy {
+        DROP, SPILL, DISCONNECT
+    }
+
+    private final OfflineMessageWriter offlineMessageWriter;
+    private final UserChannelRegistry userChannelRegistry;
+    private final ChatMetrics chatMetrics;
+    private final int pendingLimit;
+    private final SlowConsumerPolicy policy;
+    private final WritabilityHandler writabilityHandler = new WritabilityHandler();
+
+    public ChatChannelWriter(OfflineMessageWriter offlineMessageWriter, UserChannelRegistry userChannelRegistry,
+                             ChatMetrics chatMetrics, NettyConfig nettyConfig) {
+        this.offlineMessageWriter = offlineMessageWriter;
+        this.userChannelRegistry = userChannelRegistry;
+        this.chatMetrics = chatMetrics;
+        this.pendingLimit = Math.max(1, nettyConfig.getSlowConsumerPendingLimit());
+        this.policy = SlowConsumerPolicy.valueOf(nettyConfig.getSlowConsumerPolicy().trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * 负责在可写性变化时补写暂存消息、在断开时清理暂存消息的Pipeline处理器，需运行在EventLoop上
+     */
+    public ChannelHandler writabilityHandler() {
+        return writabilityHandler;
+    }
+
+    /**
+     * 写出消息帧
+     *
+     * @param channel 目标Channel
+     * @param frame   已编码的消息帧，写出器负责释放
+     * @param message 帧对应的消息，慢消费者转存离线消息时使用
+     */
+    public void write(Channel channel, WebSocketFrame frame, ChatMessage message) {
+        if (channel.eventLoop().inEventLoop()) {
+            doWrite(channel, frame, message);
+        } else {
+            channel.eventLoop().execute(() -> doWrite(channel, frame, message));
+        }
+    }
+
+    private void doWrite(Channel channel, WebSocketFrame frame, ChatMessage message) {
+        if (!channel.isActive()) {
+            ReferenceCountUtil.release(frame);
+            spill(channel, message);
+            return;
+        }
+
+        ArrayDeque<Pending> pending = channel.attr(PENDING_KEY).get();
+        if ((pending == null || pending.isEmpty()) && channel.isWritable()) {
+            channel.writeAndFlush(frame, channel.voidPromise());
+            return;
+        }
+
+        if (pending == null) {
+            pending = new ArrayDeque<>();
+            channel.attr(PENDING_KEY).set(pending);
+        }
+        if (pending.size() < pendingLimit) {
+            pending.add(new Pending(frame, message));
+            return;
+        }
+
+        // 暂存队列已满，按策略处理慢消费者
+        ReferenceCountUtil.release(frame);
+        switch (policy) {
+            case DROP:
+                chatMetrics.slowConsumerDropped();
+                break;
+            case SPILL:
+                spill(channel, message);
+                break;
+            case DISCONNECT:
+                chatMetrics.slowConsumerDisconnected();
+                logger.warn("Disconnect slow consumer {}, pending writes: {}", channel.remoteAddress(), pending.size());
+                channel.close();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 转存为接收方的离线消息，无法离线存储的消息（如群消息）视为丢弃；
+     * 接收方在其他设备上仍在线时消息已同时写给了那些Channel，不再转存，避免重复投递。
+     * 在EventLoop上调用，转存可能同步写库或访问Redis，交给Channel的业务线程执行
+     */
+    private void spill(Channel channel, ChatMessage message) {
+        String receiverId = channel.attr(UserChannelRegistry.USER_ID_KEY).get();
+        if (message == null || receiverId == null || !offlineMessageWriter.isStorable(message)
+                || userChannelRegistry.hasActiveChannel(receiverId, channel)) {
+            chatMetrics.slowConsumerDropped();
+            return;
+        }
+        chatMetrics.slowConsumerSpilled();
+        ChatTaskExecutor.executeBlocking(channel, () -> offlineMessageWriter.submit(message, receiverId));
+    }
+
+    /**
+     * 待补写的消息
+     */
+    private static final class Pending {
+        private final WebSocketFrame frame;
+        private final ChatMessage message;
+
+        private Pending(WebSocketFrame frame, ChatMessage message) {
+            this.frame = frame;
+            this.message = message;
+        }
+    }
+
+    /**
+     * 统计Channel不可写的持续时间
+     */
+    private void recordWritability(Channel channel) {
+        if (!channel.isWritable()) {
+            if (channel.attr(UNWRITABLE_SINCE_KEY).setIfAbsent(System.nanoTime()) == null) {
+                chatMetrics.channelUnwritable();
+            }
+            return;
+        }
+        Long unwritableSince = channel.attr(UNWRITABLE_SINCE_KEY).getAndSet(null);
+        if (unwritableSince != null) {
+            chatMetrics.channelWritable(System.nanoTime() - unwritableSince);
+        }
+    }
+
+    @ChannelHandler.Sharable
+    private final class WritabilityHandler extends ChannelInboundHandlerAdapter {
+
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+            Channel channel = ctx.channel();
+            recordWritability(channel);
+            ArrayDeque<Pending> pending = channel.attr(PENDING_KEY).get();
+            if (pending != null && !pending.isEmpty()) {
+                boolean written = false;
+                while (channel.isWritable() && !pending.isEmpty()) {
+                    channel.write(pending.poll().frame, channel.voidPromise());
+                    written = true;
+                }
+                if (written) {
+                    channel.flush();
+                }
+            }
+            super.channelWritabilityChanged(ctx);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            // 断开时仍不可写的Channel结束计时
+            Long unwritableSince = ctx.channel().attr(UNWRITABLE_SINCE_KEY).getAndSet(null);
+            if (unwritableSince != null) {
+                chatMetrics.channelWritable(System.nanoTime() - unwritableSince);
+            }
+
+            // 连接断开时未写出的消息转存离线，避免丢失并释放缓冲区
+            ArrayDeque<Pending> pending = ctx.channel().attr(PENDING_KEY).getAndSet(null);
+            if (pending != null) {
+                Pending next;
+                while ((next = pending.poll()) != null) {
+                    ReferenceCountUtil.release(next.frame);
+                    spill(ctx.channel(), next.message);
+                }
+            }
+            super.channelInactive(ctx);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.xx.jaseatschoicejava.netty;
+
+import com.xx.jaseatschoicejava.netty.cluster.ChatClusterRouter;
+import com.xx.jaseatschoicejava.netty.cluster.ClusterEnvelope;
+import com.xx.jaseatschoicejava.netty.codec.ChatMessage;
+import com.xx.jaseatschoicejava.netty.codec.SharedFrames;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 聊天消息投递
+ * 接收方在本节点在线时直接写出；在其他节点在线时经ChatClusterRouter转发；都不在线时转存离线消息
+ */
+@Component
+public class ChatDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatDispatcher.class);
+
+    private final UserChannelRegistry userChannelRegistry;
+    private final GroupChannelRegistry groupChannelRegistry;
+    private final ChatChannelWriter chatChannelWriter;
+    private final OfflineMessageWriter offlineMessageWriter;
+    private final ChatClusterRouter chatClusterRouter;
+    private final ChatAckTracker chatAckTracker;
+    private final AvatarUpdateNotifier avatarUpdateNotifier;
+    private final ChatMetrics chatMetrics;
+
+    /**
+     * 投递ID的时间戳起点（2024-01-01 00:00:00 UTC）
+     */
+    private static final long MESSAGE_ID_EPOCH = 1704067200000L;
+
+    /**
+     * 投递ID的节点部分（10位），避免不同节点分配的ID冲突
+     */
+    private final long nodeBits;
+
+    /**
+     * 上一次分配的投递ID
+     */
+    private final AtomicLong lastMessageId = new AtomicLong();
+
+    public ChatDispatcher(UserChannelRegistry userChannelRegistry, GroupChannelRegistry groupChannelRegistry,
+                          ChatChannelWriter chatChannelWriter, OfflineMessageWriter offlineMessageWriter,
+                          ChatClusterRouter chatClusterRouter, ChatAckTracker chatAckTracker,
+                          AvatarUpdateNotifier avatarUpdateNotifier, ChatMetrics chatMetrics) {
+        this.userChannelRegistry = userChannelRegistry;
+        this.groupChannelRegistry = groupChannelRegistry;
+        this.chatChannelWriter = chatChannelWriter;
+        this.offlineMessageWriter = offlineMessageWriter;
+        this.chatClusterRouter = chatClusterRouter;
+        this.chatAckTracker = chatAckTracker;
+        this.avatarUpdateNotifier = avatarUpdateNotifier;
+        this.chatMetrics = chatMetrics;
+        this.nodeBits = (chatClusterRouter.getNodeId().hashCode() & 0x3FFL) << 12;
+    }
+
+    /**
+     * 分配投递ID：毫秒时间戳(高位) + 节点(10位) + 序号(12位)，同一节点内单调递增
+     */
+    public long nextMessageId() {
+        while (true) {
+            long now = ((System.currentTimeMillis() - MESSAGE_ID_EPOCH) << 22) | nodeBits;
+            long last = lastMessageId.get();
+            long next = now > last ? now : last + 1;
+            if (lastMessageId.compareAndSet(last, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * 订阅其他节点转发来的消息
+     */
+    @PostConstruct
+    public void subscribe() {
+        chatClusterRouter.onInbound(this::deliverFromCluster);
+    }
+
+    /**
+     * 将用户ID绑定到Channel，并在在线状态注册表中登记
+     *
+     * @return 是否为新的绑定；Channel已绑定该用户时返回false
+     */
+    public boolean bindUser(String userId, Channel channel) {
+        String key = ChatIds.normalize(userId);
+        if (key.isEmpty()) {
+            return false;
+        }
+        String previous = userChannelRegistry.bind(key, channel);
+        if (key.equals(previous)) {
+            return false;
+        }
+        // 同一连接切换了用户，解除旧用户的群路由
+        if (previous != null) {
+            groupChannelRegistry.unbindChannel(channel);
+            if (!userChannelRegistry.isOnline(previous)) {
+                chatClusterRouter.userOffline(previous);
+            }
+        }
+        // 绑定过程中连接已断开，channelInactive可能已先执行，这里补偿清理
+        if (!channel.isActive()) {
+            userChannelRegistry.remove(key, channel);
+            return false;
+        }
+        chatClusterRouter.userOnline(key);
+        return true;
+    }
+
+    /**
+     * Channel断开时解除用户映射和群路由，用户在本节点已无在线设备时移除其在线状态
+     */
+    public void unbindChannel(Channel channel) {
+        String userId = userChannelRegistry.unbind(channel);
+        groupChannelRegistry.unbindChannel(channel);
+        if (userId != null && !userChannelRegistry.isOnline(userId)) {
+            chatClusterRouter.userOffline(userId);
+        }
+    }
+
+    /**
+     * 发送消息给指定用户在本节点和其他节点上的所有在线设备，用户不在线时交给离线消息写入器异步入库
+     */
+    public void sendToUser(String userId, ChatMessage message) {
+        // 用户的多个设备可能分布在不同节点上，本节点已写出时仍需转发给其他节点
+        boolean relayed = chatClusterRouter.relayToUser(ChatIds.normalize(userId), message);
+        boolean delivered = deliverLocal(userId, message, relayed);
+        if (delivered || relayed) {
+            logger.info("Sent message: {} to user: {} (local: {}, relayed: {})", message, userId, delivered, relayed);
+            return;
+        }
+
+        logger.info("User {} is offline, storing message in database", userId);
+        // 将消息交给写入器批量入库，等待用户上线后推送
+        offlineMessageWriter.submit(message, userId);
+    }
+
+    /**
+     * 发送消息给群内的在线成员，其他节点上的成员由各节点投递
+     */
+    public void sendToGroup(String groupId, ChatMessage message) {
+        deliverLocalGroup(groupId, message);
+        chatClusterRouter.relayToGroup(ChatIds.normalize(groupId), message);
+    }
+
+    /**
+     * 定期续期本节点上在线用户的在线状态
+     */
+    @Scheduled(fixedDelayString = "${netty.cluster.presenceRefreshMs:10000}")
+    public void refreshPresence() {
+        chatClusterRouter.refreshPresence(userChannelRegistry.onlineUserIds());
+    }
+
+    /**
+     * 处理其他节点转发来的消息，只投递给本节点的Channel，不再继续转发
+     */
+    void deliverFromCluster(ClusterEnvelope envelope) {
+        if (ClusterEnvelope.KIND_GROUP.equals(envelope.kind())) {
+            deliverLocalGroup(envelope.target(), envelope.message());
+            return;
+        }
+        if (ClusterEnvelope.KIND_AVATAR.equals(envelope.kind())) {
+            avatarUpdateNotifier.deliverFromCluster(envelope.target(), envelope.message());
+            return;
+        }
+        // 用户在其他节点上仍有在线设备时，由那些设备接收，本节点不转存离线
+        boolean onlineElsewhere = chatClusterRouter.isOnlineElsewhere(envelope.target());
+        if (!deliverLocal(envelope.target(), envelope.message(), onlineElsewhere) && !onlineElsewhere) {
+            // 转发途中用户已下线
+            logger.info("User {} went offline before relayed message arrived, storing message in database", envelope.target());
+            offlineMessageWriter.submit(envelope.message(), envelope.target());
+        }
+    }
+
+    /**
+     * 写给用户在本节点上的每个在线设备
+     *
+     * @param deliveredElsewhere 消息是否已发往用户在其他节点上的设备，是则确认超时后不转存离线
+     * @return 是否至少写给了一个设备
+     */
+    private boolean deliverLocal(String userId, ChatMessage message, boolean deliveredElsewhere) {
+        Collection<Channel> channels = userChannelRegistry.getChannels(userId);
+        if (channels.isEmpty()) {
+            return false;
+        }
+        // 需要确认的消息写给支持确认的设备时交给确认跟踪器发送，超时重传或转存离线
+        List<Channel> tracked = new ArrayList<>();
+        if (chatAckTracker.isTracked(message)) {
+            for (Channel channel : channels) {
+                if (channel.isActive() && chatAckTracker.isTracked(channel)) {
+                    tracked.add(channel);
+                }
+            }
+        }
+
+        int delivered = 0;
+        // 用户的多个设备共享同一份编码结果
+        try (SharedFrames frames = new SharedFrames(message, ByteBufAllocator.DEFAULT)) {
+            for (Channel channel : channels) {
+                if (!channel.isActive() || tracked.contains(channel)) {
+                    continue;
+                }
+                try {
+                    chatChannelWriter.write(channel, frames.frameFor(channel), message);
+                    delivered++;
+                } catch (Exception e) {
+                    logger.error("Failed to send message to user {}: {}", userId, e.getMessage());
+                }
+            }
+        }
+        if (!tracked.isEmpty()) {
+            chatAckTracker.send(tracked, ChatIds.normalize(userId), message, delivered == 0 && !deliveredElsewhere);
+        }
+        if (delivered + tracked.size() == 0) {
+            return false;
+        }
+        recordFanout(message, delivered + tracked.size(), false);
+        return true;
+    }
+
+    /**
+     * 写给群在本节点上的在线成员，每种协议只编码一次，各成员共享同一缓冲区
+     */
+    private void deliverLocalGroup(String groupId, ChatMessage message) {
+        Set<Channel> members = groupChannelRegistry.getGroupChannels(groupId);
+        if (members.isEmpty()) {
+            return;
+        }
+        int delivered = 0;
+        try (SharedFrames frames = new SharedFrames(message, ByteBufAllocator.DEFAULT)) {
+            for (Channel channel : members) {
+                // 单个成员写出失败不影响其他成员
+                try {
+                    chatChannelWriter.write(channel, frames.frameFor(channel), message);
+                    delivered++;
+                } catch (Exception e) {
+                    logger.error("Failed to send group message to member of group {}: {}", groupId, e.getMessage());
+                }
+            }
+        }
+        if (delivered == 0) {
+            return;
+        }
+        recordFanout(message, delivered, true);
+        logger.info("Sent group message: {} to {} online members of group: {}", message, delivered, groupId);
+    }
+
+    private void recordFanout(ChatMessage message, int channels, boolean group) {
+        chatMetrics.messageOut(message.msgType(), channels);
+        if (group) {
+            chatMetrics.groupFanout(channels);
+        } else {
+            chatMetrics.userFanout(channels);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.xx.jaseatschoicejava.netty;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.xx.jaseatschoicejava.enums.MsgType;
+import com.xx.jaseatschoicejava.event.GroupOrderSyncEvent;
+import com.xx.jaseatschoicejava.event.OrderStatusChangedEvent;
+import com.xx.jaseatschoicejava.netty.codec.ChatMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * 业务事件推送
+ * 订阅Spring服务发布的订单状态变更、拼单同步事件，通过ChatDispatcher推送给相关用户、商家和群的在线Channel，
+ * 其他节点上的接收方由集群转发，离线用户的订单状态消息转存离线消息。
+ * 在发布方的事务提交后执行，没有事务时立即执行
+ */
+@Component
+public class ChatEventListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatEventListener.class);
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    // 系统消息的发送方ID
+    private static final String SYSTEM_SENDER_ID = "0";
+
+    private final ChatDispatcher chatDispatcher;
+
+    public ChatEventListener(ChatDispatcher chatDispatcher) {
+        this.chatDispatcher = chatDispatcher;
+    }
+
+    /**
+     * 订单状态变更后推送给下单用户和商家
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderStatusChanged(OrderStatusChangedEvent event) {
+        String content;
+        try {
+            ObjectNode payload = OBJECT_MAPPER.createObjectNode();
+            payload.put("orderId", event.orderId());
+            payload.put("status", event.status());
+            payload.put("timestamp", System.currentTimeMillis());
+            content = OBJECT_MAPPER.writeValueAsString(payload);
+        } catch (Exception e) {
+            logger.error("Failed to encode order status event {}: {}", event, e.getMessage());
+            return;
+        }
+        push(event.userId(), content);
+        push(event.merchantId(), content);
+    }
+
+    /**
+     * 拼单同步消息推送给群内的在线成员
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onGroupOrderSync(GroupOrderSyncEvent event) {
+        if (event.groupId() == null || event.groupId().isEmpty()) {
+            return;
+        }
+        ChatMessage message = ChatMessage.forward(MsgType.ORDER_SYNC.getValue(), SYSTEM_SENDER_ID,
+                event.groupId(), event.content(), chatDispatcher.nextMessageId());
+        try {
+            chatDispatcher.sendToGroup(event.groupId(), message);
+        } catch (Exception e) {
+            logger.error("Failed to push group order sync to group {}: {}", event.groupId(), e.getMessage());
+        }
+    }
+
+    private void push(String receiverId, String content) {
+        if (receiverId == null || receiverId.isEmpty()) {
+            return;
+        }
+        // 每个接收方使用独立的投递ID，分别确认
+        ChatMessage message = ChatMessage.forward(MsgType.ORDER_STATUS.getValue(), SYSTEM_SENDER_ID,
+                receiverId, content, chatDispatcher.nextMessageId());
+        try {
+            chatDispatcher.sendToUser(receiverId, message);
+        } catch (Exception e) {
+            logger.error("Failed to push order status to {}: {}", receiverId, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.xx.jaseatschoicejava.netty;
+
+/**
+ * 聊天路由ID工具
+ * 客户端可能携带带前缀的ID（U/M/G + 数字），也可能直接使用数据库中的纯数字ID，
+ * 路由表统一使用纯数字形式作为key
+ */
+public final class ChatIds {
+
+    private ChatIds() {
+    }
+
+    /**
+     * 去掉U/M/G前缀，返回纯数字形式的ID；无法识别的格式原样返回
+     */
+    public static String normalize(String id) {
+        if (id == null) {
+            return "";
+        }
+        String trimmed = id.trim();
+        if (trimmed.length() > 1) {
+            char prefix = trimmed.charAt(0);
+            if ((prefix == 'U' || prefix == 'M' || prefix == 'G') && isDigits(trimmed, 1)) {
+                return trimmed.substring(1);
+            }
+        }
+        return trimmed;
+    }
+
+    /**
+     * 转换为Long类型ID，无法转换时返回null
+     */
+    public static Long toLong(String id) {
+        String normalized = normalize(id);
+        if (normalized.isEmpty() || !isDigits(normalized, 0)) {
+            return null;
+        }
+        try {
+            return Long.parseLong(normalized);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean isDigits(String str, int from) {
+        for (int i = from; i < str.length(); i++) {
+            if (!Character.isDigit(str.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
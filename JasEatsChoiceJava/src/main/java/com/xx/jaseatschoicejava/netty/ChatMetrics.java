@@ -0,0 +1,311 @@
+package com.xx.jaseatschoicejava.netty;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 聊天服务监控指标
+ * 统一注册Netty聊天相关的Micrometer指标，通过actuator的/actuator/metrics查看
+ */
+@Component
+public class ChatMetrics {
+
+    /**
+     * 按消息类型统计时使用的类型，客户端发来的其他类型统一记为other，避免标签无限增长
+     */
+    private static final Set<String> KNOWN_TYPES = Set.of("single", "group", "order_sync", "order_status", "error",
+            "server_ack", "client_ack", "session", "resume", "reconnect", "avatar_update");
+
+    private final MeterRegistry meterRegistry;
+
+    // 入站、出站消息数，按消息类型
+    private final ConcurrentHashMap<String, Counter> messagesIn = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Counter> messagesOut = new ConcurrentHashMap<>();
+
+    // 扇出：一条消息在本节点写出的Channel数
+    private final DistributionSummary userFanout;
+    private final DistributionSummary groupFanout;
+
+    // 消息从I/O线程读入到服务端确认写出的耗时
+    private final Timer messageLatency;
+
+    // 离线消息：进入会话缓冲区的条数
+    private final Counter offlineBuffered;
+
+    // 背压：Channel每次不可写持续的时间与当前不可写的Channel数
+    private final Timer unwritableTime;
+    private final AtomicInteger unwritableChannels = new AtomicInteger();
+
+    // 离线消息：批量写入成功的条数
+    private final Counter offlineStored;
+
+    // 离线消息：队列已满或已停止时同步写库的条数
+    private final Counter offlineFallback;
+
+    // 离线消息：写库失败的条数
+    private final Counter offlineFailed;
+
+    // 离线消息：上线后补发的条数
+    private final Counter offlineReplayed;
+
+    // 慢消费者：暂存队列已满后丢弃、转存离线、断开连接的次数
+    private final Counter slowConsumerDropped;
+    private final Counter slowConsumerSpilled;
+    private final Counter slowConsumerDisconnected;
+
+    // 连接：建立数、空闲回收数与当前在线连接数
+    private final Counter connectionsAccepted;
+    private final Counter connectionsReaped;
+    private final AtomicInteger connectionsActive = new AtomicInteger();
+
+    // 投递确认：超时重传次数、多次未确认后转存离线的条数
+    private final Counter ackRetransmitted;
+    private final Counter ackExpired;
+
+    // 限流：按范围(channel/user)和处理方式(error/dropped)统计的超限消息数
+    private final Counter rateLimitedChannelError;
+    private final Counter rateLimitedChannelDropped;
+    private final Counter rateLimitedUserError;
+    private final Counter rateLimitedUserDropped;
+
+    // 会话：携带令牌恢复的次数、从数据库全量补发的次数
+    private final Counter sessionResumed;
+    private final Counter sessionResynced;
+
+    public ChatMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.offlineStored = Counter.builder("chat.offline.stored")
+                .description("离线消息批量写入成功条数")
+                .register(meterRegistry);
+        this.offlineFallback = Counter.builder("chat.offline.fallback")
+                .description("离线消息同步写库条数")
+                .register(meterRegistry);
+        this.offlineFailed = Counter.builder("chat.offline.failed")
+                .description("离线消息写库失败条数")
+                .register(meterRegistry);
+        this.offlineReplayed = Counter.builder("chat.offline.replayed")
+                .description("离线消息上线补发条数")
+                .register(meterRegistry);
+        this.slowConsumerDropped = slowConsumerCounter("dropped");
+        this.slowConsumerSpilled = slowConsumerCounter("spilled");
+        this.slowConsumerDisconnected = slowConsumerCounter("disconnected");
+        this.connectionsAccepted = Counter.builder("chat.connections.accepted")
+                .description("建立的连接数")
+                .register(meterRegistry);
+        this.connectionsReaped = Counter.builder("chat.connections.reaped")
+                .description("因心跳超时被回收的连接数")
+                .register(meterRegistry);
+        this.ackRetransmitted = Counter.builder("chat.ack.retransmitted")
+                .description("等待确认超时后重传的次数")
+                .register(meterRegistry);
+        this.ackExpired = Counter.builder("chat.ack.expired")
+                .description("多次未确认后转存离线的消息数")
+                .register(meterRegistry);
+        this.rateLimitedChannelError = rateLimitedCounter("channel", "error");
+        this.rateLimitedChannelDropped = rateLimitedCounter("channel", "dropped");
+        this.rateLimitedUserError = rateLimitedCounter("user", "error");
+        this.rateLimitedUserDropped = rateLimitedCounter("user", "dropped");
+        this.sessionResumed = Counter.builder("chat.session.bound")
+                .description("用户绑定连接的次数")
+                .tag("result", "resumed")
+                .register(meterRegistry);
+        this.sessionResynced = Counter.builder("chat.session.bound")
+                .description("用户绑定连接的次数")
+                .tag("result", "resync")
+                .register(meterRegistry);
+        this.userFanout = fanoutSummary("user");
+        this.groupFanout = fanoutSummary("group");
+        this.messageLatency = Timer.builder("chat.message.latency")
+                .description("消息从读入到服务端确认写出的耗时")
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.offlineBuffered = Counter.builder("chat.offline.buffered")
+                .description("进入会话缓冲区的离线消息条数")
+                .register(meterRegistry);
+        this.unwritableTime = Timer.builder("chat.channel.unwritable")
+                .description("Channel每次不可写持续的时间")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("chat.channel.unwritable.current", unwritableChannels, AtomicInteger::get)
+                .description("当前不可写的Channel数")
+                .register(meterRegistry);
+        Gauge.builder("chat.connections.active", connectionsActive, AtomicInteger::get)
+                .description("当前在线连接数")
+                .register(meterRegistry);
+    }
+
+    private Counter slowConsumerCounter(String action) {
+        return Counter.builder("chat.slow_consumer")
+                .description("慢消费者暂存队列已满后的处理次数")
+                .tag("action", action)
+                .register(meterRegistry);
+    }
+
+    private DistributionSummary fanoutSummary(String target) {
+        return DistributionSummary.builder("chat.fanout")
+                .description("一条消息在本节点写出的Channel数")
+                .tag("target", target)
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    private Counter messageCounter(ConcurrentHashMap<String, Counter> counters, String name, String description,
+                                   String msgType) {
+        String type = msgType != null && KNOWN_TYPES.contains(msgType) ? msgType : "other";
+        return counters.computeIfAbsent(type, t -> Counter.builder(name)
+                .description(description)
+                .tag("type", t)
+                .register(meterRegistry));
+    }
+
+    private Counter rateLimitedCounter(String scope, String action) {
+        return Counter.builder("chat.rate_limited")
+                .description("超出发送频率限制的消息数")
+                .tag("scope", scope)
+                .tag("action", action)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 注册已绑定用户数
+     */
+    public void registerBoundUsers(Supplier<Number> count) {
+        Gauge.builder("chat.users.bound", count)
+                .description("本节点已绑定的用户数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 注册业务线程待执行任务数
+     */
+    public void registerExecutorQueueDepth(Supplier<Number> depth) {
+        Gauge.builder("chat.executor.queue.depth", depth)
+                .description("业务线程待执行任务数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 注册离线消息队列深度
+     */
+    public void registerOfflineQueueDepth(Supplier<Number> depth) {
+        Gauge.builder("chat.offline.queue.depth", depth)
+                .description("离线消息待写入队列深度")
+                .register(meterRegistry);
+    }
+
+    public void offlineStored(int count) {
+        offlineStored.increment(count);
+    }
+
+    public void offlineBuffered() {
+        offlineBuffered.increment();
+    }
+
+    public void offlineFallback() {
+        offlineFallback.increment();
+    }
+
+    public void offlineFailed(int count) {
+        offlineFailed.increment(count);
+    }
+
+    public void offlineReplayed(int count) {
+        offlineReplayed.increment(count);
+    }
+
+    public void slowConsumerDropped() {
+        slowConsumerDropped.increment();
+    }
+
+    public void slowConsumerSpilled() {
+        slowConsumerSpilled.increment();
+    }
+
+    public void slowConsumerDisconnected() {
+        slowConsumerDisconnected.increment();
+    }
+
+    public void connectionOpened() {
+        connectionsAccepted.increment();
+        connectionsActive.incrementAndGet();
+    }
+
+    public void connectionClosed() {
+        connectionsActive.decrementAndGet();
+    }
+
+    public void connectionReaped() {
+        connectionsReaped.increment();
+    }
+
+    public void ackRetransmitted() {
+        ackRetransmitted.increment();
+    }
+
+    public void ackExpired() {
+        ackExpired.increment();
+    }
+
+    public void messageIn(String msgType) {
+        messageCounter(messagesIn, "chat.messages.in", "入站消息数", msgType).increment();
+    }
+
+    public void messageOut(String msgType, int count) {
+        messageCounter(messagesOut, "chat.messages.out", "出站消息数", msgType).increment(count);
+    }
+
+    public void userFanout(int channels) {
+        userFanout.record(channels);
+    }
+
+    public void groupFanout(int channels) {
+        groupFanout.record(channels);
+    }
+
+    public void messageLatency(long nanos) {
+        messageLatency.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void channelUnwritable() {
+        unwritableChannels.incrementAndGet();
+    }
+
+    public void channelWritable(long unwritableNanos) {
+        unwritableChannels.decrementAndGet();
+        unwritableTime.record(unwritableNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void sessionResumed() {
+        sessionResumed.increment();
+    }
+
+    public void sessionResynced() {
+        sessionResynced.increment();
+    }
+
+    /**
+     * 记录一条超限消息
+     *
+     * @param scope  channel或user
+     * @param action error或dropped
+     */
+    public void rateLimited(String scope, String action) {
+        boolean user = "user".equals(scope);
+        if ("dropped".equals(action)) {
+            (user ? rateLimitedUserDropped : rateLimitedChannelDropped).increment();
+        } else {
+            (user ? rateLimitedUserError : rateLimitedChannelError).increment();
+        }
+    }
+}
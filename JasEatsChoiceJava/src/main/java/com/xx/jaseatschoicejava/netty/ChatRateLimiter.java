@@ -0,0 +1,179 @@
+package com.xx.jaseatschoicejava.netty;
+
+import com.xx.jaseatschoicejava.config.NettyConfig;
+import com.xx.jaseatschoicejava.netty.codec.ChatCodecs;
+import com.xx.jaseatschoicejava.netty.codec.ChatMessage;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.AttributeKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 入站消息限流
+ * 按连接和已绑定的用户各维护一个令牌桶，用户的多个设备共享用户级令牌桶；群消息会扇出给所有在线成员，按groupCost个令牌计费。
+ * 超出限额的消息按策略回复错误消息或直接丢弃。client_ack不计入限流，避免接收方确认被丢弃后引发重传
+ */
+@Component
+public class ChatRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatRateLimiter.class);
+
+    private static final AttributeKey<TokenBucket> CHANNEL_BUCKET_KEY = AttributeKey.valueOf("rateLimitBucket");
+
+    /**
+     * 用户级令牌桶空闲多久后回收
+     */
+    private static final long USER_BUCKET_IDLE_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    /**
+     * 超限处理策略
+     */
+    public enum OverLimitPolicy {
+        ERROR, DROP
+    }
+
+    private final ChatMetrics chatMetrics;
+    private final boolean enabled;
+    private final int channelBurst;
+    private final double channelRatePerSecond;
+    private final int userBurst;
+    private final double userRatePerSecond;
+    private final int groupCost;
+    private final OverLimitPolicy policy;
+    private final ConcurrentHashMap<String, TokenBucket> userBuckets = new ConcurrentHashMap<>();
+    private final RateLimitHandler rateLimitHandler = new RateLimitHandler();
+
+    public ChatRateLimiter(ChatMetrics chatMetrics, NettyConfig nettyConfig) {
+        this.chatMetrics = chatMetrics;
+        this.enabled = nettyConfig.isRateLimitEnabled();
+        this.channelBurst = Math.max(1, nettyConfig.getRateLimitChannelBurst());
+        this.channelRatePerSecond = Math.max(0.001, nettyConfig.getRateLimitChannelRatePerSecond());
+        this.userBurst = Math.max(1, nettyConfig.getRateLimitUserBurst());
+        this.userRatePerSecond = Math.max(0.001, nettyConfig.getRateLimitUserRatePerSecond());
+        // 单条消息的消耗超过桶容量时永远取不到令牌，群消息将全部被拒绝
+        int maxCost = Math.min(channelBurst, userBurst);
+        int configuredGroupCost = Math.max(1, nettyConfig.getRateLimitGroupCost());
+        if (configuredGroupCost > maxCost) {
+            logger.warn("Rate limit group cost {} exceeds burst {}, clamped to {}", configuredGroupCost, maxCost, maxCost);
+            configuredGroupCost = maxCost;
+        }
+        this.groupCost = configuredGroupCost;
+        this.policy = OverLimitPolicy.valueOf(nettyConfig.getRateLimitPolicy().trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * 限流的Pipeline处理器，放在消息解码之后、NettyChatHandler之前，运行在EventLoop上
+     */
+    public ChannelHandler handler() {
+        return rateLimitHandler;
+    }
+
+    /**
+     * 定期回收长时间未使用的用户级令牌桶，回收时桶早已回满，不影响限流结果
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictIdleUserBuckets() {
+        long now = System.nanoTime();
+        userBuckets.values().removeIf(bucket -> bucket.idleNanos(now) > USER_BUCKET_IDLE_NANOS);
+    }
+
+    private int costOf(ChatMessage message) {
+        return "group".equals(message.msgType()) ? groupCost : 1;
+    }
+
+    @ChannelHandler.Sharable
+    private final class RateLimitHandler extends ChannelInboundHandlerAdapter {
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            if (!enabled || !(msg instanceof ChatMessage) || ChatMessage.CLIENT_ACK.equals(((ChatMessage) msg).msgType())) {
+                ctx.fireChannelRead(msg);
+                return;
+            }
+            ChatMessage message = (ChatMessage) msg;
+            int cost = costOf(message);
+
+            TokenBucket channelBucket = ctx.channel().attr(CHANNEL_BUCKET_KEY).get();
+            if (channelBucket == null) {
+                channelBucket = new TokenBucket(channelBurst, channelRatePerSecond);
+                ctx.channel().attr(CHANNEL_BUCKET_KEY).set(channelBucket);
+            }
+            if (!channelBucket.tryAcquire(cost)) {
+                reject(ctx, "channel", message);
+                return;
+            }
+
+            // 首条消息尚未绑定用户，只受连接级限流
+            String userId = UserChannelRegistry.userIdOf(ctx.channel());
+            if (userId != null) {
+                TokenBucket userBucket = userBuckets.computeIfAbsent(userId, id -> new TokenBucket(userBurst, userRatePerSecond));
+                if (!userBucket.tryAcquire(cost)) {
+                    // 消息未放行，退回已扣除的连接级令牌
+                    channelBucket.refund(cost);
+                    reject(ctx, "user", message);
+                    return;
+                }
+            }
+            ctx.fireChannelRead(msg);
+        }
+
+        private void reject(ChannelHandlerContext ctx, String scope, ChatMessage message) throws Exception {
+            if (policy == OverLimitPolicy.DROP) {
+                chatMetrics.rateLimited(scope, "dropped");
+                return;
+            }
+            chatMetrics.rateLimited(scope, "error");
+            logger.debug("Rate limited {} message from {} ({})", message.msgType(), ctx.channel().remoteAddress(), scope);
+            ctx.writeAndFlush(ChatCodecs.encodeFrame(ctx.channel(), ChatMessage.error("发送过于频繁，请稍后再试")),
+                    ctx.voidPromise());
+        }
+    }
+
+    /**
+     * 令牌桶：容量为burst，每秒补充ratePerSecond个令牌，取令牌时按经过的时间补充
+     */
+    static final class TokenBucket {
+
+        private final double capacity;
+        private final double refillPerNano;
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(int burst, double ratePerSecond) {
+            this.capacity = burst;
+            this.refillPerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.tokens = burst;
+            this.lastRefill = System.nanoTime();
+        }
+
+        synchronized boolean tryAcquire(int cost) {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerNano);
+            lastRefill = now;
+            if (tokens < cost) {
+                return false;
+            }
+            tokens -= cost;
+            return true;
+        }
+
+        /**
+         * 退回已取出但未使用的令牌，不超过容量
+         */
+        synchronized void refund(int cost) {
+            tokens = Math.min(capacity, tokens + cost);
+        }
+
+        synchronized long idleNanos(long now) {
+            return now - lastRefill;
+        }
+    }
+}
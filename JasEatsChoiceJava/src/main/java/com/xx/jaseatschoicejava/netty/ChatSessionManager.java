@@ -0,0 +1,196 @@
+package com.xx.jaseatschoicejava.netty;
+
+import com.xx.jaseatschoicejava.config.NettyConfig;
+import com.xx.jaseatschoicejava.netty.cluster.ClusterTransport;
+import com.xx.jaseatschoicejava.netty.codec.ChatCodecs;
+import com.xx.jaseatschoicejava.netty.codec.ChatMessage;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * 可恢复会话
+ * 用户绑定Channel后下发恢复令牌；连接断开后令牌在恢复窗口内有效，期间发给该用户的离线消息进入MissedMessageBuffer。
+ * 客户端重连后发送resume消息携带令牌，令牌有效且缓冲区未溢出时直接从缓冲区补发，不再从数据库全量补发离线消息；
+ * 否则先将缓冲区写库，再按原流程从数据库补发。会话到期后由任一节点将缓冲区转存数据库
+ */
+@Component
+public class ChatSessionManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatSessionManager.class);
+
+    private static final AttributeKey<Session> SESSION_KEY = AttributeKey.valueOf("chatSession");
+
+    /**
+     * 会话比令牌多保留的时间，避免节点间时钟偏差导致令牌仍有效时缓冲区已被转存
+     */
+    private static final long SESSION_GRACE_MS = 30000L;
+
+    /**
+     * 每次清理最多处理的到期会话数
+     */
+    private static final int SWEEP_BATCH = 500;
+
+    private final ClusterTransport transport;
+    private final MissedMessageBuffer missedMessageBuffer;
+    private final ChatDispatcher chatDispatcher;
+    private final OfflineMessageWriter offlineMessageWriter;
+    private final OfflineMessageReplayer offlineMessageReplayer;
+    private final UserChannelRegistry userChannelRegistry;
+    private final ChatMetrics chatMetrics;
+    private final long windowMs;
+    private final SecureRandom random = new SecureRandom();
+
+    public ChatSessionManager(ClusterTransport transport, MissedMessageBuffer missedMessageBuffer,
+                              ChatDispatcher chatDispatcher, OfflineMessageWriter offlineMessageWriter,
+                              OfflineMessageReplayer offlineMessageReplayer, UserChannelRegistry userChannelRegistry,
+                              ChatMetrics chatMetrics, NettyConfig nettyConfig) {
+        this.transport = transport;
+        this.missedMessageBuffer = missedMessageBuffer;
+        this.chatDispatcher = chatDispatcher;
+        this.offlineMessageWriter = offlineMessageWriter;
+        this.offlineMessageReplayer = offlineMessageReplayer;
+        this.userChannelRegistry = userChannelRegistry;
+        this.chatMetrics = chatMetrics;
+        this.windowMs = Math.max(1, nettyConfig.getResumeWindowMs());
+    }
+
+    /**
+     * 用户在Channel上完成绑定后补发断线期间的消息并下发新令牌，在业务线程上执行
+     *
+     * @param channel     用户的Channel
+     * @param userId      用户ID
+     * @param resumeToken 客户端携带的恢复令牌，没有时为null
+     * @param executor    Channel的业务执行器
+     */
+    public void onBound(Channel channel, String userId, String resumeToken, Executor executor) {
+        if (!missedMessageBuffer.isEnabled()) {
+            offlineMessageReplayer.start(channel, userId, executor);
+            return;
+        }
+        String normalizedUserId = ChatIds.normalize(userId);
+        MissedMessageBuffer.Drained drained = missedMessageBuffer.drain(normalizedUserId);
+        boolean resumed = resumeToken != null && !drained.overflowed() && isValidToken(resumeToken, normalizedUserId);
+        if (resumed) {
+            // 用户已绑定，消息直接写给在线设备并等待确认
+            for (ChatMessage message : drained.messages()) {
+                chatDispatcher.sendToUser(normalizedUserId, message);
+            }
+            chatMetrics.sessionResumed();
+            logger.info("User {} resumed session, {} missed messages sent", normalizedUserId, drained.messages().size());
+        } else {
+            // 缓冲区中的消息先写库，与数据库中的离线消息一起按顺序补发
+            for (ChatMessage message : drained.messages()) {
+                offlineMessageWriter.store(message, normalizedUserId);
+            }
+            offlineMessageReplayer.start(channel, userId, executor);
+            chatMetrics.sessionResynced();
+        }
+        issueToken(channel, normalizedUserId);
+    }
+
+    /**
+     * Channel断开后登记其令牌，在恢复窗口内可用于恢复会话，需在解除用户绑定之前调用
+     */
+    public void onUnbound(Channel channel) {
+        Session session = channel.attr(SESSION_KEY).getAndSet(null);
+        if (session == null) {
+            return;
+        }
+        try {
+            transport.saveResumeToken(session.token, session.userId, windowMs);
+            transport.touchSessions(Collections.singletonList(session.userId), windowMs + SESSION_GRACE_MS);
+        } catch (Exception e) {
+            logger.error("Failed to save resume token for user {}: {}", session.userId, e.getMessage());
+        }
+    }
+
+    /**
+     * 定期续期本节点上在线用户的会话
+     */
+    @Scheduled(fixedDelayString = "${netty.cluster.presenceRefreshMs:10000}")
+    public void refreshSessions() {
+        if (!missedMessageBuffer.isEnabled()) {
+            return;
+        }
+        try {
+            transport.touchSessions(userChannelRegistry.onlineUserIds(), windowMs + SESSION_GRACE_MS);
+        } catch (Exception e) {
+            logger.error("Failed to refresh chat sessions: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 将到期会话的缓冲区转存数据库，各节点都会执行，同一会话只会被一个节点取到
+     */
+    @Scheduled(fixedDelayString = "${netty.resume.sweepIntervalMs:5000}")
+    public void sweepExpiredSessions() {
+        if (!missedMessageBuffer.isEnabled()) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            for (String userId : transport.expiredSessions(now, SWEEP_BATCH)) {
+                List<ChatMessage> messages = missedMessageBuffer.closeExpired(userId, now);
+                if (messages == null || messages.isEmpty()) {
+                    continue;
+                }
+                for (ChatMessage message : messages) {
+                    offlineMessageWriter.store(message, userId);
+                }
+                logger.info("Session of user {} expired, stored {} missed messages", userId, messages.size());
+            }
+        } catch (Exception e) {
+            logger.error("Failed to sweep expired chat sessions: {}", e.getMessage());
+        }
+    }
+
+    private boolean isValidToken(String token, String userId) {
+        try {
+            return userId.equals(transport.takeResumeToken(token));
+        } catch (Exception e) {
+            logger.error("Failed to verify resume token for user {}: {}", userId, e.getMessage());
+            return false;
+        }
+    }
+
+    private void issueToken(Channel channel, String userId) {
+        byte[] bytes = new byte[18];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        channel.attr(SESSION_KEY).set(new Session(token, userId));
+        try {
+            transport.touchSessions(Collections.singletonList(userId), windowMs + SESSION_GRACE_MS);
+        } catch (Exception e) {
+            logger.error("Failed to open chat session for user {}: {}", userId, e.getMessage());
+        }
+        try {
+            channel.writeAndFlush(ChatCodecs.encodeFrame(channel, ChatMessage.session(token)), channel.voidPromise());
+        } catch (IOException e) {
+            logger.error("Failed to encode session token for {}: {}", channel.remoteAddress(), e.getMessage());
+        }
+    }
+
+    /**
+     * Channel上的会话
+     */
+    private static final class Session {
+        private final String token;
+        private final String userId;
+
+        private Session(String token, String userId) {
+            this.token = token;
+            this.userId = userId;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.xx.jaseatschoicejava.netty;
+
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 聊天业务线程
+ * 消息在I/O线程解码后交给业务线程处理（查询群关系、离线消息入库与补发等可能阻塞的操作），同一Channel的任务按提交顺序串行执行。
+ * group模式：固定大小的DefaultEventExecutorGroup，每个Channel固定使用其中一个线程，并发阻塞操作数受线程数限制；
+ * virtual模式：每个Channel一个串行队列，由虚拟线程执行，阻塞时不占用平台线程，并发阻塞操作数不再受线程池大小限制
+ */
+public class ChatTaskExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatTaskExecutor.class);
+
+    private static final AttributeKey<Executor> EXECUTOR_KEY = AttributeKey.valueOf("chatTaskExecutor");
+
+    /**
+     * 业务线程模式
+     */
+    public enum Mode {
+        GROUP, VIRTUAL;
+
+        public static Mode parse(String value) {
+            return Mode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private final Mode mode;
+    private final EventExecutorGroup group;
+    private final ExecutorService virtualThreads;
+
+    // virtual模式下所有串行队列中等待执行的任务数
+    private final AtomicInteger virtualPending = new AtomicInteger();
+
+    public ChatTaskExecutor(Mode mode, int groupThreads) {
+        this.mode = mode;
+        if (mode == Mode.VIRTUAL) {
+            this.group = null;
+            this.virtualThreads = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("chat-vt-", 0).factory());
+        } else {
+            this.group = new DefaultEventExecutorGroup(Math.max(1, groupThreads));
+            this.virtualThreads = null;
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * 获取Channel的业务执行器，首次调用时分配，之后同一Channel始终返回同一个
+     */
+    public Executor executorFor(Channel channel) {
+        Executor executor = channel.attr(EXECUTOR_KEY).get();
+        if (executor != null) {
+            return executor;
+        }
+        Executor created = mode == Mode.VIRTUAL ? new SerialExecutor(virtualThreads, virtualPending) : group.next();
+        executor = channel.attr(EXECUTOR_KEY).setIfAbsent(created);
+        return executor != null ? executor : created;
+    }
+
+    /**
+     * 在Channel的业务执行器上执行任务
+     */
+    public void execute(Channel channel, Runnable task) {
+        executorFor(channel).execute(task);
+    }
+
+    /**
+     * 在Channel已分配的业务执行器上执行可能阻塞的任务（写库、访问Redis），供I/O线程上的处理器使用；
+     * Channel尚未分配业务执行器或执行器已关闭时在当前线程执行
+     */
+    public static void executeBlocking(Channel channel, Runnable task) {
+        Executor executor = channel.attr(EXECUTOR_KEY).get();
+        if (executor != null) {
+            try {
+                executor.execute(task);
+                return;
+            } catch (RejectedExecutionException e) {
+                logger.warn("Chat task executor is shut down, running task on {}", Thread.currentThread().getName());
+            }
+        }
+        task.run();
+    }
+
+    /**
+     * 等待执行的任务数
+     */
+    public int queueDepth() {
+        if (group == null) {
+            return virtualPending.get();
+        }
+        int pending = 0;
+        for (EventExecutor executor : group) {
+            if (executor instanceof SingleThreadEventExecutor) {
+                pending += ((SingleThreadEventExecutor) executor).pendingTasks();
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * 停止接收新任务，并等待已提交的任务执行完
+     */
+    public void shutdownGracefully(long timeout, TimeUnit unit) {
+        if (group != null) {
+            group.shutdownGracefully(1, unit.toSeconds(timeout), TimeUnit.SECONDS);
+            return;
+        }
+        virtualThreads.shutdown();
+        try {
+            if (!virtualThreads.awaitTermination(timeout, unit)) {
+                logger.warn("Chat virtual thread executor did not terminate in {} {}", timeout, unit);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 串行执行器：任务按提交顺序依次执行，同一时刻最多一个任务在运行，空闲时不占用线程
+     */
+    private static final class SerialExecutor implements Executor {
+
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean running = new AtomicBoolean();
+        private final Executor delegate;
+        private final AtomicInteger pending;
+
+        private SerialExecutor(Executor delegate, AtomicInteger pending) {
+            this.delegate = delegate;
+            this.pending = pending;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+            pending.incrementAndGet();
+            schedule();
+        }
+
+        private void schedule() {
+            if (!running.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                delegate.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // 执行器已关闭
+                running.set(false);
+                while (tasks.poll() != null) {
+                    pending.decrementAndGet();
+                }
+                logger.warn("Chat task rejected, executor is shut down");
+            }
+        }
+
+        private void drain() {
+            try {
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    pending.decrementAndGet();
+                    try {
+                        task.run();
+                    } catch (Throwable t) {
+                        logger.error("Chat task failed", t);
+                    }
+                }
+            } finally {
+                running.set(false);
+                // 释放标记前可能有新任务入队
+                if (!tasks.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+    }
+}
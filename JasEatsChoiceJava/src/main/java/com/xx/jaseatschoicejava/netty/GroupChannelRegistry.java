@@ -0,0 +1,163 @@
+package com.xx.jaseatschoicejava.netty;
+
+import com.xx.jaseatschoicejava.entity.Contact;
+import com.xx.jaseatschoicejava.service.ContactService;
+import io.netty.channel.Channel;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 群成员在线路由索引
+ * 维护 群ID -> 在线成员Channel 的映射，群消息只投递给该群的在线成员，
+ * 成员关系来自ContactService中relationType为group的记录
+ */
+@Component
+public class GroupChannelRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(GroupChannelRegistry.class);
+
+    /**
+     * Channel上记录其已加入的群ID，断开时据此从各群中移除，避免遍历全部群
+     */
+    private static final AttributeKey<Set<String>> GROUP_IDS_KEY = AttributeKey.valueOf("groupIds");
+
+    // 群ID与在线成员Channel的映射关系
+    private final ConcurrentHashMap<String, ChannelGroup> groupChannels = new ConcurrentHashMap<>();
+
+    private final ContactService contactService;
+
+    private final UserChannelRegistry userChannelRegistry;
+
+    public GroupChannelRegistry(ContactService contactService, UserChannelRegistry userChannelRegistry) {
+        this.contactService = contactService;
+        this.userChannelRegistry = userChannelRegistry;
+    }
+
+    /**
+     * 用户绑定Channel后，加载其所在的群并加入对应的路由
+     *
+     * @param userId  用户ID
+     * @param channel 用户的Channel
+     */
+    public void bindUser(String userId, Channel channel) {
+        // 同一Channel只加载一次群成员关系
+        if (channel.attr(GROUP_IDS_KEY).setIfAbsent(ConcurrentHashMap.newKeySet()) != null) {
+            return;
+        }
+
+        Long memberId = ChatIds.toLong(userId);
+        if (memberId == null) {
+            return;
+        }
+
+        List<Contact> relations = contactService.lambdaQuery()
+                .select(Contact::getTargetId)
+                .eq(Contact::getUserId, memberId)
+                .eq(Contact::getRelationType, "group")
+                .eq(Contact::getStatus, "normal")
+                .list();
+        for (Contact relation : relations) {
+            addChannel(String.valueOf(relation.getTargetId()), channel);
+        }
+        logger.debug("User {} joined {} group routes", userId, relations.size());
+    }
+
+    /**
+     * Channel断开时，从其所在的所有群中移除
+     */
+    public void unbindChannel(Channel channel) {
+        Set<String> groupIds = channel.attr(GROUP_IDS_KEY).getAndSet(null);
+        if (groupIds == null) {
+            return;
+        }
+        for (String groupId : groupIds) {
+            removeChannel(groupId, channel);
+        }
+    }
+
+    /**
+     * 用户加入群后，将其在本节点上的在线Channel加入该群路由
+     */
+    public void joinGroup(String userId, String groupId) {
+        String key = ChatIds.normalize(groupId);
+        for (Channel channel : userChannelRegistry.getChannels(userId)) {
+            // 尚未加载群关系的Channel会在绑定时从数据库加载，无需处理
+            if (channel.attr(GROUP_IDS_KEY).get() != null) {
+                addChannel(key, channel);
+            }
+        }
+    }
+
+    /**
+     * 用户退出群后，将其在线Channel从该群路由中移除
+     */
+    public void leaveGroup(String userId, String groupId) {
+        String key = ChatIds.normalize(groupId);
+        for (Channel channel : userChannelRegistry.getChannels(userId)) {
+            removeChannel(key, channel);
+        }
+    }
+
+    /**
+     * 群解散时移除整个路由
+     */
+    public void removeGroup(String groupId) {
+        ChannelGroup group = groupChannels.remove(ChatIds.normalize(groupId));
+        if (group == null) {
+            return;
+        }
+        for (Channel channel : group) {
+            Set<String> groupIds = channel.attr(GROUP_IDS_KEY).get();
+            if (groupIds != null) {
+                groupIds.remove(ChatIds.normalize(groupId));
+            }
+        }
+    }
+
+    /**
+     * 获取群的在线成员Channel
+     *
+     * @param groupId 群ID
+     * @return 在线成员Channel，群内无人在线时返回空集合
+     */
+    public Set<Channel> getGroupChannels(String groupId) {
+        ChannelGroup group = groupChannels.get(ChatIds.normalize(groupId));
+        return group != null ? group : Collections.emptySet();
+    }
+
+    private void addChannel(String groupId, Channel channel) {
+        groupChannels.compute(groupId, (id, group) -> {
+            if (group == null) {
+                group = new DefaultChannelGroup(id, GlobalEventExecutor.INSTANCE);
+            }
+            group.add(channel);
+            return group;
+        });
+        Set<String> groupIds = channel.attr(GROUP_IDS_KEY).get();
+        if (groupIds != null) {
+            groupIds.add(groupId);
+        }
+    }
+
+    private void removeChannel(String groupId, Channel channel) {
+        // 群内无在线成员时移除路由，避免空群长期占用内存
+        groupChannels.computeIfPresent(groupId, (id, group) -> {
+            group.remove(channel);
+            return group.isEmpty() ? null : group;
+        });
+        Set<String> groupIds = channel.attr(GROUP_IDS_KEY).get();
+        if (groupIds != null) {
+            groupIds.remove(groupId);
+        }
+    }
+}
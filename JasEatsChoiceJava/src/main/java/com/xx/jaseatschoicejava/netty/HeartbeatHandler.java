@@ -0,0 +1,76 @@
+package com.xx.jaseatschoicejava.netty;
+
+import com.xx.jaseatschoicejava.netty.codec.ChatCodecs;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.AttributeKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 心跳与空闲连接回收
+ * 配合IdleStateHandler使用：读空闲时发送WebSocket Ping，连续多次读空闲仍无任何数据（包括Pong）则判定为
+ * 半开连接并关闭；同时统计连接建立数与在线连接数。需放在Pipeline前部、运行在EventLoop上
+ */
+@ChannelHandler.Sharable
+public class HeartbeatHandler extends ChannelDuplexHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(HeartbeatHandler.class);
+
+    /**
+     * 连续未收到数据的读空闲次数
+     */
+    private static final AttributeKey<Integer> MISSED_KEY = AttributeKey.valueOf("missedHeartbeats");
+
+    private final ChatMetrics chatMetrics;
+    private final int maxMissed;
+
+    public HeartbeatHandler(ChatMetrics chatMetrics, int maxMissed) {
+        this.chatMetrics = chatMetrics;
+        this.maxMissed = Math.max(1, maxMissed);
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        chatMetrics.connectionOpened();
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        chatMetrics.connectionClosed();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        // 收到任何数据都说明连接存活
+        ctx.channel().attr(MISSED_KEY).set(null);
+        super.channelRead(ctx, msg);
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (!(evt instanceof IdleStateEvent) || ((IdleStateEvent) evt).state() != IdleState.READER_IDLE) {
+            super.userEventTriggered(ctx, evt);
+            return;
+        }
+
+        Integer missed = ctx.channel().attr(MISSED_KEY).get();
+        int current = missed == null ? 1 : missed + 1;
+        // 尚未完成WebSocket握手的空闲连接直接回收
+        if (current > maxMissed || !ChatCodecs.isNegotiated(ctx.channel())) {
+            chatMetrics.connectionReaped();
+            logger.info("Reap idle channel {} after {} missed heartbeats", ctx.channel().remoteAddress(), current - 1);
+            ctx.close();
+            return;
+        }
+        ctx.channel().attr(MISSED_KEY).set(current);
+        // 从Pipeline尾部写出，经过WebSocket编码器
+        ctx.channel().writeAndFlush(new PingWebSocketFrame());
+    }
+}
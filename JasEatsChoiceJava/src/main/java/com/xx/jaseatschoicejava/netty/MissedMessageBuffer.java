@@ -0,0 +1,106 @@
+package com.xx.jaseatschoicejava.netty;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xx.jaseatschoicejava.config.NettyConfig;
+import com.xx.jaseatschoicejava.netty.cluster.ClusterTransport;
+import com.xx.jaseatschoicejava.netty.cluster.MissedMessages;
+import com.xx.jaseatschoicejava.netty.codec.ChatMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 会话期间的离线消息缓冲区
+ * 用户存在可恢复的会话时，发给他的离线消息先放入集群共享的有界缓冲区而不是写库；
+ * 用户在恢复窗口内携带令牌重连时直接从缓冲区补发，窗口到期或缓冲区写满后才转存数据库
+ */
+@Component
+public class MissedMessageBuffer {
+
+    private static final Logger logger = LoggerFactory.getLogger(MissedMessageBuffer.class);
+
+    private final ClusterTransport transport;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final boolean enabled;
+    private final int capacity;
+
+    public MissedMessageBuffer(ClusterTransport transport, NettyConfig nettyConfig) {
+        this.transport = transport;
+        this.enabled = nettyConfig.isResumeEnabled();
+        this.capacity = Math.max(1, nettyConfig.getResumeBufferSize());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 尝试将发给用户的离线消息放入缓冲区
+     *
+     * @return 是否已放入；未启用、用户没有会话、缓冲区已满或Redis异常时返回false，由调用方写库
+     */
+    public boolean offer(String userId, ChatMessage message) {
+        // 没有投递ID的消息无法在补发后确认，直接写库
+        if (!enabled || message.msgId() == null) {
+            return false;
+        }
+        try {
+            return transport.appendMissed(ChatIds.normalize(userId), objectMapper.writeValueAsString(message), capacity);
+        } catch (Exception e) {
+            logger.error("Failed to buffer missed message for user {}: {}", userId, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 取出并清空用户的缓冲区
+     *
+     * @return 缓冲区中的消息，读取失败时视为已溢出，由调用方从数据库补发
+     */
+    public Drained drain(String userId) {
+        if (!enabled) {
+            return new Drained(List.of(), false);
+        }
+        try {
+            MissedMessages missed = transport.drainMissed(ChatIds.normalize(userId));
+            return new Drained(decode(missed.payloads()), missed.overflowed());
+        } catch (Exception e) {
+            logger.error("Failed to drain missed messages for user {}: {}", userId, e.getMessage());
+            return new Drained(List.of(), true);
+        }
+    }
+
+    /**
+     * 关闭已到期的会话并取出其缓冲区
+     *
+     * @return 缓冲区中的消息，会话已被续期或已被其他节点关闭时返回null
+     */
+    public List<ChatMessage> closeExpired(String userId, long now) {
+        List<String> payloads = transport.closeExpiredSession(userId, now);
+        return payloads != null ? decode(payloads) : null;
+    }
+
+    private List<ChatMessage> decode(List<String> payloads) {
+        List<ChatMessage> messages = new ArrayList<>(payloads.size());
+        for (String payload : payloads) {
+            try {
+                messages.add(objectMapper.readValue(payload, ChatMessage.class));
+            } catch (Exception e) {
+                logger.error("Failed to decode buffered message: {}", e.getMessage());
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * 取出的缓冲区
+     *
+     * @param messages   按写入顺序排列的消息
+     * @param overflowed 是否有消息因缓冲区已满而直接写库
+     */
+    public record Drained(List<ChatMessage> messages, boolean overflowed) {
+    }
+}
@@ -1,24 +1,18 @@
 package com.xx.jaseatschoicejava.netty;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.xx.jaseatschoicejava.constants.Constant;
 import com.xx.jaseatschoicejava.enums.MsgType;
-import com.xx.jaseatschoicejava.entity.ChatMsg;
-import com.xx.jaseatschoicejava.service.ChatMsgService;
+import com.xx.jaseatschoicejava.netty.codec.ChatCodecs;
+import com.xx.jaseatschoicejava.netty.codec.ChatMessage;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.channel.group.ChannelGroup;
-import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
-import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.time.Instant;
-import java.time.LocalDateTime;
-import java.util.concurrent.ConcurrentHashMap;
+import java.io.IOException;
 
 /**
  * Netty聊天消息处理器
@@ -27,190 +21,195 @@ import java.util.concurrent.ConcurrentHashMap;
  * @Date 2025/11/22
  */
 @ChannelHandler.Sharable
-public class NettyChatHandler extends SimpleChannelInboundHandler<TextWebSocketFrame> {
+public class NettyChatHandler extends SimpleChannelInboundHandler<ChatMessage> {
 
     private static final Logger logger = LoggerFactory.getLogger(NettyChatHandler.class);
 
-    // 存储所有在线Channel
-    private static final ChannelGroup CHANNEL_GROUP = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+    // 消息投递，负责用户绑定以及本节点、跨节点和离线投递
+    private final ChatDispatcher chatDispatcher;
 
-    // 存储用户ID与Channel的映射关系
-    private static final ConcurrentHashMap<String, Channel> USER_CHANNEL_MAP = new ConcurrentHashMap<>();
+    // 群成员在线路由索引
+    private final GroupChannelRegistry groupChannelRegistry;
 
-    // JSON解析器
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    // 离线消息补发
+    private final OfflineMessageReplayer offlineMessageReplayer;
 
-    // 聊天消息服务（用于存储离线消息）
-    private final ChatMsgService chatMsgService;
+    // 投递确认跟踪
+    private final ChatAckTracker chatAckTracker;
+
+    // 业务线程，同一Channel的消息按顺序处理
+    private final ChatTaskExecutor chatTaskExecutor;
+
+    // 可恢复会话：下发令牌，重连后从缓冲区或数据库补发断线期间的消息
+    private final ChatSessionManager chatSessionManager;
+
+    // 消息计数与延迟统计
+    private final ChatMetrics chatMetrics;
 
     // 构造函数注入
-    public NettyChatHandler(ChatMsgService chatMsgService) {
-        this.chatMsgService = chatMsgService;
+    public NettyChatHandler(ChatDispatcher chatDispatcher, GroupChannelRegistry groupChannelRegistry,
+                            OfflineMessageReplayer offlineMessageReplayer, ChatAckTracker chatAckTracker,
+                            ChatTaskExecutor chatTaskExecutor, ChatSessionManager chatSessionManager,
+                            ChatMetrics chatMetrics) {
+        this.chatDispatcher = chatDispatcher;
+        this.groupChannelRegistry = groupChannelRegistry;
+        this.offlineMessageReplayer = offlineMessageReplayer;
+        this.chatAckTracker = chatAckTracker;
+        this.chatTaskExecutor = chatTaskExecutor;
+        this.chatSessionManager = chatSessionManager;
+        this.chatMetrics = chatMetrics;
     }
 
     @Override
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
-        CHANNEL_GROUP.add(ctx.channel());
         logger.info("Channel {} connected", ctx.channel().remoteAddress());
     }
 
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
-        // 移除Channel
-        CHANNEL_GROUP.remove(ctx.channel());
-
-        // 移除用户映射
-        USER_CHANNEL_MAP.entrySet().removeIf(entry -> entry.getValue().equals(ctx.channel()));
+        // 移除用户映射和所在群的路由，排在该Channel已提交的消息之后，避免被随后执行的绑定覆盖
+        Channel channel = ctx.channel();
+        chatTaskExecutor.execute(channel, () -> {
+            chatSessionManager.onUnbound(channel);
+            chatDispatcher.unbindChannel(channel);
+        });
 
         logger.info("Channel {} disconnected", ctx.channel().remoteAddress());
     }
 
     @Override
-    protected void channelRead0(ChannelHandlerContext ctx, TextWebSocketFrame frame) throws Exception {
-        // 将WebSocket帧转换为字符串消息
-        String message = frame.text();
-        logger.info("Received message: {} from channel: {}", message, ctx.channel().remoteAddress());
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        // 握手完成后记录协商的子协议，未协商时默认使用JSON文本协议
+        if (evt instanceof WebSocketServerProtocolHandler.HandshakeComplete) {
+            String subprotocol = ((WebSocketServerProtocolHandler.HandshakeComplete) evt).selectedSubprotocol();
+            ChatCodecs.bind(ctx.channel(), subprotocol);
+            logger.debug("Channel {} handshake complete, subprotocol: {}", ctx.channel().remoteAddress(), subprotocol);
+        }
+        super.userEventTriggered(ctx, evt);
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, ChatMessage request) throws Exception {
+        long receivedAt = System.nanoTime();
+        chatMetrics.messageIn(request.msgType());
+
+        // 接收方确认收到消息，不带msgId的client_ack表示客户端支持投递确认
+        if (ChatMessage.CLIENT_ACK.equals(request.msgType())) {
+            chatAckTracker.enableFor(ctx.channel());
+            chatAckTracker.ack(ctx.channel(), request.msgId());
+            return;
+        }
+        logger.info("Received message: {} from channel: {}", request, ctx.channel().remoteAddress());
+
+        // 绑定、路由和离线入库可能阻塞，交给业务线程处理
+        chatTaskExecutor.execute(ctx.channel(), () -> handleMessage(ctx, request, receivedAt));
+    }
 
+    /**
+     * 在业务线程上处理消息
+     *
+     * @param receivedAt 消息在I/O线程解码完成的时间（纳秒），用于统计到确认写出的延迟
+     */
+    private void handleMessage(ChannelHandlerContext ctx, ChatMessage request, long receivedAt) {
         try {
-            // 解析JSON消息
-            com.fasterxml.jackson.databind.JsonNode msgNode = objectMapper.readTree(message);
-
-            // 获取消息类型
-            String msgType = msgNode.has("msgType") ? msgNode.get("msgType").asText() : "";
-            // 获取发送方
-            String fromId = msgNode.has("fromId") ? msgNode.get("fromId").asText() : "";
-            // 获取接收方
-            String toId = msgNode.has("toId") ? msgNode.get("toId").asText() : "";
-            // 获取消息内容
-            String content = msgNode.has("content") ? msgNode.get("content").asText() : "";
-
-            // 构造响应消息
-            com.fasterxml.jackson.databind.node.ObjectNode responseMsg = objectMapper.createObjectNode();
-            responseMsg.put("msgType", msgType);
-            responseMsg.put("fromId", fromId);
-            responseMsg.put("toId", toId);
-            responseMsg.put("content", content);
-            responseMsg.put("timestamp", Instant.now().toEpochMilli());
-            responseMsg.put("ack", true);
-
-            // 将用户ID与Channel绑定
-            USER_CHANNEL_MAP.putIfAbsent(fromId, ctx.channel());
+            // 获取消息类型、发送方、接收方和消息内容
+            String msgType = nullToEmpty(request.msgType());
+            String fromId = nullToEmpty(request.fromId());
+            String toId = nullToEmpty(request.toId());
+            String content = nullToEmpty(request.content());
+
+            // 构造响应消息，分配投递ID
+            long msgId = chatDispatcher.nextMessageId();
+            ChatMessage responseMsg = ChatMessage.forward(msgType, fromId, toId, content, msgId);
+
+            // 将用户ID与Channel绑定，并加入其所在群的路由，然后补发断线期间的消息；
+            // 重连后的resume消息携带令牌，令牌有效时从会话缓冲区补发，否则从数据库补发离线消息
+            boolean resume = ChatMessage.RESUME.equals(msgType);
+            if (chatDispatcher.bindUser(fromId, ctx.channel())) {
+                groupChannelRegistry.bindUser(fromId, ctx.channel());
+                chatSessionManager.onBound(ctx.channel(), fromId, resume ? request.content() : null,
+                        chatTaskExecutor.executorFor(ctx.channel()));
+            }
+            if (resume) {
+                return;
+            }
 
             // 根据消息类型处理
             switch (msgType) {
                 case "single":
                     // 单聊，发送给指定用户
-                    sendMessageToUser(toId, objectMapper.writeValueAsString(responseMsg));
+                    chatDispatcher.sendToUser(toId, responseMsg);
                     break;
                 case "group":
-                    // 群聊，发送给所有在线用户（简化处理，实际需根据群成员列表发送）
-                    sendMessageToAll(objectMapper.writeValueAsString(responseMsg));
+                    // 群聊，只发送给该群的在线成员
+                    chatDispatcher.sendToGroup(toId, responseMsg);
                     break;
                 case "order_sync":
                     // 订单同步消息，发送给指定用户或群组
-                    sendMessageToUser(toId, objectMapper.writeValueAsString(responseMsg));
+                    chatDispatcher.sendToUser(toId, responseMsg);
                     break;
                 case "order_status":
                     // 订单状态通知，发送给指定用户
-                    sendMessageToUser(toId, objectMapper.writeValueAsString(responseMsg));
+                    chatDispatcher.sendToUser(toId, responseMsg);
                     break;
                 default:
                     // 未知消息类型，发送错误提示
-                    responseMsg.put("content", "未知消息类型");
-                    ctx.writeAndFlush(new TextWebSocketFrame(objectMapper.writeValueAsString(responseMsg)));
-                    break;
+                    reply(ctx, ChatMessage.forward(msgType, fromId, toId, "未知消息类型"));
+                    return;
             }
+
+            // 消息已投递、转发或转存离线，向发送方确认，确认写出后记录端到端处理延迟
+            replyAck(ctx, ChatMessage.serverAck(msgId, request.clientMsgId()), receivedAt);
         } catch (Exception e) {
-            logger.error("Failed to process message: {}", message, e);
-            ctx.writeAndFlush(new TextWebSocketFrame("{\"msgType\":\"error\",\"content\":\"消息格式错误\"}"));
+            logger.error("Failed to process message: {}", request, e);
+            reply(ctx, ChatMessage.error("消息格式错误"));
         }
     }
 
-    @Override
-    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
-        logger.error("Channel {} exception: {}", ctx.channel().remoteAddress(), cause.getMessage(), cause);
-        ctx.close();
-    }
-
     /**
-     * 发送消息给指定用户
+     * 回复发送方
      */
-    private void sendMessageToUser(String userId, String message) {
-        Channel channel = USER_CHANNEL_MAP.get(userId);
-        if (channel != null && channel.isActive()) {
-            try {
-                // 发送WebSocket文本帧消息
-                channel.writeAndFlush(new TextWebSocketFrame(message));
-                logger.info("Sent message: {} to user: {}", message, userId);
-            } catch (Exception e) {
-                logger.error("Failed to send message to user {}: {}", userId, e.getMessage());
-            }
-        } else {
-            logger.info("User {} is offline, storing message in database", userId);
-            // 将消息存入数据库，等待用户上线后推送
-            try {
-                // 解析JSON消息
-                com.fasterxml.jackson.databind.JsonNode msgNode = objectMapper.readTree(message);
-
-                // 提取消息内容
-                Long fromId = msgNode.get("fromId").asLong();
-                Long toId = msgNode.get("toId").asLong();
-                String msgType = msgNode.get("msgType").asText();
-                String content = msgNode.get("content").asText();
-
-                // 保存到数据库
-                ChatMsg chatMsg = new ChatMsg();
-                chatMsg.setFromId(fromId);
-                chatMsg.setToId(toId);
-                chatMsg.setMsgType(msgType);
-                chatMsg.setContent(content);
-                chatMsg.setReadStatus(false); // 未读状态
-                chatMsg.setCreateTime(LocalDateTime.now());
-
-                chatMsgService.save(chatMsg);
-                logger.info("Message stored in database for user: {}", userId);
-            } catch (Exception e) {
-                logger.error("Failed to store offline message: {}", e.getMessage());
-            }
+    private void reply(ChannelHandlerContext ctx, ChatMessage message) {
+        try {
+            ctx.writeAndFlush(ChatCodecs.encodeFrame(ctx.channel(), message), ctx.voidPromise());
+            chatMetrics.messageOut(message.msgType(), 1);
+        } catch (IOException e) {
+            logger.error("Failed to encode reply to channel {}: {}", ctx.channel().remoteAddress(), e.getMessage());
         }
     }
 
     /**
-     * 发送消息给所有在线用户
+     * 向发送方确认，写出成功后记录从接收到确认写出的延迟
      */
-    private void sendMessageToAll(String message) {
-        // 发送WebSocket文本帧消息
-        CHANNEL_GROUP.writeAndFlush(new TextWebSocketFrame(message));
-        logger.info("Broadcast message: {}", message);
+    private void replyAck(ChannelHandlerContext ctx, ChatMessage ack, long receivedAt) {
+        try {
+            ctx.writeAndFlush(ChatCodecs.encodeFrame(ctx.channel(), ack)).addListener(future -> {
+                if (future.isSuccess()) {
+                    chatMetrics.messageLatency(System.nanoTime() - receivedAt);
+                }
+            });
+            chatMetrics.messageOut(ack.msgType(), 1);
+        } catch (IOException e) {
+            logger.error("Failed to encode reply to channel {}: {}", ctx.channel().remoteAddress(), e.getMessage());
+        }
     }
 
-    /**
-     * 静态方法：发送头像更新通知给指定用户
-     *
-     * @param userId 用户ID
-     * @param avatar 新的头像
-     */
-    public static void sendAvatarUpdateNotification(Object userId, String avatar) {
-        try {
-            ObjectMapper objectMapper = new ObjectMapper();
-
-            // 构造头像更新通知消息
-            com.fasterxml.jackson.databind.node.ObjectNode responseMsg = objectMapper.createObjectNode();
-            responseMsg.put("msgType", "avatar_update");
-            responseMsg.put("userId", userId.toString());
-            responseMsg.put("avatar", avatar);
-            responseMsg.put("timestamp", Instant.now().toEpochMilli());
-
-            String message = objectMapper.writeValueAsString(responseMsg);
-
-            // 发送消息给所有在线用户（或指定好友）
-            // 注意：这里需要根据实际业务逻辑发送给该用户的所有好友
-            // 目前先简化处理，发送给所有在线用户
-            CHANNEL_GROUP.writeAndFlush(new TextWebSocketFrame(message));
-//            logger.info("Sent avatar update notification: {} for user: {}", message, userId);
-        } catch (Exception e) {
-            logger.error("Failed to send avatar update notification for user {}: {}", userId, e.getMessage());
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        // 恢复可写后继续补发离线消息
+        if (ctx.channel().isWritable()) {
+            offlineMessageReplayer.resume(ctx.channel());
         }
+        super.channelWritabilityChanged(ctx);
     }
-}
 
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        logger.error("Channel {} exception: {}", ctx.channel().remoteAddress(), cause.getMessage(), cause);
+        ctx.close();
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+}
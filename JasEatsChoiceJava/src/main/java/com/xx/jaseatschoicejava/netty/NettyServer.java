@@ -1,24 +1,38 @@
 package com.xx.jaseatschoicejava.netty;
 
 import com.xx.jaseatschoicejava.config.NettyConfig;
-import com.xx.jaseatschoicejava.service.ChatMsgService;
+import com.xx.jaseatschoicejava.netty.codec.ChatCodecs;
+import com.xx.jaseatschoicejava.netty.codec.ChatFrameDecoder;
+import com.xx.jaseatschoicejava.netty.codec.ChatMessage;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.handler.codec.compression.ZlibCodecFactory;
+import io.netty.handler.codec.http.websocketx.WebSocketFrameAggregator;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolConfig;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilter;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilterProvider;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtensionHandler;
+import io.netty.handler.codec.http.websocketx.extensions.compression.PerMessageDeflateServerExtensionHandshaker;
 import io.netty.handler.codec.string.StringDecoder;
 import io.netty.handler.codec.string.StringEncoder;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.handler.timeout.IdleStateHandler;
 import io.netty.util.CharsetUtil;
-import io.netty.util.concurrent.DefaultEventExecutorGroup;
-import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.GlobalEventExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -36,11 +50,38 @@ public class NettyServer {
     private NettyConfig nettyConfig;
 
     @Autowired
-    private ChatMsgService chatMsgService;
+    private ChatDispatcher chatDispatcher;
+
+    @Autowired
+    private GroupChannelRegistry groupChannelRegistry;
+
+    @Autowired
+    private OfflineMessageReplayer offlineMessageReplayer;
+
+    @Autowired
+    private ChatChannelWriter chatChannelWriter;
+
+    @Autowired
+    private ChatMetrics chatMetrics;
+
+    @Autowired
+    private ChatAckTracker chatAckTracker;
+
+    @Autowired
+    private ChatRateLimiter chatRateLimiter;
+
+    @Autowired
+    private ChatSessionManager chatSessionManager;
+
+    @Autowired
+    private UserChannelRegistry userChannelRegistry;
+
+    // 所有客户端连接，停机时逐个通知重连后关闭
+    private final ChannelGroup clientChannels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
 
     private EventLoopGroup bossGroup;
     private EventLoopGroup workerGroup;
-    private EventExecutorGroup businessGroup;
+    private ChatTaskExecutor chatTaskExecutor;
     private Channel serverChannel;
 
     // 防止重复启动的标志
@@ -63,8 +104,18 @@ public class NettyServer {
         bossGroup = new NioEventLoopGroup(nettyConfig.getBossGroupThreads());
         workerGroup = new NioEventLoopGroup(nettyConfig.getWorkerGroupThreads());
 
-        // 创建业务线程池
-        businessGroup = new DefaultEventExecutorGroup(16);
+        // 创建业务线程：group为固定线程池，virtual为虚拟线程
+        chatTaskExecutor = new ChatTaskExecutor(ChatTaskExecutor.Mode.parse(nettyConfig.getExecutorMode()),
+                nettyConfig.getExecutorGroupThreads());
+        logger.info("Chat business executor mode: {}", chatTaskExecutor.getMode());
+
+        // 本节点已绑定的用户数和业务线程积压的任务数
+        chatMetrics.registerBoundUsers(() -> userChannelRegistry.onlineUserIds().size());
+        ChatTaskExecutor executor = chatTaskExecutor;
+        chatMetrics.registerExecutorQueueDepth(executor::queueDepth);
+
+        // 心跳处理器，所有连接共享
+        HeartbeatHandler heartbeatHandler = new HeartbeatHandler(chatMetrics, nettyConfig.getHeartbeatMaxMissed());
 
         try {
             ServerBootstrap bootstrap = new ServerBootstrap();
@@ -75,24 +126,63 @@ public class NettyServer {
                     .option(ChannelOption.SO_BACKLOG, 1024)
                     .childOption(ChannelOption.SO_KEEPALIVE, true)
                     .childOption(ChannelOption.TCP_NODELAY, true)
+                    // 写缓冲区高低水位，超过高水位后Channel不可写，由ChatChannelWriter暂存后续消息
+                    .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(
+                            nettyConfig.getWriteBufferLowWaterMark(), nettyConfig.getWriteBufferHighWaterMark()))
                     .childHandler(new ChannelInitializer<SocketChannel>() {
                         @Override
                         protected void initChannel(SocketChannel ch) throws Exception {
                             ChannelPipeline pipeline = ch.pipeline();
+                            clientChannels.add(ch);
+
+                            // 合并flush：读循环内及非读事件触发的多次写出合并为一次系统调用，需放在最前面
+                            if (nettyConfig.getFlushConsolidationMaxFlushes() > 0) {
+                                pipeline.addLast(new FlushConsolidationHandler(nettyConfig.getFlushConsolidationMaxFlushes(), true));
+                            }
+
+                            // 读空闲检测与心跳，放在最前面以统计所有入站数据
+                            pipeline.addLast(new IdleStateHandler(nettyConfig.getHeartbeatReaderIdleSeconds(), 0, 0));
+                            pipeline.addLast(heartbeatHandler);
 
                             // HTTP请求解码器和编码器
                             pipeline.addLast(new io.netty.handler.codec.http.HttpServerCodec());
                             // HTTP请求聚合器
-                            pipeline.addLast(new io.netty.handler.codec.http.HttpObjectAggregator(65536));
-                            // WebSocket协议处理器，指定路径为/ws
-                            pipeline.addLast(new io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler("/ws"));
+                            pipeline.addLast(new io.netty.handler.codec.http.HttpObjectAggregator(nettyConfig.getMaxContentLength()));
+                            // WebSocket压缩扩展协商（permessage-deflate）
+                            if (nettyConfig.isCompressionEnabled()) {
+                                pipeline.addLast(newCompressionHandler());
+                            }
+                            // WebSocket协议处理器，指定路径为/ws，支持协商JSON文本或CBOR二进制子协议
+                            pipeline.addLast(new io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler(
+                                    WebSocketServerProtocolConfig.newBuilder()
+                                            .websocketPath("/ws")
+                                            .subprotocols(ChatCodecs.SUBPROTOCOLS)
+                                            .maxFramePayloadLength(nettyConfig.getMaxFrameLength())
+                                            .allowExtensions(nettyConfig.isCompressionEnabled())
+                                            .build()));
+                            // 聚合分片消息，整条消息不超过最大帧长度
+                            pipeline.addLast(new WebSocketFrameAggregator(nettyConfig.getMaxFrameLength()));
                             // 字符串解码器
                             pipeline.addLast(new StringDecoder(CharsetUtil.UTF_8));
                             // 字符串编码器
                             pipeline.addLast(new StringEncoder(CharsetUtil.UTF_8));
 
-                            // 消息处理Handler，放在业务线程池处理
-                            pipeline.addLast(businessGroup, new NettyChatHandler(chatMsgService));
+                            // 背压处理：恢复可写后补写暂存消息，在EventLoop上执行
+                            pipeline.addLast(chatChannelWriter.writabilityHandler());
+
+                            // 投递确认：连接断开时未确认的消息转存离线，在EventLoop上执行
+                            pipeline.addLast(chatAckTracker.handler());
+
+                            // 将WebSocket帧解码为聊天消息
+                            pipeline.addLast(ChatFrameDecoder.INSTANCE);
+
+                            // 发送频率限制，超限消息在I/O线程上直接拒绝，不进入业务线程
+                            pipeline.addLast(chatRateLimiter.handler());
+
+                            // 消息处理Handler，交给业务线程处理
+                            pipeline.addLast(new NettyChatHandler(chatDispatcher, groupChannelRegistry,
+                                    offlineMessageReplayer, chatAckTracker, chatTaskExecutor, chatSessionManager,
+                                    chatMetrics));
                         }
                     });
 
@@ -112,6 +202,61 @@ public class NettyServer {
         }
     }
 
+    /**
+     * 创建permessage-deflate压缩处理器，小于阈值的帧跳过压缩
+     */
+    private WebSocketServerExtensionHandler newCompressionHandler() {
+        int threshold = nettyConfig.getCompressionThreshold();
+        WebSocketExtensionFilter skipSmallFrames = frame -> frame.content().readableBytes() < threshold;
+        WebSocketExtensionFilterProvider filterProvider = new WebSocketExtensionFilterProvider() {
+            @Override
+            public WebSocketExtensionFilter encoderFilter() {
+                return skipSmallFrames;
+            }
+
+            @Override
+            public WebSocketExtensionFilter decoderFilter() {
+                return WebSocketExtensionFilter.NEVER_SKIP;
+            }
+        };
+        return new WebSocketServerExtensionHandler(new PerMessageDeflateServerExtensionHandshaker(
+                nettyConfig.getCompressionLevel(),
+                ZlibCodecFactory.isSupportingWindowSizeAndMemLevel(),
+                PerMessageDeflateServerExtensionHandshaker.MAX_WINDOW_SIZE,
+                false, false, filterProvider));
+    }
+
+    /**
+     * 通知每个连接在随机延迟后重连，然后关闭连接。客户端携带会话令牌重连到其他节点后从缓冲区恢复会话，
+     * 重连时间分散在整个抖动区间内，避免所有客户端同时重连并同时从数据库补发离线消息
+     */
+    private void drainConnections() {
+        if (clientChannels.isEmpty()) {
+            return;
+        }
+        int count = clientChannels.size();
+        long jitterMs = Math.max(0, nettyConfig.getDrainReconnectJitterMs());
+        for (Channel channel : clientChannels) {
+            // 尚未完成WebSocket握手的连接直接关闭
+            if (!ChatCodecs.isNegotiated(channel)) {
+                channel.close();
+                continue;
+            }
+            long delayMs = jitterMs > 0 ? ThreadLocalRandom.current().nextLong(jitterMs + 1) : 0;
+            try {
+                channel.writeAndFlush(ChatCodecs.encodeFrame(channel, ChatMessage.reconnect(delayMs)))
+                        .addListener(ChannelFutureListener.CLOSE);
+            } catch (IOException e) {
+                channel.close();
+            }
+        }
+        if (!clientChannels.newCloseFuture().awaitUninterruptibly(nettyConfig.getDrainTimeoutMs())) {
+            logger.warn("{} connections still open after drain timeout, closing", clientChannels.size());
+            clientChannels.close().awaitUninterruptibly();
+        }
+        logger.info("Drained {} connections, reconnect jitter {}ms", count, jitterMs);
+    }
+
     /**
      * 关闭Netty服务器
      */
@@ -126,9 +271,15 @@ public class NettyServer {
         logger.info("Shutting down Netty server...");
         shutdown = true;
 
-        // 关闭业务线程池
-        if (businessGroup != null) {
-            businessGroup.shutdownGracefully(1, 15, TimeUnit.SECONDS);
+        // 停止接受新连接，再通知已有连接错开时间重连
+        if (serverChannel != null && serverChannel.isOpen()) {
+            serverChannel.close().awaitUninterruptibly();
+        }
+        drainConnections();
+
+        // 关闭业务线程，连接断开后的解绑任务在此之前已提交
+        if (chatTaskExecutor != null) {
+            chatTaskExecutor.shutdownGracefully(15, TimeUnit.SECONDS);
         }
 
         // 关闭WorkerGroup
@@ -141,11 +292,6 @@ public class NettyServer {
             bossGroup.shutdownGracefully(1, 15, TimeUnit.SECONDS);
         }
 
-        // 关闭服务器Channel
-        if (serverChannel != null && serverChannel.isOpen()) {
-            serverChannel.close();
-        }
-
         // 重置服务器状态标志
         started = false;
         shutdown = false;
@@ -0,0 +1,185 @@
+package com.xx.jaseatschoicejava.netty;
+
+import com.xx.jaseatschoicejava.config.NettyConfig;
+import com.xx.jaseatschoicejava.entity.ChatMsg;
+import com.xx.jaseatschoicejava.netty.codec.ChatCodecs;
+import com.xx.jaseatschoicejava.netty.codec.ChatMessage;
+import com.xx.jaseatschoicejava.service.ChatMsgService;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.util.AttributeKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * 离线消息补发
+ * 用户绑定Channel后，按消息ID升序分页推送其未投递的离线消息（delivered=false），
+ * 每页写出成功后批量标记为已投递；Channel不可写时暂停，恢复可写后从游标处继续。
+ * 投递状态与阅读状态分开，read_status只由已读操作修改；未投递但已被标记已读的消息不再推送，只标记为已投递
+ */
+@Component
+public class OfflineMessageReplayer {
+
+    private static final Logger logger = LoggerFactory.getLogger(OfflineMessageReplayer.class);
+
+    /**
+     * Channel上的补发进度
+     */
+    private static final AttributeKey<ReplayCursor> REPLAY_CURSOR_KEY = AttributeKey.valueOf("offlineReplayCursor");
+
+    private final ChatMsgService chatMsgService;
+    private final OfflineMessageWriter offlineMessageWriter;
+    private final ChatMetrics chatMetrics;
+    private final int pageSize;
+
+    public OfflineMessageReplayer(ChatMsgService chatMsgService, OfflineMessageWriter offlineMessageWriter,
+                                  ChatMetrics chatMetrics, NettyConfig nettyConfig) {
+        this.chatMsgService = chatMsgService;
+        this.offlineMessageWriter = offlineMessageWriter;
+        this.chatMetrics = chatMetrics;
+        this.pageSize = Math.max(1, nettyConfig.getOfflineReplayPageSize());
+    }
+
+    /**
+     * 开始为新绑定的用户补发离线消息
+     *
+     * @param channel  用户的Channel
+     * @param userId   用户ID
+     * @param executor Channel的业务执行器，分页查询和标记投递在其上执行
+     */
+    public void start(Channel channel, String userId, Executor executor) {
+        Long receiverId = ChatIds.toLong(userId);
+        if (receiverId == null) {
+            return;
+        }
+        // 写入器中尚未落库的消息先写入，保证本次补发能查到
+        offlineMessageWriter.flushPending();
+
+        ReplayCursor cursor = new ReplayCursor(receiverId, executor);
+        channel.attr(REPLAY_CURSOR_KEY).set(cursor);
+        replayNextPage(channel, cursor);
+    }
+
+    /**
+     * Channel恢复可写后继续补发
+     */
+    public void resume(Channel channel) {
+        ReplayCursor cursor = channel.attr(REPLAY_CURSOR_KEY).get();
+        if (cursor != null && cursor.paused && channel.isWritable()) {
+            cursor.paused = false;
+            cursor.executor.execute(() -> replayNextPage(channel, cursor));
+        }
+    }
+
+    private void replayNextPage(Channel channel, ReplayCursor cursor) {
+        // Channel已断开或已开始新的补发（重新绑定了用户）时停止
+        if (!channel.isActive() || channel.attr(REPLAY_CURSOR_KEY).get() != cursor) {
+            return;
+        }
+
+        List<ChatMsg> page;
+        try {
+            page = chatMsgService.listUndelivered(cursor.receiverId, cursor.lastId, pageSize);
+        } catch (Exception e) {
+            logger.error("Failed to load offline messages for user {}: {}", cursor.receiverId, e.getMessage());
+            channel.attr(REPLAY_CURSOR_KEY).compareAndSet(cursor, null);
+            return;
+        }
+        if (page.isEmpty()) {
+            channel.attr(REPLAY_CURSOR_KEY).compareAndSet(cursor, null);
+            return;
+        }
+
+        List<Long> ids = new ArrayList<>(page.size());
+        ChannelFuture lastWrite = null;
+        for (ChatMsg chatMsg : page) {
+            if (Boolean.TRUE.equals(chatMsg.getReadStatus())) {
+                ids.add(chatMsg.getId());
+                continue;
+            }
+            try {
+                lastWrite = channel.write(ChatCodecs.encodeFrame(channel, toChatMessage(chatMsg)));
+            } catch (IOException e) {
+                logger.error("Failed to encode offline message {}: {}", chatMsg.getId(), e.getMessage());
+                continue;
+            }
+            ids.add(chatMsg.getId());
+        }
+        channel.flush();
+        cursor.lastId = page.get(page.size() - 1).getId();
+        boolean hasMore = page.size() == pageSize;
+        if (lastWrite == null) {
+            // 整页都已读或编码失败，没有需要等待的写出
+            if (!ids.isEmpty()) {
+                markDelivered(cursor.receiverId, ids);
+            }
+            if (hasMore) {
+                replayNextPage(channel, cursor);
+            } else {
+                channel.attr(REPLAY_CURSOR_KEY).compareAndSet(cursor, null);
+            }
+            return;
+        }
+
+        // 同一Channel的写出按顺序完成，最后一条成功即表示整页已写出
+        lastWrite.addListener(future -> {
+            if (!future.isSuccess()) {
+                logger.warn("Offline replay to user {} interrupted: {}", cursor.receiverId,
+                        future.cause() != null ? future.cause().getMessage() : "unknown");
+                return;
+            }
+            cursor.executor.execute(() -> {
+                markDelivered(cursor.receiverId, ids);
+                if (!hasMore) {
+                    channel.attr(REPLAY_CURSOR_KEY).compareAndSet(cursor, null);
+                } else if (channel.isWritable()) {
+                    replayNextPage(channel, cursor);
+                } else {
+                    // 等待channelWritabilityChanged后继续
+                    cursor.paused = true;
+                    resume(channel);
+                }
+            });
+        });
+    }
+
+    private void markDelivered(Long receiverId, List<Long> ids) {
+        try {
+            chatMsgService.markDelivered(ids);
+            chatMetrics.offlineReplayed(ids.size());
+            logger.info("Replayed {} offline messages to user {}", ids.size(), receiverId);
+        } catch (Exception e) {
+            logger.error("Failed to mark offline messages delivered for user {}: {}", receiverId, e.getMessage());
+        }
+    }
+
+    private ChatMessage toChatMessage(ChatMsg chatMsg) {
+        Long timestamp = chatMsg.getCreateTime() != null
+                ? chatMsg.getCreateTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                : null;
+        return new ChatMessage(chatMsg.getMsgType(), String.valueOf(chatMsg.getFromId()), String.valueOf(chatMsg.getToId()),
+                chatMsg.getContent(), timestamp, true, chatMsg.getId(), true, null, null);
+    }
+
+    /**
+     * 补发游标
+     */
+    private static final class ReplayCursor {
+        private final Long receiverId;
+        private final Executor executor;
+        private volatile long lastId = 0L;
+        private volatile boolean paused = false;
+
+        private ReplayCursor(Long receiverId, Executor executor) {
+            this.receiverId = receiverId;
+            this.executor = executor;
+        }
+    }
+}
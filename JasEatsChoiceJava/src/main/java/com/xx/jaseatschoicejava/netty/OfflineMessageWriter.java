@@ -0,0 +1,345 @@
+package com.xx.jaseatschoicejava.netty;
+
+import com.xx.jaseatschoicejava.config.NettyConfig;
+import com.xx.jaseatschoicejava.entity.ChatMsg;
+import com.xx.jaseatschoicejava.enums.MsgType;
+import com.xx.jaseatschoicejava.netty.cluster.ChatClusterRouter;
+import com.xx.jaseatschoicejava.netty.codec.ChatMessage;
+import com.xx.jaseatschoicejava.service.ChatMsgService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 离线消息异步批量写入器
+ * 接收方不在线时消息先进入有界队列，由后台线程按条数或时间批量写入t_chat_msg，
+ * 避免每条消息一次数据库往返；队列满或服务关闭后退化为同步写库，保证消息不丢失。
+ * 入队与关闭在同一把锁下判断运行状态，关闭后不会再有消息进入无人处理的队列。
+ * 接收方在所有节点上都已断开且存在可恢复的会话时，消息先进入MissedMessageBuffer，会话恢复时直接补发，会话到期后再写库
+ */
+@Component
+public class OfflineMessageWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(OfflineMessageWriter.class);
+
+    /**
+     * 可按接收方离线存储的消息类型
+     */
+    private static final Set<String> STORABLE_TYPES = Set.of(
+            MsgType.SINGLE.getValue(), MsgType.ORDER_SYNC.getValue(), MsgType.ORDER_STATUS.getValue());
+
+    /**
+     * flushPending等待写线程当前批次的最长时间
+     */
+    private static final long FLUSH_WAIT_MS = 5000;
+
+    private final ChatMsgService chatMsgService;
+    private final MissedMessageBuffer missedMessageBuffer;
+    private final UserChannelRegistry userChannelRegistry;
+    private final ChatClusterRouter chatClusterRouter;
+    private final ChatMetrics chatMetrics;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final int capacity;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition batchFlushed = lock.newCondition();
+    // 以下字段由lock保护
+    private final ArrayDeque<ChatMsg> queue = new ArrayDeque<>();
+    private boolean running = false;
+    // 写线程已取出但尚未写完的批次序号，0表示没有
+    private long inFlightBatch = 0;
+    private long batchSeq = 0;
+
+    private Thread worker;
+
+    public OfflineMessageWriter(ChatMsgService chatMsgService, MissedMessageBuffer missedMessageBuffer,
+                                UserChannelRegistry userChannelRegistry, ChatClusterRouter chatClusterRouter,
+                                ChatMetrics chatMetrics, NettyConfig nettyConfig) {
+        this.chatMsgService = chatMsgService;
+        this.missedMessageBuffer = missedMessageBuffer;
+        this.userChannelRegistry = userChannelRegistry;
+        this.chatClusterRouter = chatClusterRouter;
+        this.chatMetrics = chatMetrics;
+        this.batchSize = Math.max(1, nettyConfig.getOfflineBatchSize());
+        this.flushIntervalMs = Math.max(1, nettyConfig.getOfflineFlushIntervalMs());
+        this.capacity = Math.max(1, nettyConfig.getOfflineQueueCapacity());
+    }
+
+    @PostConstruct
+    public void start() {
+        chatMetrics.registerOfflineQueueDepth(this::queueDepth);
+        lock.lock();
+        try {
+            running = true;
+        } finally {
+            lock.unlock();
+        }
+        worker = new Thread(this::runLoop, "offline-msg-writer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * 关闭时停止接收新消息，并将队列中剩余的消息全部写入数据库
+     */
+    @PreDestroy
+    public void shutdown() {
+        lock.lock();
+        try {
+            running = false;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (worker != null) {
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(15));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // 写线程未能在超时前退出时，由当前线程兜底写入剩余消息
+        flush(drain());
+        logger.info("Offline message writer stopped");
+    }
+
+    /**
+     * 将发给指定用户的聊天消息作为离线消息提交
+     *
+     * @param message    聊天消息
+     * @param receiverId 接收方用户ID
+     * @return 消息是否可以离线存储；群消息等无法按单个接收方落库的消息返回false
+     */
+    public boolean submit(ChatMessage message, String receiverId) {
+        if (!isStorable(message)) {
+            return false;
+        }
+        // 接收方在所有节点上都已断开、且有可恢复的会话时才放入缓冲区；
+        // 仍有在线连接时不会再走会话恢复，缓冲的消息要等会话到期才落库，因此直接写库由离线补发投递
+        if (!isOnlineAnywhere(receiverId) && missedMessageBuffer.offer(receiverId, message)) {
+            chatMetrics.offlineBuffered();
+            return true;
+        }
+        return store(message, receiverId);
+    }
+
+    /**
+     * 将发给指定用户的聊天消息直接写库，不经过会话缓冲区
+     *
+     * @param message    聊天消息
+     * @param receiverId 接收方用户ID
+     * @return 消息是否可以离线存储
+     */
+    public boolean store(ChatMessage message, String receiverId) {
+        if (!isStorable(message)) {
+            return false;
+        }
+        Long fromId = ChatIds.toLong(message.fromId());
+        Long toId = ChatIds.toLong(receiverId);
+        if (fromId == null || toId == null) {
+            logger.warn("Skip storing offline message with invalid id, fromId: {}, toId: {}", message.fromId(), receiverId);
+            return false;
+        }
+
+        ChatMsg chatMsg = new ChatMsg();
+        chatMsg.setFromId(fromId);
+        chatMsg.setToId(toId);
+        chatMsg.setMsgType(message.msgType());
+        chatMsg.setContent(message.content());
+        chatMsg.setReadStatus(false); // 未读状态
+        chatMsg.setCreateTime(LocalDateTime.now());
+        submit(chatMsg);
+        return true;
+    }
+
+    private boolean isOnlineAnywhere(String receiverId) {
+        return userChannelRegistry.hasActiveChannel(receiverId, null) || chatClusterRouter.isOnlineElsewhere(receiverId);
+    }
+
+    /**
+     * 消息类型是否可以作为离线消息存储
+     */
+    public boolean isStorable(ChatMessage message) {
+        return STORABLE_TYPES.contains(message.msgType());
+    }
+
+    /**
+     * 提交一条离线消息
+     */
+    public void submit(ChatMsg chatMsg) {
+        lock.lock();
+        try {
+            if (running && queue.size() < capacity) {
+                queue.addLast(chatMsg);
+                // 只在写线程可能等待的时刻唤醒：队列由空变为非空，或凑满一批
+                if (queue.size() == 1 || queue.size() == batchSize) {
+                    notEmpty.signal();
+                }
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        // 队列已满或写入器已停止，直接同步写库
+        chatMetrics.offlineFallback();
+        saveDirectly(chatMsg);
+    }
+
+    /**
+     * 将队列中尚未写入的消息立即同步写入数据库，并等待写线程已取出的批次写完，
+     * 返回后此前提交的离线消息均已落库（写线程超时未完成时除外）
+     */
+    public void flushPending() {
+        long waitBatch;
+        List<ChatMsg> pending;
+        lock.lock();
+        try {
+            waitBatch = inFlightBatch;
+            pending = new ArrayList<>(queue);
+            queue.clear();
+        } finally {
+            lock.unlock();
+        }
+        flush(pending);
+        if (waitBatch != 0) {
+            awaitBatch(waitBatch);
+        }
+    }
+
+    private void awaitBatch(long seq) {
+        long waitNanos = TimeUnit.MILLISECONDS.toNanos(FLUSH_WAIT_MS);
+        lock.lock();
+        try {
+            while (inFlightBatch == seq) {
+                if (waitNanos <= 0) {
+                    logger.warn("Timed out waiting for in-flight offline batch {}", seq);
+                    return;
+                }
+                waitNanos = batchFlushed.awaitNanos(waitNanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void runLoop() {
+        while (true) {
+            List<ChatMsg> batch;
+            try {
+                batch = takeBatch();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (batch == null) {
+                break;
+            }
+            try {
+                flush(batch);
+            } catch (Exception e) {
+                logger.error("Offline message writer loop error: {}", e.getMessage(), e);
+            } finally {
+                lock.lock();
+                try {
+                    inFlightBatch = 0;
+                    batchFlushed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * 等待并取出一批消息，凑满一批或等待超过刷新间隔后返回
+     *
+     * @return 待写入的消息；写入器已停止且队列为空时返回null
+     */
+    private List<ChatMsg> takeBatch() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (queue.isEmpty()) {
+                if (!running) {
+                    return null;
+                }
+                notEmpty.await();
+            }
+            // 停止后不再等待，尽快写完剩余消息
+            long waitNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+            while (running && queue.size() < batchSize && waitNanos > 0) {
+                waitNanos = notEmpty.awaitNanos(waitNanos);
+            }
+            List<ChatMsg> batch = new ArrayList<>(Math.min(batchSize, queue.size()));
+            while (batch.size() < batchSize && !queue.isEmpty()) {
+                batch.add(queue.pollFirst());
+            }
+            inFlightBatch = ++batchSeq;
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<ChatMsg> drain() {
+        lock.lock();
+        try {
+            List<ChatMsg> pending = new ArrayList<>(queue);
+            queue.clear();
+            return pending;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int queueDepth() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flush(List<ChatMsg> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            // 消息与会话摘要在同一事务中写入
+            chatMsgService.saveOfflineBatch(batch);
+            chatMetrics.offlineStored(batch.size());
+            logger.debug("Stored {} offline messages", batch.size());
+        } catch (Exception e) {
+            // 批量写入失败时逐条重试，避免一条坏数据导致整批丢失
+            logger.error("Failed to batch store {} offline messages, retrying one by one: {}", batch.size(), e.getMessage());
+            for (ChatMsg chatMsg : batch) {
+                saveDirectly(chatMsg);
+            }
+        }
+    }
+
+    private void saveDirectly(ChatMsg chatMsg) {
+        try {
+            chatMsgService.saveMessage(chatMsg);
+            chatMetrics.offlineStored(1);
+        } catch (Exception e) {
+            chatMetrics.offlineFailed(1);
+            logger.error("Failed to store offline message for user {}: {}", chatMsg.getToId(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.xx.jaseatschoicejava.netty;
+
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 本节点的用户在线路由索引
+ * 维护 用户ID -> 本节点上在线Channel 的映射，同一用户可在多个设备上同时在线；
+ * 其他节点上的在线状态由ChatClusterRouter通过在线状态注册表查询
+ */
+@Component
+public class UserChannelRegistry {
+
+    /**
+     * Channel上绑定的用户ID，断开或重新绑定时据此直接定位映射，无需遍历全部在线用户
+     */
+    public static final AttributeKey<String> USER_ID_KEY = AttributeKey.valueOf("userId");
+
+    // 存储用户ID与Channel的映射关系
+    private final ConcurrentHashMap<String, Set<Channel>> userChannels = new ConcurrentHashMap<>();
+
+    /**
+     * 将用户ID绑定到Channel
+     *
+     * @param userId  用户ID
+     * @param channel 用户的Channel
+     * @return 绑定前该Channel上的用户ID；返回值与userId相同表示已绑定，无需重复处理
+     */
+    public String bind(String userId, Channel channel) {
+        String previous = channel.attr(USER_ID_KEY).getAndSet(userId);
+        if (userId.equals(previous)) {
+            return previous;
+        }
+        // 同一连接切换了用户，先解除旧用户的映射
+        if (previous != null) {
+            remove(previous, channel);
+        }
+        userChannels.compute(userId, (id, channels) -> {
+            if (channels == null) {
+                channels = ConcurrentHashMap.newKeySet();
+            }
+            channels.add(channel);
+            return channels;
+        });
+        return previous;
+    }
+
+    /**
+     * 解除Channel上绑定的用户
+     *
+     * @return 解除绑定的用户ID，Channel未绑定用户时返回null
+     */
+    public String unbind(Channel channel) {
+        String userId = channel.attr(USER_ID_KEY).getAndSet(null);
+        if (userId != null) {
+            remove(userId, channel);
+        }
+        return userId;
+    }
+
+    /**
+     * 解除用户与Channel的映射，用户无在线设备时移除整个映射
+     */
+    public void remove(String userId, Channel channel) {
+        userChannels.computeIfPresent(userId, (id, channels) -> {
+            channels.remove(channel);
+            return channels.isEmpty() ? null : channels;
+        });
+    }
+
+    /**
+     * 获取用户在本节点上在线的Channel
+     *
+     * @param userId 用户ID
+     * @return 在线Channel，用户不在本节点在线时返回空集合
+     */
+    public Collection<Channel> getChannels(String userId) {
+        Set<Channel> channels = userChannels.get(ChatIds.normalize(userId));
+        return channels != null ? channels : Collections.emptySet();
+    }
+
+    /**
+     * 用户是否在本节点上在线
+     */
+    public boolean isOnline(String userId) {
+        return userChannels.containsKey(ChatIds.normalize(userId));
+    }
+
+    /**
+     * 用户在本节点上是否还有可用的Channel
+     *
+     * @param userId  用户ID
+     * @param except  不计入的Channel，为null时检查全部
+     */
+    public boolean hasActiveChannel(String userId, Channel except) {
+        for (Channel channel : getChannels(userId)) {
+            if (channel != except && channel.isActive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 本节点上在线的用户ID
+     */
+    public Set<String> onlineUserIds() {
+        return Collections.unmodifiableSet(userChannels.keySet());
+    }
+
+    /**
+     * 获取Channel上绑定的用户ID
+     */
+    public static String userIdOf(Channel channel) {
+        return channel.attr(USER_ID_KEY).get();
+    }
+}
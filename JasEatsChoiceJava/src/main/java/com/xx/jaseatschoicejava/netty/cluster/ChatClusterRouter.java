@@ -0,0 +1,216 @@
+package com.xx.jaseatschoicejava.netty.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xx.jaseatschoicejava.config.NettyConfig;
+import com.xx.jaseatschoicejava.netty.codec.ChatMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * 跨节点消息路由
+ * 用户上线时在在线状态注册表中登记 用户ID -> 节点ID，并由所在节点定期续期；
+ * 发给其他节点上用户的消息经该节点的专属通道 chat:node:{nodeId} 转发，群消息和头像更新通知经共享通道 chat:group 广播给所有节点
+ */
+@Component
+public class ChatClusterRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatClusterRouter.class);
+
+    private static final String NODE_TOPIC_PREFIX = "chat:node:";
+
+    private static final String GROUP_TOPIC = "chat:group";
+
+    private final ClusterTransport transport;
+    private final boolean enabled;
+    private final String nodeId;
+    private final long presenceTtlMs;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    public ChatClusterRouter(ClusterTransport transport, NettyConfig nettyConfig) {
+        this(transport, nettyConfig.isClusterEnabled(), resolveNodeId(nettyConfig.getClusterNodeId()),
+                nettyConfig.getClusterPresenceTtlMs());
+    }
+
+    /**
+     * @param enabled 是否为多节点部署，单节点部署时不登记在线状态也不转发消息
+     */
+    public ChatClusterRouter(ClusterTransport transport, boolean enabled, String nodeId, long presenceTtlMs) {
+        this.transport = transport;
+        this.enabled = enabled;
+        this.nodeId = nodeId;
+        this.presenceTtlMs = presenceTtlMs;
+    }
+
+    /**
+     * 订阅本节点的专属通道和群消息通道
+     *
+     * @param listener 处理其他节点转发来的消息
+     */
+    public void onInbound(Consumer<ClusterEnvelope> listener) {
+        if (!enabled) {
+            return;
+        }
+        Consumer<String> decoder = payload -> {
+            ClusterEnvelope envelope;
+            try {
+                envelope = objectMapper.readValue(payload, ClusterEnvelope.class);
+            } catch (Exception e) {
+                logger.error("Failed to decode cluster message: {}", payload, e);
+                return;
+            }
+            // 群消息广播给所有节点，忽略本节点自己发出的
+            if (nodeId.equals(envelope.origin())) {
+                return;
+            }
+            listener.accept(envelope);
+        };
+        transport.subscribe(NODE_TOPIC_PREFIX + nodeId, decoder);
+        transport.subscribe(GROUP_TOPIC, decoder);
+        logger.info("Chat cluster node {} subscribed", nodeId);
+    }
+
+    /**
+     * 用户在本节点上线
+     */
+    public void userOnline(String userId) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            transport.putPresence(userId, nodeId, presenceTtlMs);
+        } catch (Exception e) {
+            // 登记失败时等待下一次续期补登
+            logger.error("Failed to register presence of user {}", userId, e);
+        }
+    }
+
+    /**
+     * 用户在本节点已无在线设备
+     */
+    public void userOffline(String userId) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            transport.removePresence(userId, nodeId);
+        } catch (Exception e) {
+            // 移除失败时在线状态到期后自动失效
+            logger.error("Failed to remove presence of user {}", userId, e);
+        }
+    }
+
+    /**
+     * 续期本节点上在线用户的在线状态
+     */
+    public void refreshPresence(Collection<String> userIds) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            transport.refreshPresence(userIds, nodeId, presenceTtlMs);
+        } catch (Exception e) {
+            logger.error("Failed to refresh presence of {} users", userIds.size(), e);
+        }
+    }
+
+    /**
+     * 用户在其他节点上在线时，将消息转发到每一个这样的节点，同一用户的多个设备可能分布在不同节点上
+     *
+     * @return 是否已转发到至少一个节点；用户不在其他节点上在线或转发全部失败时返回false
+     */
+    public boolean relayToUser(String userId, ChatMessage message) {
+        if (!enabled) {
+            return false;
+        }
+        Set<String> targetNodes;
+        try {
+            targetNodes = transport.getPresence(userId);
+        } catch (Exception e) {
+            logger.error("Failed to look up presence of user {}", userId, e);
+            return false;
+        }
+        boolean relayed = false;
+        for (String targetNode : targetNodes) {
+            if (!targetNode.equals(nodeId)
+                    && publish(NODE_TOPIC_PREFIX + targetNode, new ClusterEnvelope(ClusterEnvelope.KIND_USER, userId, nodeId, message))) {
+                relayed = true;
+            }
+        }
+        return relayed;
+    }
+
+    /**
+     * 用户是否在其他节点上在线
+     *
+     * @return 在线节点中包含其他节点时返回true；未启用集群或查询失败时返回false
+     */
+    public boolean isOnlineElsewhere(String userId) {
+        if (!enabled) {
+            return false;
+        }
+        try {
+            for (String targetNode : transport.getPresence(userId)) {
+                if (!targetNode.equals(nodeId)) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (Exception e) {
+            logger.error("Failed to look up presence of user {}", userId, e);
+            return false;
+        }
+    }
+
+    /**
+     * 将群消息广播给其他节点，由各节点投递给本地的在线成员
+     */
+    public void relayToGroup(String groupId, ChatMessage message) {
+        if (!enabled) {
+            return;
+        }
+        publish(GROUP_TOPIC, new ClusterEnvelope(ClusterEnvelope.KIND_GROUP, groupId, nodeId, message));
+    }
+
+    /**
+     * 将头像更新通知广播给其他节点，由各节点通知本地的在线好友
+     */
+    public void relayAvatarUpdate(String userId, ChatMessage message) {
+        if (!enabled) {
+            return;
+        }
+        publish(GROUP_TOPIC, new ClusterEnvelope(ClusterEnvelope.KIND_AVATAR, userId, nodeId, message));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    private boolean publish(String topic, ClusterEnvelope envelope) {
+        try {
+            transport.publish(topic, objectMapper.writeValueAsString(envelope));
+            return true;
+        } catch (Exception e) {
+            logger.error("Failed to relay message to {}: {}", topic, envelope, e);
+            return false;
+        }
+    }
+
+    private static String resolveNodeId(String configured) {
+        if (configured != null && !configured.trim().isEmpty()) {
+            return configured.trim();
+        }
+        return UUID.randomUUID().toString().replace("-", "").substring(0, 12);
+    }
+}
@@ -0,0 +1,20 @@
+package com.xx.jaseatschoicejava.netty.cluster;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.xx.jaseatschoicejava.netty.codec.ChatMessage;
+
+/**
+ * 节点间中转的消息
+ *
+ * @param kind    投递类型：user（投递给用户）、group（投递给群的在线成员）或 avatar（通知用户的在线好友头像已更新）
+ * @param target  目标用户ID或群ID，avatar时为更换头像的用户ID
+ * @param origin  发出消息的节点ID
+ * @param message 聊天消息
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record ClusterEnvelope(String kind, String target, String origin, ChatMessage message) {
+
+    public static final String KIND_USER = "user";
+    public static final String KIND_GROUP = "group";
+    public static final String KIND_AVATAR = "avatar";
+}
@@ -0,0 +1,96 @@
+package com.xx.jaseatschoicejava.netty.cluster;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 集群通信接口
+ * 提供 用户ID -> 节点ID集合 的在线状态注册表（每个节点的登记各自带有效期）、节点间的发布/订阅通道，
+ * 以及可恢复会话的令牌和断线期间消息缓冲区，
+ * 生产环境由Redis实现，单节点部署和测试使用进程内实现
+ */
+public interface ClusterTransport {
+
+    /**
+     * 登记用户在指定节点上在线，同一用户可同时在多个节点上在线
+     *
+     * @param userId 用户ID
+     * @param nodeId 节点ID
+     * @param ttlMs  有效期（毫秒）
+     */
+    void putPresence(String userId, String nodeId, long ttlMs);
+
+    /**
+     * 批量续期本节点上在线用户的在线状态
+     */
+    void refreshPresence(Collection<String> userIds, String nodeId, long ttlMs);
+
+    /**
+     * 移除用户在指定节点上的在线状态，不影响用户在其他节点上的登记
+     */
+    void removePresence(String userId, String nodeId);
+
+    /**
+     * 查询用户在线的节点
+     *
+     * @return 登记未过期的节点ID，用户不在线时返回空集合
+     */
+    Set<String> getPresence(String userId);
+
+    /**
+     * 向主题发布消息
+     */
+    void publish(String topic, String payload);
+
+    /**
+     * 订阅主题
+     */
+    void subscribe(String topic, Consumer<String> listener);
+
+    /**
+     * 创建或续期用户的会话，会话到期前发往该用户的离线消息可以进入缓冲区
+     *
+     * @param userIds 用户ID
+     * @param ttlMs   距会话到期的时间（毫秒）
+     */
+    void touchSessions(Collection<String> userIds, long ttlMs);
+
+    /**
+     * 登记断线重连时用于恢复会话的令牌
+     */
+    void saveResumeToken(String token, String userId, long ttlMs);
+
+    /**
+     * 取出并作废恢复令牌
+     *
+     * @return 令牌所属的用户ID，令牌不存在或已过期时返回null
+     */
+    String takeResumeToken(String token);
+
+    /**
+     * 会话存在时将消息追加到用户的缓冲区
+     *
+     * @param capacity 缓冲区容量，写满后不再追加并标记溢出
+     * @return 是否已放入缓冲区；会话不存在或缓冲区已满时返回false
+     */
+    boolean appendMissed(String userId, String payload, int capacity);
+
+    /**
+     * 取出并清空用户的缓冲区，会话保持不变
+     */
+    MissedMessages drainMissed(String userId);
+
+    /**
+     * 查询已到期的会话
+     */
+    List<String> expiredSessions(long now, int limit);
+
+    /**
+     * 关闭已到期的会话并取出其缓冲区，多个节点同时处理同一会话时只有一个能取到
+     *
+     * @return 缓冲区中的消息；会话已续期或已被关闭时返回null
+     */
+    List<String> closeExpiredSession(String userId, long now);
+}
@@ -0,0 +1,162 @@
+package com.xx.jaseatschoicejava.netty.cluster;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 进程内的集群通信实现
+ * 单节点部署时代替Redis；多个节点共享同一实例即可在一个JVM中模拟多节点部署，发布的消息同步投递给订阅者
+ */
+public class InMemoryClusterTransport implements ClusterTransport {
+
+    // 用户ID -> (节点ID -> 登记到期时间)
+    private final Map<String, Map<String, Long>> presences = new ConcurrentHashMap<>();
+
+    private final Map<String, List<Consumer<String>>> subscribers = new ConcurrentHashMap<>();
+
+    private final Map<String, ResumeToken> resumeTokens = new ConcurrentHashMap<>();
+
+    // 会话到期时间与缓冲区，统一由this加锁
+    private final Map<String, Long> sessionDeadlines = new HashMap<>();
+    private final Map<String, List<String>> missed = new HashMap<>();
+    private final Set<String> overflowed = new HashSet<>();
+
+    @Override
+    public void putPresence(String userId, String nodeId, long ttlMs) {
+        long now = System.currentTimeMillis();
+        presences.compute(userId, (id, nodes) -> {
+            if (nodes == null) {
+                nodes = new HashMap<>();
+            }
+            nodes.values().removeIf(expiresAt -> expiresAt <= now);
+            nodes.put(nodeId, now + ttlMs);
+            return nodes;
+        });
+    }
+
+    @Override
+    public void refreshPresence(Collection<String> userIds, String nodeId, long ttlMs) {
+        for (String userId : userIds) {
+            putPresence(userId, nodeId, ttlMs);
+        }
+    }
+
+    @Override
+    public void removePresence(String userId, String nodeId) {
+        presences.computeIfPresent(userId, (id, nodes) -> {
+            nodes.remove(nodeId);
+            return nodes.isEmpty() ? null : nodes;
+        });
+    }
+
+    @Override
+    public Set<String> getPresence(String userId) {
+        long now = System.currentTimeMillis();
+        Set<String> live = new HashSet<>();
+        presences.computeIfPresent(userId, (id, nodes) -> {
+            nodes.values().removeIf(expiresAt -> expiresAt <= now);
+            live.addAll(nodes.keySet());
+            return nodes.isEmpty() ? null : nodes;
+        });
+        return live;
+    }
+
+    @Override
+    public void publish(String topic, String payload) {
+        List<Consumer<String>> listeners = subscribers.get(topic);
+        if (listeners == null) {
+            return;
+        }
+        for (Consumer<String> listener : listeners) {
+            listener.accept(payload);
+        }
+    }
+
+    @Override
+    public void subscribe(String topic, Consumer<String> listener) {
+        subscribers.computeIfAbsent(topic, t -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    @Override
+    public synchronized void touchSessions(Collection<String> userIds, long ttlMs) {
+        long deadline = System.currentTimeMillis() + ttlMs;
+        for (String userId : userIds) {
+            sessionDeadlines.put(userId, deadline);
+        }
+    }
+
+    @Override
+    public void saveResumeToken(String token, String userId, long ttlMs) {
+        resumeTokens.put(token, new ResumeToken(userId, System.currentTimeMillis() + ttlMs));
+    }
+
+    @Override
+    public String takeResumeToken(String token) {
+        ResumeToken entry = resumeTokens.remove(token);
+        return entry != null && entry.expiresAt > System.currentTimeMillis() ? entry.userId : null;
+    }
+
+    @Override
+    public synchronized boolean appendMissed(String userId, String payload, int capacity) {
+        if (!sessionDeadlines.containsKey(userId)) {
+            return false;
+        }
+        List<String> buffer = missed.computeIfAbsent(userId, id -> new ArrayList<>());
+        if (buffer.size() >= capacity) {
+            overflowed.add(userId);
+            return false;
+        }
+        buffer.add(payload);
+        return true;
+    }
+
+    @Override
+    public synchronized MissedMessages drainMissed(String userId) {
+        List<String> buffer = missed.remove(userId);
+        return new MissedMessages(buffer != null ? buffer : List.of(), overflowed.remove(userId));
+    }
+
+    @Override
+    public synchronized List<String> expiredSessions(long now, int limit) {
+        List<String> expired = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : sessionDeadlines.entrySet()) {
+            if (expired.size() >= limit) {
+                break;
+            }
+            if (entry.getValue() <= now) {
+                expired.add(entry.getKey());
+            }
+        }
+        return expired;
+    }
+
+    @Override
+    public synchronized List<String> closeExpiredSession(String userId, long now) {
+        Long deadline = sessionDeadlines.get(userId);
+        if (deadline == null || deadline > now) {
+            return null;
+        }
+        sessionDeadlines.remove(userId);
+        overflowed.remove(userId);
+        List<String> buffer = missed.remove(userId);
+        return buffer != null ? buffer : List.of();
+    }
+
+    private static final class ResumeToken {
+        private final String userId;
+        private final long expiresAt;
+
+        private ResumeToken(String userId, long expiresAt) {
+            this.userId = userId;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
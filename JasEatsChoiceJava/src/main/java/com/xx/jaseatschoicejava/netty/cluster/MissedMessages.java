@@ -0,0 +1,12 @@
+package com.xx.jaseatschoicejava.netty.cluster;
+
+import java.util.List;
+
+/**
+ * 从会话缓冲区取出的消息
+ *
+ * @param payloads   按写入顺序排列的消息
+ * @param overflowed 缓冲区是否曾经写满，写满后的消息已直接转存离线，需从数据库补发
+ */
+public record MissedMessages(List<String> payloads, boolean overflowed) {
+}
@@ -0,0 +1,215 @@
+package com.xx.jaseatschoicejava.netty.cluster;
+
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 基于Redis的集群通信实现
+ * 在线状态存储为哈希 chat:presence:{userId}，字段为节点ID、值为该节点登记的到期时间（毫秒），读取时忽略已到期的节点，
+ * 整个键在最后一次登记到期后过期；节点间消息经由Redis发布/订阅通道传递；
+ * 会话到期时间存储在有序集合 chat:sessions 中，缓冲区为列表 chat:missed:{userId}，恢复令牌为 chat:resume:{token}
+ */
+public class RedisClusterTransport implements ClusterTransport {
+
+    private static final String PRESENCE_KEY_PREFIX = "chat:presence:";
+    private static final String SESSIONS_KEY = "chat:sessions";
+    private static final String MISSED_KEY_PREFIX = "chat:missed:";
+    private static final String OVERFLOW_KEY_PREFIX = "chat:missed:overflow:";
+    private static final String RESUME_TOKEN_KEY_PREFIX = "chat:resume:";
+
+    /**
+     * 登记节点并清理已到期的节点，键的有效期只延长不缩短
+     */
+    private static final RedisScript<Long> PUT_PRESENCE = new DefaultRedisScript<>(
+            "local now = tonumber(ARGV[2]) "
+                    + "local fields = redis.call('hgetall', KEYS[1]) "
+                    + "for i = 1, #fields, 2 do "
+                    + "if tonumber(fields[i + 1]) <= now then redis.call('hdel', KEYS[1], fields[i]) end "
+                    + "end "
+                    + "redis.call('hset', KEYS[1], ARGV[1], now + tonumber(ARGV[3])) "
+                    + "if redis.call('pttl', KEYS[1]) < tonumber(ARGV[3]) then redis.call('pexpire', KEYS[1], ARGV[3]) end "
+                    + "return 1",
+            Long.class);
+
+    /**
+     * 取出并删除恢复令牌
+     */
+    private static final RedisScript<String> TAKE = new DefaultRedisScript<>(
+            "local value = redis.call('get', KEYS[1]) "
+                    + "if value then redis.call('del', KEYS[1]) end "
+                    + "return value",
+            String.class);
+
+    /**
+     * 会话存在且缓冲区未满时追加消息，已满时标记溢出
+     */
+    private static final RedisScript<Long> APPEND_MISSED = new DefaultRedisScript<>(
+            "if not redis.call('zscore', KEYS[1], ARGV[1]) then return 0 end "
+                    + "if redis.call('llen', KEYS[2]) >= tonumber(ARGV[3]) then redis.call('set', KEYS[3], '1') return 0 end "
+                    + "redis.call('rpush', KEYS[2], ARGV[2]) "
+                    + "return 1",
+            Long.class);
+
+    /**
+     * 取出并清空缓冲区，第一个元素为溢出标记
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> DRAIN_MISSED = new DefaultRedisScript<>(
+            "local items = redis.call('lrange', KEYS[1], 0, -1) "
+                    + "local overflow = redis.call('get', KEYS[2]) "
+                    + "redis.call('del', KEYS[1], KEYS[2]) "
+                    + "table.insert(items, 1, overflow and '1' or '0') "
+                    + "return items",
+            List.class);
+
+    /**
+     * 会话仍处于到期状态时删除会话并取出缓冲区
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> CLOSE_EXPIRED = new DefaultRedisScript<>(
+            "local deadline = redis.call('zscore', KEYS[1], ARGV[1]) "
+                    + "if not deadline or tonumber(deadline) > tonumber(ARGV[2]) then return false end "
+                    + "redis.call('zrem', KEYS[1], ARGV[1]) "
+                    + "local items = redis.call('lrange', KEYS[2], 0, -1) "
+                    + "redis.call('del', KEYS[2], KEYS[3]) "
+                    + "return items",
+            List.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    public RedisClusterTransport(StringRedisTemplate redisTemplate, RedisMessageListenerContainer listenerContainer) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+    }
+
+    @Override
+    public void putPresence(String userId, String nodeId, long ttlMs) {
+        redisTemplate.execute(PUT_PRESENCE, Collections.singletonList(PRESENCE_KEY_PREFIX + userId),
+                nodeId, String.valueOf(System.currentTimeMillis()), String.valueOf(ttlMs));
+    }
+
+    @Override
+    public void refreshPresence(Collection<String> userIds, String nodeId, long ttlMs) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        // 使用管道批量续期，避免每个用户一次网络往返
+        String now = String.valueOf(System.currentTimeMillis());
+        String ttl = String.valueOf(ttlMs);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (String userId : userIds) {
+                stringConnection.eval(PUT_PRESENCE.getScriptAsString(), ReturnType.INTEGER, 1,
+                        PRESENCE_KEY_PREFIX + userId, nodeId, now, ttl);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void removePresence(String userId, String nodeId) {
+        redisTemplate.opsForHash().delete(PRESENCE_KEY_PREFIX + userId, nodeId);
+    }
+
+    @Override
+    public Set<String> getPresence(String userId) {
+        Map<Object, Object> nodes = redisTemplate.opsForHash().entries(PRESENCE_KEY_PREFIX + userId);
+        long now = System.currentTimeMillis();
+        Set<String> live = new HashSet<>();
+        for (Map.Entry<Object, Object> node : nodes.entrySet()) {
+            if (Long.parseLong((String) node.getValue()) > now) {
+                live.add((String) node.getKey());
+            }
+        }
+        return live;
+    }
+
+    @Override
+    public void publish(String topic, String payload) {
+        redisTemplate.convertAndSend(topic, payload);
+    }
+
+    @Override
+    public void subscribe(String topic, Consumer<String> listener) {
+        listenerContainer.addMessageListener(
+                (message, pattern) -> listener.accept(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(topic));
+    }
+
+    @Override
+    public void touchSessions(Collection<String> userIds, long ttlMs) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        double deadline = System.currentTimeMillis() + ttlMs;
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (String userId : userIds) {
+                stringConnection.zAdd(SESSIONS_KEY, deadline, userId);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void saveResumeToken(String token, String userId, long ttlMs) {
+        redisTemplate.opsForValue().set(RESUME_TOKEN_KEY_PREFIX + token, userId, ttlMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public String takeResumeToken(String token) {
+        return redisTemplate.execute(TAKE, Collections.singletonList(RESUME_TOKEN_KEY_PREFIX + token));
+    }
+
+    @Override
+    public boolean appendMissed(String userId, String payload, int capacity) {
+        Long appended = redisTemplate.execute(APPEND_MISSED,
+                Arrays.asList(SESSIONS_KEY, MISSED_KEY_PREFIX + userId, OVERFLOW_KEY_PREFIX + userId),
+                userId, payload, String.valueOf(capacity));
+        return appended != null && appended == 1L;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public MissedMessages drainMissed(String userId) {
+        List<String> items = redisTemplate.execute(DRAIN_MISSED,
+                Arrays.asList(MISSED_KEY_PREFIX + userId, OVERFLOW_KEY_PREFIX + userId));
+        if (items == null || items.isEmpty()) {
+            return new MissedMessages(List.of(), false);
+        }
+        return new MissedMessages(new ArrayList<>(items.subList(1, items.size())), "1".equals(items.get(0)));
+    }
+
+    @Override
+    public List<String> expiredSessions(long now, int limit) {
+        Set<String> expired = redisTemplate.opsForZSet().rangeByScore(SESSIONS_KEY, 0, now, 0, limit);
+        return expired != null ? new ArrayList<>(expired) : List.of();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<String> closeExpiredSession(String userId, long now) {
+        return redisTemplate.execute(CLOSE_EXPIRED,
+                Arrays.asList(SESSIONS_KEY, MISSED_KEY_PREFIX + userId, OVERFLOW_KEY_PREFIX + userId),
+                userId, String.valueOf(now));
+    }
+}
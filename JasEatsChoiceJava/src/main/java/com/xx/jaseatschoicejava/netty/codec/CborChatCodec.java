@@ -0,0 +1,51 @@
+package com.xx.jaseatschoicejava.netty.codec;
+
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * CBOR二进制协议，使用BinaryWebSocketFrame，体积更小、解析开销更低
+ */
+public class CborChatCodec implements ChatCodec {
+
+    public static final String SUBPROTOCOL = "chat.cbor";
+
+    private final CBORMapper cborMapper = new CBORMapper();
+
+    @Override
+    public String subprotocol() {
+        return SUBPROTOCOL;
+    }
+
+    @Override
+    public ChatMessage decode(WebSocketFrame frame) throws IOException {
+        return cborMapper.readValue((InputStream) new ByteBufInputStream(frame.content()), ChatMessage.class);
+    }
+
+    @Override
+    public ByteBuf encode(ChatMessage message, ByteBufAllocator allocator) throws IOException {
+        ByteBuf buf = allocator.buffer();
+        try {
+            // 直接序列化到缓冲区，不经过中间byte[]
+            cborMapper.writeValue((OutputStream) new ByteBufOutputStream(buf), message);
+            return buf;
+        } catch (IOException e) {
+            buf.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public WebSocketFrame frame(ByteBuf content) {
+        return new BinaryWebSocketFrame(content);
+    }
+}
@@ -0,0 +1,34 @@
+package com.xx.jaseatschoicejava.netty.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+import java.io.IOException;
+
+/**
+ * 聊天消息编解码器
+ * 每种线路格式对应一个WebSocket子协议，握手时由客户端协商选择
+ */
+public interface ChatCodec {
+
+    /**
+     * 对应的WebSocket子协议名称
+     */
+    String subprotocol();
+
+    /**
+     * 将WebSocket帧直接解码为消息对象
+     */
+    ChatMessage decode(WebSocketFrame frame) throws IOException;
+
+    /**
+     * 将消息对象编码到从allocator分配的缓冲区，调用方负责释放
+     */
+    ByteBuf encode(ChatMessage message, ByteBufAllocator allocator) throws IOException;
+
+    /**
+     * 用已编码的内容构造对应类型的WebSocket帧
+     */
+    WebSocketFrame frame(ByteBuf content);
+}
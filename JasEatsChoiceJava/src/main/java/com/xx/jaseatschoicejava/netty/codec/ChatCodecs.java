@@ -0,0 +1,66 @@
+package com.xx.jaseatschoicejava.netty.codec;
+
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.AttributeKey;
+
+import java.io.IOException;
+
+/**
+ * 聊天编解码器选择
+ * 握手时协商的子协议记录在Channel上，未协商时使用JSON文本协议
+ */
+public final class ChatCodecs {
+
+    public static final ChatCodec JSON = new JsonChatCodec();
+
+    public static final ChatCodec CBOR = new CborChatCodec();
+
+    /**
+     * 服务端支持的子协议列表，用于WebSocket握手
+     */
+    public static final String SUBPROTOCOLS = JsonChatCodec.SUBPROTOCOL + "," + CborChatCodec.SUBPROTOCOL;
+
+    private static final AttributeKey<ChatCodec> CODEC_KEY = AttributeKey.valueOf("chatCodec");
+
+    private ChatCodecs() {
+    }
+
+    /**
+     * 根据握手选定的子协议设置Channel的编解码器
+     */
+    public static void bind(Channel channel, String selectedSubprotocol) {
+        channel.attr(CODEC_KEY).set(CborChatCodec.SUBPROTOCOL.equals(selectedSubprotocol) ? CBOR : JSON);
+    }
+
+    /**
+     * Channel是否已完成WebSocket握手并确定了协议
+     */
+    public static boolean isNegotiated(Channel channel) {
+        return channel.attr(CODEC_KEY).get() != null;
+    }
+
+    /**
+     * 获取Channel出站消息使用的编解码器
+     */
+    public static ChatCodec of(Channel channel) {
+        ChatCodec codec = channel.attr(CODEC_KEY).get();
+        return codec != null ? codec : JSON;
+    }
+
+    /**
+     * 按帧类型选择入站解码器，二进制帧使用CBOR，文本帧使用JSON
+     */
+    public static ChatCodec forFrame(WebSocketFrame frame) {
+        return frame instanceof BinaryWebSocketFrame ? CBOR : JSON;
+    }
+
+    /**
+     * 按Channel协商的协议编码消息帧
+     */
+    public static WebSocketFrame encodeFrame(Channel channel, ChatMessage message) throws IOException {
+        ChatCodec codec = of(channel);
+        return codec.frame(codec.encode(message, channel.alloc()));
+    }
+}
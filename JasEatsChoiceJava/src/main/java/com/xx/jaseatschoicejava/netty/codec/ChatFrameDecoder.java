@@ -0,0 +1,42 @@
+package com.xx.jaseatschoicejava.netty.codec;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageDecoder;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * 将WebSocket数据帧解码为ChatMessage，在I/O线程执行
+ * 文本帧按JSON、二进制帧按CBOR解码，格式错误时回复错误消息并丢弃该帧
+ */
+@ChannelHandler.Sharable
+public class ChatFrameDecoder extends MessageToMessageDecoder<WebSocketFrame> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatFrameDecoder.class);
+
+    public static final ChatFrameDecoder INSTANCE = new ChatFrameDecoder();
+
+    private ChatFrameDecoder() {
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, WebSocketFrame frame, List<Object> out) throws Exception {
+        if (!(frame instanceof TextWebSocketFrame) && !(frame instanceof BinaryWebSocketFrame)) {
+            logger.warn("Unsupported frame type: {} from channel: {}", frame.getClass().getSimpleName(), ctx.channel().remoteAddress());
+            return;
+        }
+        try {
+            // 直接从帧内容解码，帧在返回后即释放，无需跨线程持有
+            out.add(ChatCodecs.forFrame(frame).decode(frame));
+        } catch (Exception e) {
+            logger.error("Failed to decode message from channel: {}", ctx.channel().remoteAddress(), e);
+            ctx.writeAndFlush(ChatCodecs.encodeFrame(ctx.channel(), ChatMessage.error("消息格式错误")), ctx.voidPromise());
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.xx.jaseatschoicejava.netty.codec;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * 聊天协议消息
+ * 客户端与服务端之间收发的消息结构，由ChatCodec直接编解码，空字段不参与序列化
+ *
+ * @param msgType     消息类型（single/group/order_sync/order_status/error，确认帧server_ack/client_ack，
+ *                    会话控制帧session/resume/reconnect，以及头像更新通知avatar_update）
+ * @param fromId      发送方ID
+ * @param toId        接收方ID（单聊为用户ID，群聊为群ID）
+ * @param content     消息内容
+ * @param timestamp   服务端时间戳（毫秒）
+ * @param ack         是否为服务端转发的消息
+ * @param id          消息ID（离线补发时为数据库消息ID）
+ * @param offline     是否为离线补发的消息
+ * @param msgId       服务端收到消息时分配的投递ID，接收方据此回复client_ack，重传的消息ID不变，客户端据此去重；
+ *                    客户端连接后发送不带msgId的client_ack表示支持投递确认；
+ *                    超出JavaScript安全整数范围，按字符串序列化
+ * @param clientMsgId 发送方自带的消息ID，服务端在server_ack中原样带回
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record ChatMessage(String msgType,
+                          String fromId,
+                          String toId,
+                          String content,
+                          Long timestamp,
+                          Boolean ack,
+                          Long id,
+                          Boolean offline,
+                          @JsonFormat(shape = JsonFormat.Shape.STRING) Long msgId,
+                          String clientMsgId) {
+
+    /**
+     * 服务端确认收到发送方的消息
+     */
+    public static final String SERVER_ACK = "server_ack";
+
+    /**
+     * 接收方确认收到服务端投递的消息
+     */
+    public static final String CLIENT_ACK = "client_ack";
+
+    /**
+     * 服务端下发的会话恢复令牌，content为令牌
+     */
+    public static final String SESSION = "session";
+
+    /**
+     * 客户端重连后携带令牌（content）恢复会话
+     */
+    public static final String RESUME = "resume";
+
+    /**
+     * 服务端即将关闭连接，content为客户端重连前应等待的毫秒数
+     */
+    public static final String RECONNECT = "reconnect";
+
+    /**
+     * 好友更换了头像，fromId为该好友的用户ID，content为新头像
+     */
+    public static final String AVATAR_UPDATE = "avatar_update";
+
+    /**
+     * 服务端转发给接收方的消息
+     */
+    public static ChatMessage forward(String msgType, String fromId, String toId, String content) {
+        return forward(msgType, fromId, toId, content, null);
+    }
+
+    /**
+     * 服务端转发给接收方的消息，带投递ID
+     */
+    public static ChatMessage forward(String msgType, String fromId, String toId, String content, Long msgId) {
+        return new ChatMessage(msgType, fromId, toId, content, System.currentTimeMillis(), true, null, null, msgId, null);
+    }
+
+    /**
+     * 发给发送方的服务端确认
+     */
+    public static ChatMessage serverAck(Long msgId, String clientMsgId) {
+        return new ChatMessage(SERVER_ACK, null, null, null, System.currentTimeMillis(), null, null, null, msgId, clientMsgId);
+    }
+
+    /**
+     * 下发会话恢复令牌
+     */
+    public static ChatMessage session(String token) {
+        return new ChatMessage(SESSION, null, null, token, System.currentTimeMillis(), null, null, null, null, null);
+    }
+
+    /**
+     * 通知客户端在指定时间后重连
+     */
+    public static ChatMessage reconnect(long afterMs) {
+        return new ChatMessage(RECONNECT, null, null, String.valueOf(afterMs), System.currentTimeMillis(), null, null, null, null, null);
+    }
+
+    /**
+     * 头像更新通知
+     */
+    public static ChatMessage avatarUpdate(String userId, String avatar) {
+        return new ChatMessage(AVATAR_UPDATE, userId, null, avatar, System.currentTimeMillis(), null, null, null, null, null);
+    }
+
+    /**
+     * 错误提示消息
+     */
+    public static ChatMessage error(String content) {
+        return new ChatMessage("error", null, null, content, null, null, null, null, null, null);
+    }
+}
@@ -0,0 +1,52 @@
+package com.xx.jaseatschoicejava.netty.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * JSON文本协议（默认），使用TextWebSocketFrame
+ */
+public class JsonChatCodec implements ChatCodec {
+
+    public static final String SUBPROTOCOL = "chat.json";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Override
+    public String subprotocol() {
+        return SUBPROTOCOL;
+    }
+
+    @Override
+    public ChatMessage decode(WebSocketFrame frame) throws IOException {
+        // 直接从UTF-8字节流解析，不经过String和JsonNode树
+        return objectMapper.readValue((InputStream) new ByteBufInputStream(frame.content()), ChatMessage.class);
+    }
+
+    @Override
+    public ByteBuf encode(ChatMessage message, ByteBufAllocator allocator) throws IOException {
+        ByteBuf buf = allocator.buffer();
+        try {
+            // 直接序列化到缓冲区，不经过中间byte[]
+            objectMapper.writeValue((OutputStream) new ByteBufOutputStream(buf), message);
+            return buf;
+        } catch (IOException e) {
+            buf.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public WebSocketFrame frame(ByteBuf content) {
+        return new TextWebSocketFrame(content);
+    }
+}
@@ -0,0 +1,62 @@
+package com.xx.jaseatschoicejava.netty.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+import java.io.IOException;
+
+/**
+ * 发给多个Channel的同一条消息
+ * 每种协议只在首次用到时编码一次到池化缓冲区，各Channel发送其retainedDuplicate()，共享同一份内容，
+ * 编码开销不随接收方数量增长。非线程安全，在一个线程内用完后需调用close()释放自身持有的引用
+ */
+public final class SharedFrames implements AutoCloseable {
+
+    private final ChatMessage message;
+    private final ByteBufAllocator allocator;
+    private ByteBuf json;
+    private ByteBuf cbor;
+
+    public SharedFrames(ChatMessage message, ByteBufAllocator allocator) {
+        this.message = message;
+        this.allocator = allocator;
+    }
+
+    /**
+     * 按Channel协商的协议返回消息帧，帧持有共享内容的一个引用，写出后自动释放
+     */
+    public WebSocketFrame frameFor(Channel channel) throws IOException {
+        ChatCodec codec = ChatCodecs.of(channel);
+        ByteBuf content;
+        if (codec == ChatCodecs.CBOR) {
+            if (cbor == null) {
+                cbor = codec.encode(message, allocator);
+            }
+            content = cbor;
+        } else {
+            if (json == null) {
+                json = codec.encode(message, allocator);
+            }
+            content = json;
+        }
+        return codec.frame(content.retainedDuplicate());
+    }
+
+    public ChatMessage message() {
+        return message;
+    }
+
+    @Override
+    public void close() {
+        if (json != null) {
+            json.release();
+            json = null;
+        }
+        if (cbor != null) {
+            cbor.release();
+            cbor = null;
+        }
+    }
+}
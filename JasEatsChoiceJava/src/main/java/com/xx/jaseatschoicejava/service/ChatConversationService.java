@@ -0,0 +1,56 @@
+package com.xx.jaseatschoicejava.service;
+
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.xx.jaseatschoicejava.entity.ChatConversation;
+import com.xx.jaseatschoicejava.entity.ChatMsg;
+
+import java.util.List;
+
+/**
+ * 会话摘要服务接口
+ */
+public interface ChatConversationService extends IService<ChatConversation> {
+
+    /**
+     * 用一条新写入的消息更新相关用户的会话摘要，需与消息写入在同一事务中调用
+     * @param chatMsg 消息
+     * @param group 是否为群消息，群消息更新所有群成员的摘要，否则更新收发双方的摘要
+     */
+    void recordMessage(ChatMsg chatMsg, boolean group);
+
+    /**
+     * 用一批新写入的单聊消息更新会话摘要，同一会话的多条消息合并为一行，整批一条语句写入；
+     * 需与消息写入在同一事务中调用，消息ID必须已回填
+     * @param batch 消息
+     */
+    void recordMessages(List<ChatMsg> batch);
+
+    /**
+     * 按最后消息时间倒序分页查询用户的会话
+     * @param userId 用户ID
+     * @param page 页码
+     * @param size 每页条数
+     * @return 会话摘要分页
+     */
+    Page<ChatConversation> pageConversations(Long userId, long page, long size);
+
+    /**
+     * 清零会话未读数
+     */
+    void clearUnread(Long userId, String convType, Long peerId);
+
+    /**
+     * 将会话标记为已读：已读到最后一条消息时清零未读数，否则重新计算未读数；单聊同时推进已读水位，消息行由后台任务分批更新
+     * @param userId 用户ID
+     * @param convType 会话类型
+     * @param peerId 对方用户ID或群ID
+     * @param upToId 已读到的消息ID，为null时表示当前所有消息
+     */
+    void markRead(Long userId, String convType, Long peerId, Long upToId);
+
+    /**
+     * 会话中的一条消息被标记已读后未读数减一
+     */
+    void decrementUnread(Long userId, String convType, Long peerId);
+}
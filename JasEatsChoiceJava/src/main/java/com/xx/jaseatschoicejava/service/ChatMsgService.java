@@ -3,8 +3,62 @@ package com.xx.jaseatschoicejava.service;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.xx.jaseatschoicejava.entity.ChatMsg;
 
+import java.util.List;
+
 /**
  * 聊天消息服务接口
+ * 写入消息时通过saveMessage等方法同时更新会话摘要，不要直接调用save
  */
 public interface ChatMsgService extends IService<ChatMsg> {
+
+    /**
+     * 保存消息并更新会话摘要，msgType为group时按群消息处理
+     * @param chatMsg 消息
+     * @return 是否保存成功
+     */
+    boolean saveMessage(ChatMsg chatMsg);
+
+    /**
+     * 保存发到群里的消息并更新群成员的会话摘要，用于msgType不是group的群消息（如拼单同步）
+     * @param chatMsg 消息，toId为群ID
+     * @return 是否保存成功
+     */
+    boolean saveGroupMessage(ChatMsg chatMsg);
+
+    /**
+     * 批量保存离线消息并更新会话摘要，保存后回填消息ID
+     * @param batch 离线消息
+     */
+    void saveOfflineBatch(List<ChatMsg> batch);
+
+    /**
+     * 按会话键向前翻页查询消息
+     * @param conversationKey 会话键
+     * @param beforeId 游标，只返回ID小于它的消息，为null时从最新一条开始
+     * @param limit 最多返回条数
+     * @return 按ID倒序排列的消息
+     */
+    List<ChatMsg> listBefore(String conversationKey, Long beforeId, int limit);
+
+    /**
+     * 按ID升序查询发给用户的未投递消息，用于离线补发
+     * @param toId 接收方用户ID
+     * @param afterId 游标，只返回ID大于它的消息
+     * @param limit 最多返回条数
+     * @return 按ID升序排列的消息
+     */
+    List<ChatMsg> listUndelivered(Long toId, long afterId, int limit);
+
+    /**
+     * 标记消息已投递，不修改已读状态
+     * @param ids 消息ID
+     */
+    void markDelivered(List<Long> ids);
+
+    /**
+     * 标记消息已读，首次标记时接收方的会话未读数减一
+     * @param messageId 消息ID
+     * @return 消息是否存在
+     */
+    boolean markRead(Long messageId);
 }
@@ -0,0 +1,45 @@
+package com.xx.jaseatschoicejava.service;
+
+import com.xx.jaseatschoicejava.entity.Dish;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 菜品目录快照服务
+ * 在内存中保存全部菜品的不可变快照，推荐等只读接口直接读取快照，不再每次查询整张菜品表；
+ * 快照按update_time定期增量刷新、定期全量重载，菜品写入后也可立即刷新对应菜品
+ */
+public interface DishCatalogService {
+
+    /**
+     * 获取当前快照，首次调用时全量加载
+     *
+     * @return 菜品目录快照
+     */
+    Snapshot current();
+
+    /**
+     * 菜品写入后从数据库重新读取这些菜品并替换快照
+     *
+     * @param dishIds 菜品ID
+     */
+    void refresh(Collection<Long> dishIds);
+
+    /**
+     * 菜品目录快照，创建后不再修改；其中的菜品对象由所有请求共享，调用方不能修改
+     *
+     * @param version       版本号，每次替换快照时加一
+     * @param dishes        按ID升序排列的全部菜品
+     * @param byId          菜品ID -> 菜品
+     * @param features      与dishes顺序一致的特征列存，用于筛选
+     * @param maxUpdateTime 快照中最新的更新时间，增量刷新从这里开始
+     */
+    record Snapshot(long version, List<Dish> dishes, Map<Long, Dish> byId, DishFeatures features,
+                    LocalDateTime maxUpdateTime) {
+
+        public static final Snapshot EMPTY = new Snapshot(0, List.of(), Map.of(), DishFeatures.of(List.of()), null);
+    }
+}
@@ -0,0 +1,212 @@
+package com.xx.jaseatschoicejava.service;
+
+import com.xx.jaseatschoicejava.entity.Dish;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 菜品特征列存
+ * 按菜品目录快照中的顺序把筛选用到的字段拆成基本类型数组：卡路里int[]、价格（分）long[]、分类字典ID int[]，
+ * 上架状态和字段是否为空用位图表示。筛选条件在调用方传入的位图上逐个求交，每个条件是一次对数组的顺序循环，
+ * 除结果位图外不创建对象。创建后不再修改，随快照一起替换
+ */
+public final class DishFeatures {
+
+    /**
+     * 分类为空或不在字典中时的分类ID
+     */
+    public static final int NO_CATEGORY = -1;
+
+    private final int size;
+    private final int[] calorie;
+    private final long[] priceCents;
+    private final int[] categoryId;
+    private final Map<String, Integer> categoryDictionary;
+    private final long[] calorieKnown;
+    private final long[] priceKnown;
+    private final long[] onSale;
+
+    private DishFeatures(List<Dish> dishes) {
+        this.size = dishes.size();
+        int words = words(size);
+        this.calorie = new int[size];
+        this.priceCents = new long[size];
+        this.categoryId = new int[size];
+        this.calorieKnown = new long[words];
+        this.priceKnown = new long[words];
+        this.onSale = new long[words];
+        Map<String, Integer> dictionary = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            Dish dish = dishes.get(i);
+            long bit = 1L << i;
+            if (dish.getCalorie() != null) {
+                calorie[i] = dish.getCalorie();
+                calorieKnown[i >>> 6] |= bit;
+            }
+            if (dish.getPrice() != null) {
+                priceCents[i] = toCents(dish.getPrice(), RoundingMode.HALF_UP);
+                priceKnown[i >>> 6] |= bit;
+            }
+            if (Boolean.TRUE.equals(dish.getStatus())) {
+                onSale[i >>> 6] |= bit;
+            }
+            String category = dish.getCategory();
+            categoryId[i] = category != null
+                    ? dictionary.computeIfAbsent(category, key -> dictionary.size())
+                    : NO_CATEGORY;
+        }
+        this.categoryDictionary = Collections.unmodifiableMap(dictionary);
+    }
+
+    /**
+     * 按列表顺序构建特征列存，位图中的第i位对应列表中的第i个菜品
+     */
+    public static DishFeatures of(List<Dish> dishes) {
+        return new DishFeatures(dishes);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 包含全部菜品的位图
+     */
+    public long[] all() {
+        long[] bits = new long[words(size)];
+        Arrays.fill(bits, -1L);
+        int tail = size & 63;
+        if (tail != 0) {
+            bits[bits.length - 1] = (1L << tail) - 1;
+        }
+        return bits;
+    }
+
+    /**
+     * 只保留上架的菜品
+     */
+    public void retainOnSale(long[] bits) {
+        for (int word = 0; word < bits.length; word++) {
+            bits[word] &= onSale[word];
+        }
+    }
+
+    /**
+     * 只保留卡路里在[min, max]内的菜品，卡路里为空的菜品不保留
+     */
+    public void retainCalorieBetween(long[] bits, int min, int max) {
+        for (int word = 0; word < bits.length; word++) {
+            long current = bits[word] & calorieKnown[word];
+            if (current == 0) {
+                bits[word] = 0;
+                continue;
+            }
+            int base = word << 6;
+            int end = Math.min(64, size - base);
+            long match = 0;
+            for (int j = 0; j < end; j++) {
+                int value = calorie[base + j];
+                match |= (value >= min && value <= max ? 1L : 0L) << j;
+            }
+            bits[word] = current & match;
+        }
+    }
+
+    /**
+     * 只保留价格（分）在[minCents, maxCents]内的菜品，价格为空的菜品不保留
+     */
+    public void retainPriceBetween(long[] bits, long minCents, long maxCents) {
+        for (int word = 0; word < bits.length; word++) {
+            long current = bits[word] & priceKnown[word];
+            if (current == 0) {
+                bits[word] = 0;
+                continue;
+            }
+            int base = word << 6;
+            int end = Math.min(64, size - base);
+            long match = 0;
+            for (int j = 0; j < end; j++) {
+                long value = priceCents[base + j];
+                match |= (value >= minCents && value <= maxCents ? 1L : 0L) << j;
+            }
+            bits[word] = current & match;
+        }
+    }
+
+    /**
+     * 只保留指定分类的菜品，分类ID为NO_CATEGORY时清空位图
+     */
+    public void retainCategory(long[] bits, int category) {
+        if (category == NO_CATEGORY) {
+            Arrays.fill(bits, 0L);
+            return;
+        }
+        for (int word = 0; word < bits.length; word++) {
+            long current = bits[word];
+            if (current == 0) {
+                continue;
+            }
+            int base = word << 6;
+            int end = Math.min(64, size - base);
+            long match = 0;
+            for (int j = 0; j < end; j++) {
+                match |= (categoryId[base + j] == category ? 1L : 0L) << j;
+            }
+            bits[word] = current & match;
+        }
+    }
+
+    /**
+     * 分类名称对应的字典ID，不存在时返回NO_CATEGORY
+     */
+    public int categoryId(String category) {
+        Integer id = category != null ? categoryDictionary.get(category) : null;
+        return id != null ? id : NO_CATEGORY;
+    }
+
+    /**
+     * 位图中的菜品数
+     */
+    public int cardinality(long[] bits) {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * 按位图从构建时使用的菜品列表中取出菜品，保持列表顺序
+     */
+    public List<Dish> select(long[] bits, List<Dish> dishes) {
+        List<Dish> selected = new ArrayList<>(cardinality(bits));
+        for (int word = 0; word < bits.length; word++) {
+            long current = bits[word];
+            while (current != 0) {
+                selected.add(dishes.get((word << 6) + Long.numberOfTrailingZeros(current)));
+                current &= current - 1;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * 价格转换为分
+     *
+     * @param mode 不足一分时的取整方式，价格下限用CEILING、上限用FLOOR可保持与按元比较相同的结果
+     */
+    public static long toCents(BigDecimal price, RoundingMode mode) {
+        return price.movePointRight(2).setScale(0, mode).longValue();
+    }
+
+    private static int words(int size) {
+        return (size + 63) >>> 6;
+    }
+}
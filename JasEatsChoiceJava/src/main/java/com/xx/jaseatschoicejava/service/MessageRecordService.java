@@ -3,7 +3,10 @@ package com.xx.jaseatschoicejava.service;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.xx.jaseatschoicejava.entity.MessageRecord;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * 消息记录Service
@@ -14,14 +17,24 @@ import java.util.List;
 public interface MessageRecordService extends IService<MessageRecord> {
 
     /**
-     * 根据用户ID获取消息记录列表
+     * 根据用户ID按游标获取消息记录列表，按发送时间和ID倒序
      *
      * @param userId 用户ID
      * @param pageSize 分页大小
-     * @param pageNum 当前页码
+     * @param beforeTime 游标的发送时间，为null时从最新一条开始
+     * @param beforeId 游标的消息ID
      * @return 消息记录列表
      */
-    List<MessageRecord> getMessageRecordsByUserId(Long userId, Integer pageSize, Integer pageNum);
+    List<MessageRecord> getMessageRecordsByUserId(Long userId, Integer pageSize, LocalDateTime beforeTime, Long beforeId);
+
+    /**
+     * 流式导出用户发出和收到的全部消息记录，逐条交给consumer处理，不在内存中缓存整个结果集
+     *
+     * @param userId 用户ID
+     * @param consumer 消息记录处理
+     * @return 导出条数
+     */
+    long exportMessageRecords(Long userId, Consumer<MessageRecord> consumer);
 
     /**
      * 根据用户ID获取未读消息数量
@@ -31,6 +44,14 @@ public interface MessageRecordService extends IService<MessageRecord> {
      */
     Integer getUnreadMessageCountByUserId(Long userId);
 
+    /**
+     * 根据用户ID获取按发送者区分的未读消息数量
+     *
+     * @param userId 用户ID
+     * @return 发送者ID -> 未读消息数量
+     */
+    Map<String, Long> getConversationUnreadCounts(Long userId);
+
     /**
      * 发送消息
      *
@@ -50,6 +71,15 @@ public interface MessageRecordService extends IService<MessageRecord> {
      */
     Boolean markMessageAsRead(Long messageId);
 
+    /**
+     * 标记与某个发送者的所有消息为已读
+     *
+     * @param userId 用户ID（接收者）
+     * @param senderId 发送者ID
+     * @return 标记结果
+     */
+    Boolean markConversationAsRead(Long userId, Long senderId);
+
     /**
      * 标记所有消息为已读
      *
@@ -0,0 +1,41 @@
+package com.xx.jaseatschoicejava.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.xx.jaseatschoicejava.entity.ReadWatermark;
+import com.xx.jaseatschoicejava.enums.ReadScope;
+
+import java.util.Map;
+
+/**
+ * 已读水位服务接口
+ * 批量标记已读只推进水位，消息行的read_status由后台任务分批补写；
+ * 补写完成前读取消息时需用水位判断是否已读
+ */
+public interface ReadWatermarkService extends IService<ReadWatermark> {
+
+    /**
+     * 推进用户在某个范围内的已读水位
+     * @param userId 用户ID
+     * @param scope 水位范围
+     * @param peerId 对方用户ID，全部消息记录时为0
+     * @param upToId 已读到的消息ID，为null时取该范围当前最新的消息ID
+     */
+    void markRead(Long userId, ReadScope scope, Long peerId, Long upToId);
+
+    /**
+     * 查询用户在某个范围内的已读水位
+     * @param userId 用户ID
+     * @param scope 水位范围
+     * @return 对方用户ID -> 已读到的消息ID
+     */
+    Map<Long, Long> getWatermarks(Long userId, ReadScope scope);
+
+    /**
+     * 查询用户与某个对方之间的已读水位
+     * @param userId 用户ID
+     * @param scope 水位范围
+     * @param peerId 对方用户ID，全部消息记录时为0
+     * @return 已读到的消息ID，没有水位时为0
+     */
+    long getReadUpTo(Long userId, ReadScope scope, Long peerId);
+}
@@ -0,0 +1,51 @@
+package com.xx.jaseatschoicejava.service;
+
+import java.util.Map;
+
+/**
+ * 消息未读计数服务
+ * 按用户和会话（发送者）维护t_message_record的未读数，计数保存在Redis中，
+ * 发送时加一、标记已读时减少，首次读取时从MySQL加载，并定期与MySQL校准
+ */
+public interface UnreadCounterService {
+
+    /**
+     * 获取用户的未读消息总数
+     *
+     * @param userId 用户ID
+     * @return 未读消息数量
+     */
+    long getUnreadCount(Long userId);
+
+    /**
+     * 获取用户按发送者区分的未读消息数量
+     *
+     * @param userId 用户ID
+     * @return 发送者ID -> 未读消息数量，只包含有未读消息的会话
+     */
+    Map<String, Long> getConversationUnreadCounts(Long userId);
+
+    /**
+     * 调整未读数，收到新消息时为正数，消息被标记已读时为负数
+     *
+     * @param userId   接收者ID
+     * @param senderId 发送者ID
+     * @param delta    调整数量
+     */
+    void adjust(Long userId, Long senderId, long delta);
+
+    /**
+     * 用户的所有消息已读后清零
+     *
+     * @param userId 用户ID
+     */
+    void clear(Long userId);
+
+    /**
+     * 用户与某个发送者的消息已读后清零该会话的未读数，并从总数中扣除
+     *
+     * @param userId   接收者ID
+     * @param senderId 发送者ID
+     */
+    void clearConversation(Long userId, Long senderId);
+}
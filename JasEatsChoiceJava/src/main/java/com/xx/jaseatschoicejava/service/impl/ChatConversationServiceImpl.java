@@ -0,0 +1,146 @@
+package com.xx.jaseatschoicejava.service.impl;
+
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.xx.jaseatschoicejava.entity.ChatConversation;
+import com.xx.jaseatschoicejava.entity.ChatMsg;
+import com.xx.jaseatschoicejava.enums.MsgType;
+import com.xx.jaseatschoicejava.enums.ReadScope;
+import com.xx.jaseatschoicejava.mapper.ChatConversationMapper;
+import com.xx.jaseatschoicejava.service.ChatConversationService;
+import com.xx.jaseatschoicejava.service.ReadWatermarkService;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 会话摘要服务实现
+ */
+@Service
+public class ChatConversationServiceImpl extends ServiceImpl<ChatConversationMapper, ChatConversation>
+        implements ChatConversationService {
+
+    // 系统消息的发送方ID，不为其生成会话
+    private static final long SYSTEM_SENDER_ID = 0L;
+
+    private final ReadWatermarkService readWatermarkService;
+
+    public ChatConversationServiceImpl(ReadWatermarkService readWatermarkService) {
+        this.readWatermarkService = readWatermarkService;
+    }
+
+    @Override
+    public void recordMessage(ChatMsg chatMsg, boolean group) {
+        if (chatMsg.getFromId() == null || chatMsg.getToId() == null) {
+            return;
+        }
+        if (group) {
+            baseMapper.upsertGroupMembers(chatMsg.getToId(), chatMsg);
+            return;
+        }
+        // 单聊、订单消息：发送方和接收方各一行，只有接收方计未读；发给自己的消息只有一行
+        String single = MsgType.SINGLE.getValue();
+        boolean self = chatMsg.getFromId().equals(chatMsg.getToId());
+        if (chatMsg.getFromId() != SYSTEM_SENDER_ID && !self) {
+            baseMapper.upsert(chatMsg.getFromId(), single, chatMsg.getToId(), chatMsg, 0);
+        }
+        int unread = self || Boolean.TRUE.equals(chatMsg.getReadStatus()) ? 0 : 1;
+        baseMapper.upsert(chatMsg.getToId(), single, chatMsg.getFromId(), chatMsg, unread);
+    }
+
+    @Override
+    public void recordMessages(List<ChatMsg> batch) {
+        Map<String, ChatConversation> rows = new HashMap<>();
+        String single = MsgType.SINGLE.getValue();
+        for (ChatMsg chatMsg : batch) {
+            if (chatMsg.getFromId() == null || chatMsg.getToId() == null) {
+                continue;
+            }
+            // 与recordMessage相同：发送方和接收方各一行，只有接收方计未读
+            boolean self = chatMsg.getFromId().equals(chatMsg.getToId());
+            if (chatMsg.getFromId() != SYSTEM_SENDER_ID && !self) {
+                accumulate(rows, chatMsg.getFromId(), single, chatMsg.getToId(), chatMsg, 0);
+            }
+            int unread = self || Boolean.TRUE.equals(chatMsg.getReadStatus()) ? 0 : 1;
+            accumulate(rows, chatMsg.getToId(), single, chatMsg.getFromId(), chatMsg, unread);
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+        // 按唯一键排序，并发批次以相同顺序加锁，避免死锁
+        List<ChatConversation> sorted = new ArrayList<>(rows.values());
+        sorted.sort(Comparator.comparing(ChatConversation::getUserId).thenComparing(ChatConversation::getPeerId));
+        baseMapper.upsertBatch(sorted);
+    }
+
+    /**
+     * 将一条消息合并进会话行：未读数累加，最后一条消息取时间最新、时间相同时ID最大的
+     */
+    private static void accumulate(Map<String, ChatConversation> rows, Long userId, String convType, Long peerId,
+                                   ChatMsg chatMsg, int unread) {
+        ChatConversation row = rows.computeIfAbsent(userId + ":" + convType + ":" + peerId, key -> {
+            ChatConversation created = new ChatConversation();
+            created.setUserId(userId);
+            created.setConvType(convType);
+            created.setPeerId(peerId);
+            created.setUnreadCount(0);
+            return created;
+        });
+        row.setUnreadCount(row.getUnreadCount() + unread);
+        boolean newer = row.getLastTime() == null
+                || chatMsg.getCreateTime().isAfter(row.getLastTime())
+                || (chatMsg.getCreateTime().isEqual(row.getLastTime()) && chatMsg.getId() > row.getLastMsgId());
+        if (newer) {
+            row.setLastMsgId(chatMsg.getId());
+            row.setLastFromId(chatMsg.getFromId());
+            row.setLastMsgType(chatMsg.getMsgType());
+            row.setLastContent(chatMsg.getContent());
+            row.setLastTime(chatMsg.getCreateTime());
+        }
+    }
+
+    @Override
+    public Page<ChatConversation> pageConversations(Long userId, long page, long size) {
+        // 走(user_id, last_time, id)索引，只读取一页会话
+        return lambdaQuery()
+                .eq(ChatConversation::getUserId, userId)
+                .orderByDesc(ChatConversation::getLastTime)
+                .orderByDesc(ChatConversation::getId)
+                .page(new Page<>(page, size));
+    }
+
+    @Override
+    public void clearUnread(Long userId, String convType, Long peerId) {
+        baseMapper.clearUnread(userId, convType, peerId);
+    }
+
+    @Override
+    public void markRead(Long userId, String convType, Long peerId, Long upToId) {
+        boolean single = MsgType.SINGLE.getValue().equals(convType);
+        // 群消息的阅读状态不区分成员，只更新摘要
+        if (single) {
+            readWatermarkService.markRead(userId, ReadScope.CHAT, peerId, upToId);
+        }
+        if (upToId == null) {
+            baseMapper.clearUnread(userId, convType, peerId);
+            return;
+        }
+        // 只读到中间某条消息时，之后的消息仍计未读
+        if (single) {
+            // 水位只前进不后退，按推进后的水位统计
+            long readUpTo = Math.max(upToId, readWatermarkService.getReadUpTo(userId, ReadScope.CHAT, peerId));
+            baseMapper.recountUnread(userId, convType, peerId, readUpTo);
+        } else {
+            baseMapper.recountGroupUnread(userId, peerId, upToId);
+        }
+    }
+
+    @Override
+    public void decrementUnread(Long userId, String convType, Long peerId) {
+        baseMapper.decrementUnread(userId, convType, peerId);
+    }
+}
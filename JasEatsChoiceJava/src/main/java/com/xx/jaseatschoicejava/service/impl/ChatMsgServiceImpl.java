@@ -2,13 +2,156 @@ package com.xx.jaseatschoicejava.service.impl;
 
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.xx.jaseatschoicejava.entity.ChatMsg;
+import com.xx.jaseatschoicejava.enums.MsgType;
+import com.xx.jaseatschoicejava.enums.ReadScope;
 import com.xx.jaseatschoicejava.mapper.ChatMsgMapper;
+import com.xx.jaseatschoicejava.service.ChatConversationService;
 import com.xx.jaseatschoicejava.service.ChatMsgService;
+import com.xx.jaseatschoicejava.service.ReadWatermarkService;
+import com.xx.jaseatschoicejava.util.ConversationKeys;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.List;
 
 /**
  * 聊天消息服务实现
+ * 消息写入与会话摘要更新在同一事务中完成
  */
 @Service
 public class ChatMsgServiceImpl extends ServiceImpl<ChatMsgMapper, ChatMsg> implements ChatMsgService {
+
+    private static final String INSERT_SQL = "INSERT INTO t_chat_msg (from_id, to_id, msg_type, content, read_status, "
+            + "conversation_key, create_time) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private final ChatConversationService chatConversationService;
+    private final ReadWatermarkService readWatermarkService;
+    private final JdbcTemplate jdbcTemplate;
+
+    public ChatMsgServiceImpl(ChatConversationService chatConversationService,
+                              ReadWatermarkService readWatermarkService, JdbcTemplate jdbcTemplate) {
+        this.chatConversationService = chatConversationService;
+        this.readWatermarkService = readWatermarkService;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean saveMessage(ChatMsg chatMsg) {
+        chatMsg.setConversationKey(ConversationKeys.of(chatMsg));
+        if (!save(chatMsg)) {
+            return false;
+        }
+        chatConversationService.recordMessage(chatMsg, MsgType.GROUP.getValue().equals(chatMsg.getMsgType()));
+        return true;
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean saveGroupMessage(ChatMsg chatMsg) {
+        chatMsg.setConversationKey(ConversationKeys.group(chatMsg.getToId()));
+        if (!save(chatMsg)) {
+            return false;
+        }
+        chatConversationService.recordMessage(chatMsg, true);
+        return true;
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public void saveOfflineBatch(List<ChatMsg> batch) {
+        // 批量插入由rewriteBatchedStatements合并为多值INSERT，并取回自增ID供会话摘要使用
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                for (ChatMsg chatMsg : batch) {
+                    chatMsg.setConversationKey(ConversationKeys.of(chatMsg));
+                    ps.setLong(1, chatMsg.getFromId());
+                    ps.setLong(2, chatMsg.getToId());
+                    ps.setString(3, chatMsg.getMsgType());
+                    ps.setString(4, chatMsg.getContent());
+                    ps.setBoolean(5, Boolean.TRUE.equals(chatMsg.getReadStatus()));
+                    ps.setString(6, chatMsg.getConversationKey());
+                    ps.setTimestamp(7, Timestamp.valueOf(chatMsg.getCreateTime()));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                int index = 0;
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    while (keys.next() && index < batch.size()) {
+                        batch.get(index++).setId(keys.getLong(1));
+                    }
+                }
+                if (index < batch.size()) {
+                    // 回滚整批，由调用方逐条重试
+                    throw new IllegalStateException("Generated keys returned for " + index + " of " + batch.size() + " messages");
+                }
+            }
+            return null;
+        });
+        chatConversationService.recordMessages(batch);
+    }
+
+    @Override
+    public List<ChatMsg> listBefore(String conversationKey, Long beforeId, int limit) {
+        // 走(conversation_key, id)索引，从游标位置向前取limit条，不做COUNT也不跳过OFFSET
+        return lambdaQuery()
+                .eq(ChatMsg::getConversationKey, conversationKey)
+                .lt(beforeId != null, ChatMsg::getId, beforeId)
+                .orderByDesc(ChatMsg::getId)
+                .last("LIMIT " + limit)
+                .list();
+    }
+
+    @Override
+    public List<ChatMsg> listUndelivered(Long toId, long afterId, int limit) {
+        // 走(to_id, delivered, id)索引
+        return lambdaQuery()
+                .eq(ChatMsg::getToId, toId)
+                .eq(ChatMsg::getDelivered, false)
+                .gt(ChatMsg::getId, afterId)
+                .orderByAsc(ChatMsg::getId)
+                .last("LIMIT " + limit)
+                .list();
+    }
+
+    @Override
+    public void markDelivered(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        lambdaUpdate()
+                .in(ChatMsg::getId, ids)
+                .set(ChatMsg::getDelivered, true)
+                .update();
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean markRead(Long messageId) {
+        ChatMsg chatMsg = getById(messageId);
+        if (chatMsg == null) {
+            return false;
+        }
+        boolean group = MsgType.GROUP.getValue().equals(chatMsg.getMsgType());
+        // 已被会话水位覆盖的单聊消息视为已读，未读数已在推进水位时清零，不能再减
+        if (!group && messageId <= readWatermarkService.getReadUpTo(chatMsg.getToId(), ReadScope.CHAT, chatMsg.getFromId())) {
+            return true;
+        }
+        // 条件更新保证并发标记时未读数只减一次
+        boolean changed = lambdaUpdate()
+                .set(ChatMsg::getReadStatus, true)
+                .eq(ChatMsg::getId, messageId)
+                .eq(ChatMsg::getReadStatus, false)
+                .update();
+        if (changed && !group) {
+            chatConversationService.decrementUnread(chatMsg.getToId(), MsgType.SINGLE.getValue(), chatMsg.getFromId());
+        }
+        return true;
+    }
 }
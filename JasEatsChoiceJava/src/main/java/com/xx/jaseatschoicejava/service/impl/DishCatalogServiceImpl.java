@@ -0,0 +1,172 @@
+package com.xx.jaseatschoicejava.service.impl;
+
+import com.xx.jaseatschoicejava.entity.Dish;
+import com.xx.jaseatschoicejava.service.DishCatalogService;
+import com.xx.jaseatschoicejava.service.DishFeatures;
+import com.xx.jaseatschoicejava.service.DishService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 菜品目录快照服务实现
+ * 读取方只读AtomicReference中的当前快照，不加锁；刷新时在锁内基于当前快照构造新快照再整体替换，
+ * 读取方要么看到旧快照要么看到新快照。
+ * 增量刷新按update_time向前多取一段时间，覆盖秒级精度下同一秒内的更新和稍晚提交的事务，重复读到的菜品按ID覆盖；
+ * 删除的菜品和更新时间未变化的修改由定期全量重载纠正
+ */
+@Service
+public class DishCatalogServiceImpl implements DishCatalogService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DishCatalogServiceImpl.class);
+
+    /**
+     * 增量刷新时向前重叠的秒数
+     */
+    private static final long REFRESH_OVERLAP_SECONDS = 5;
+
+    private final DishService dishService;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(Snapshot.EMPTY);
+    private final Object refreshLock = new Object();
+
+    public DishCatalogServiceImpl(DishService dishService) {
+        this.dishService = dishService;
+    }
+
+    @Override
+    public Snapshot current() {
+        Snapshot current = snapshot.get();
+        if (current.version() > 0) {
+            return current;
+        }
+        synchronized (refreshLock) {
+            current = snapshot.get();
+            if (current.version() > 0) {
+                return current;
+            }
+            return replace(toMap(dishService.list()));
+        }
+    }
+
+    @Override
+    public void refresh(Collection<Long> dishIds) {
+        if (dishIds == null || dishIds.isEmpty()) {
+            return;
+        }
+        try {
+            // 查询也在锁内进行，避免较早读到的旧数据在并发刷新之后才合并，覆盖较新的快照
+            synchronized (refreshLock) {
+                // 尚未加载时不需要合并，首次读取会全量加载
+                if (snapshot.get().version() > 0) {
+                    merge(dishService.listByIds(dishIds));
+                }
+            }
+        } catch (Exception e) {
+            // 其余节点和本节点都会在下次增量刷新时读到
+            logger.error("Failed to refresh dishes {} in catalog: {}", dishIds, e.getMessage());
+        }
+    }
+
+    /**
+     * 按update_time增量刷新
+     */
+    @Scheduled(fixedDelayString = "${dish.catalog.refreshIntervalMs:5000}")
+    public void refreshChanged() {
+        try {
+            synchronized (refreshLock) {
+                Snapshot current = snapshot.get();
+                if (current.version() == 0 || current.maxUpdateTime() == null) {
+                    return;
+                }
+                List<Dish> changed = dishService.lambdaQuery()
+                        .ge(Dish::getUpdateTime, current.maxUpdateTime().minusSeconds(REFRESH_OVERLAP_SECONDS))
+                        .list();
+                int count = merge(changed);
+                if (count > 0) {
+                    logger.debug("Refreshed {} changed dishes in catalog", count);
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Failed to refresh dish catalog: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 全量重载，纠正增量刷新遗漏的删除和修改
+     */
+    @Scheduled(fixedDelayString = "${dish.catalog.reloadIntervalMs:600000}",
+            initialDelayString = "${dish.catalog.reloadIntervalMs:600000}")
+    public void reloadAll() {
+        try {
+            synchronized (refreshLock) {
+                if (snapshot.get().version() == 0) {
+                    return;
+                }
+                Snapshot reloaded = replace(toMap(dishService.list()));
+                logger.info("Reloaded dish catalog version {} with {} dishes", reloaded.version(), reloaded.dishes().size());
+            }
+        } catch (Exception e) {
+            logger.error("Failed to reload dish catalog: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 将读到的菜品合并进当前快照，内容都没变化时不替换
+     *
+     * @return 有变化的菜品数
+     */
+    private int merge(List<Dish> dishes) {
+        Snapshot current = snapshot.get();
+        TreeMap<Long, Dish> byId = null;
+        int count = 0;
+        for (Dish dish : dishes) {
+            if (dish.getId() == null || dish.equals(current.byId().get(dish.getId()))) {
+                continue;
+            }
+            if (byId == null) {
+                byId = new TreeMap<>(current.byId());
+            }
+            byId.put(dish.getId(), dish);
+            count++;
+        }
+        if (byId != null) {
+            replace(byId);
+        }
+        return count;
+    }
+
+    private Snapshot replace(TreeMap<Long, Dish> byId) {
+        LocalDateTime maxUpdateTime = null;
+        for (Dish dish : byId.values()) {
+            LocalDateTime updateTime = dish.getUpdateTime();
+            if (updateTime != null && (maxUpdateTime == null || updateTime.isAfter(maxUpdateTime))) {
+                maxUpdateTime = updateTime;
+            }
+        }
+        List<Dish> dishes = Collections.unmodifiableList(new ArrayList<>(byId.values()));
+        Snapshot next = new Snapshot(snapshot.get().version() + 1, dishes, Collections.unmodifiableMap(byId),
+                DishFeatures.of(dishes), maxUpdateTime);
+        snapshot.set(next);
+        return next;
+    }
+
+    private static TreeMap<Long, Dish> toMap(List<Dish> dishes) {
+        TreeMap<Long, Dish> byId = new TreeMap<>();
+        for (Dish dish : dishes) {
+            if (dish.getId() != null) {
+                byId.put(dish.getId(), dish);
+            }
+        }
+        return byId;
+    }
+}
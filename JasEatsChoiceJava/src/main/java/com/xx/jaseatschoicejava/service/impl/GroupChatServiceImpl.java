@@ -2,10 +2,12 @@ package com.xx.jaseatschoicejava.service.impl;
 
 import com.xx.jaseatschoicejava.entity.ChatMsg;
 import com.xx.jaseatschoicejava.enums.MsgType;
+import com.xx.jaseatschoicejava.event.GroupOrderSyncEvent;
 import com.xx.jaseatschoicejava.service.ChatMsgService;
 import com.xx.jaseatschoicejava.service.GroupChatService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
@@ -20,9 +22,12 @@ public class GroupChatServiceImpl implements GroupChatService {
 
     private final ChatMsgService chatMsgService;
 
+    private final ApplicationEventPublisher eventPublisher;
+
     // 构造函数注入
-    public GroupChatServiceImpl(ChatMsgService chatMsgService) {
+    public GroupChatServiceImpl(ChatMsgService chatMsgService, ApplicationEventPublisher eventPublisher) {
         this.chatMsgService = chatMsgService;
+        this.eventPublisher = eventPublisher;
     }
 
     @Override
@@ -37,12 +42,11 @@ public class GroupChatServiceImpl implements GroupChatService {
             chatMsg.setReadStatus(false); // 初始为未读
             chatMsg.setCreateTime(LocalDateTime.now());
 
-            // 保存消息到数据库
-            chatMsgService.save(chatMsg);
+            // 保存消息到数据库，并更新群成员的会话摘要
+            chatMsgService.saveGroupMessage(chatMsg);
 
-            // 这里可以添加Netty实时推送逻辑，将消息发送给群里的在线用户
-            // 由于NettyChatHandler是在netty线程池中的，需要另外的方式调用
-            // 例如可以通过事件总线或其他方式通知Netty推送消息
+            // 通过事件通知Netty推送给群里的在线用户
+            eventPublisher.publishEvent(new GroupOrderSyncEvent(groupId, message));
 
             logger.info("成功发送消息到群 {}: {}", groupId, message);
             return true;
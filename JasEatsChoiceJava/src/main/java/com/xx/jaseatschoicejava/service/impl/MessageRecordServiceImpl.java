@@ -2,13 +2,22 @@ package com.xx.jaseatschoicejava.service.impl;
 
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.xx.jaseatschoicejava.entity.MessageRecord;
+import com.xx.jaseatschoicejava.enums.ReadScope;
 import com.xx.jaseatschoicejava.mapper.MessageRecordMapper;
 import com.xx.jaseatschoicejava.service.MessageRecordService;
+import com.xx.jaseatschoicejava.service.ReadWatermarkService;
+import com.xx.jaseatschoicejava.service.UnreadCounterService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.apache.ibatis.cursor.Cursor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * 消息记录Service实现
@@ -22,16 +31,49 @@ public class MessageRecordServiceImpl extends ServiceImpl<MessageRecordMapper, M
     @Autowired
     private MessageRecordMapper messageRecordMapper;
 
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+
+    @Autowired
+    private ReadWatermarkService readWatermarkService;
+
     @Override
-    public List<MessageRecord> getMessageRecordsByUserId(Long userId, Integer pageSize, Integer pageNum) {
-        // 计算分页起始索引
-        int startIndex = (pageNum - 1) * pageSize;
-        return messageRecordMapper.getMessageRecordsByUserId(userId, pageSize, startIndex);
+    public List<MessageRecord> getMessageRecordsByUserId(Long userId, Integer pageSize, LocalDateTime beforeTime, Long beforeId) {
+        int limit = Math.max(1, Math.min(pageSize, 100));
+        // 只给了时间没给ID时，包含该时间点的所有消息
+        if (beforeTime != null && beforeId == null) {
+            beforeId = Long.MAX_VALUE;
+        }
+        List<MessageRecord> records = messageRecordMapper.getMessageRecordsByUserId(userId, limit, beforeTime, beforeId);
+        applyWatermarks(userId, records);
+        return records;
+    }
+
+    @Override
+    @Transactional(readOnly = true, rollbackFor = Exception.class)
+    public long exportMessageRecords(Long userId, Consumer<MessageRecord> consumer) {
+        // 游标依赖的连接在事务结束前保持打开
+        long count = 0;
+        try (Cursor<MessageRecord> cursor = messageRecordMapper.streamMessageRecordsByUserId(userId)) {
+            for (MessageRecord record : cursor) {
+                consumer.accept(record);
+                count++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return count;
     }
 
     @Override
     public Integer getUnreadMessageCountByUserId(Long userId) {
-        return messageRecordMapper.getUnreadMessageCountByUserId(userId);
+        // 从Redis计数读取，不再每次统计数据库
+        return (int) unreadCounterService.getUnreadCount(userId);
+    }
+
+    @Override
+    public Map<String, Long> getConversationUnreadCounts(Long userId) {
+        return unreadCounterService.getConversationUnreadCounts(userId);
     }
 
     @Override
@@ -45,27 +87,75 @@ public class MessageRecordServiceImpl extends ServiceImpl<MessageRecordMapper, M
         messageRecord.setSendTime(LocalDateTime.now());
         messageRecord.setReadStatus(0); // 默认未读
 
-        // 保存到数据库
-        return this.save(messageRecord);
+        // 保存到数据库，并增加接收者的未读计数
+        boolean saved = this.save(messageRecord);
+        if (saved) {
+            unreadCounterService.adjust(receiverId, senderId, 1);
+        }
+        return saved;
     }
 
     @Override
     public Boolean markMessageAsRead(Long messageId) {
-        // 创建更新对象
-        MessageRecord messageRecord = new MessageRecord();
-        messageRecord.setId(messageId);
-        messageRecord.setReadStatus(1); // 已读状态
+        MessageRecord messageRecord = getById(messageId);
+        if (messageRecord == null) {
+            return false;
+        }
+        // 已被水位覆盖的消息视为已读，未读计数已在推进水位时清除，不能再减
+        long readUpTo = Math.max(
+                readWatermarkService.getReadUpTo(messageRecord.getReceiverId(), ReadScope.RECORD_ALL, 0L),
+                readWatermarkService.getReadUpTo(messageRecord.getReceiverId(), ReadScope.RECORD, messageRecord.getSenderId()));
+        if (messageId <= readUpTo) {
+            return true;
+        }
 
-        // 更新到数据库
-        return this.updateById(messageRecord);
+        // 只更新未读的消息，并发标记时未读计数只减一次
+        boolean changed = lambdaUpdate()
+                .eq(MessageRecord::getId, messageId)
+                .eq(MessageRecord::getReadStatus, 0)
+                .set(MessageRecord::getReadStatus, 1) // 已读状态
+                .update();
+        if (changed) {
+            unreadCounterService.adjust(messageRecord.getReceiverId(), messageRecord.getSenderId(), -1);
+        }
+        return true;
+    }
+
+    @Override
+    public Boolean markConversationAsRead(Long userId, Long senderId) {
+        // 只推进水位，消息行由后台任务分批更新
+        readWatermarkService.markRead(userId, ReadScope.RECORD, senderId, null);
+        unreadCounterService.clearConversation(userId, senderId);
+        return true;
     }
 
     @Override
     public Boolean markAllMessagesAsRead(Long userId) {
-        // 更新所有接收者为当前用户的消息为已读
-        return lambdaUpdate()
-                .eq(MessageRecord::getReceiverId, userId)
-                .set(MessageRecord::getReadStatus, 1)
-                .update();
+        // 只推进水位，消息行由后台任务分批更新
+        readWatermarkService.markRead(userId, ReadScope.RECORD_ALL, 0L, null);
+        unreadCounterService.clear(userId);
+        return true;
+    }
+
+    /**
+     * 按已读水位修正尚未补写的消息的阅读状态
+     */
+    private void applyWatermarks(Long userId, List<MessageRecord> records) {
+        boolean hasUnread = records.stream()
+                .anyMatch(record -> userId.equals(record.getReceiverId()) && Integer.valueOf(0).equals(record.getReadStatus()));
+        if (!hasUnread) {
+            return;
+        }
+        long readAllUpTo = readWatermarkService.getWatermarks(userId, ReadScope.RECORD_ALL).getOrDefault(0L, 0L);
+        Map<Long, Long> bySender = readWatermarkService.getWatermarks(userId, ReadScope.RECORD);
+        for (MessageRecord record : records) {
+            if (!userId.equals(record.getReceiverId()) || !Integer.valueOf(0).equals(record.getReadStatus())) {
+                continue;
+            }
+            long upTo = Math.max(readAllUpTo, bySender.getOrDefault(record.getSenderId(), 0L));
+            if (record.getId() <= upTo) {
+                record.setReadStatus(1);
+            }
+        }
     }
 }
@@ -0,0 +1,184 @@
+package com.xx.jaseatschoicejava.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.xx.jaseatschoicejava.entity.ChatMsg;
+import com.xx.jaseatschoicejava.entity.MessageRecord;
+import com.xx.jaseatschoicejava.entity.ReadWatermark;
+import com.xx.jaseatschoicejava.enums.ReadScope;
+import com.xx.jaseatschoicejava.mapper.ChatMsgMapper;
+import com.xx.jaseatschoicejava.mapper.MessageRecordMapper;
+import com.xx.jaseatschoicejava.mapper.ReadWatermarkMapper;
+import com.xx.jaseatschoicejava.service.ReadWatermarkService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 已读水位服务实现
+ * 请求线程上只写一行水位；后台任务按水位分批查出未读消息ID再按主键更新，
+ * 每批独立提交，只锁住本批的行，大量积压的未读消息不会长时间占用行锁
+ */
+@Service
+public class ReadWatermarkServiceImpl extends ServiceImpl<ReadWatermarkMapper, ReadWatermark>
+        implements ReadWatermarkService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReadWatermarkServiceImpl.class);
+
+    /**
+     * 每批更新的消息行数
+     */
+    private static final int APPLY_BATCH = 500;
+
+    /**
+     * 每轮每个水位最多处理的批数，剩余部分下一轮继续，避免一个大积压占满整轮
+     */
+    private static final int MAX_BATCHES_PER_WATERMARK = 20;
+
+    /**
+     * 每轮处理的水位数
+     */
+    private static final int PENDING_BATCH = 100;
+
+    private final MessageRecordMapper messageRecordMapper;
+    private final ChatMsgMapper chatMsgMapper;
+
+    public ReadWatermarkServiceImpl(MessageRecordMapper messageRecordMapper, ChatMsgMapper chatMsgMapper) {
+        this.messageRecordMapper = messageRecordMapper;
+        this.chatMsgMapper = chatMsgMapper;
+    }
+
+    @Override
+    public void markRead(Long userId, ReadScope scope, Long peerId, Long upToId) {
+        if (userId == null) {
+            return;
+        }
+        long peer = scope == ReadScope.RECORD_ALL || peerId == null ? 0L : peerId;
+        Long watermark = upToId != null ? upToId : latestId(scope);
+        if (watermark == null || watermark <= 0) {
+            return;
+        }
+        baseMapper.advance(userId, scope.getValue(), peer, watermark);
+    }
+
+    @Override
+    public Map<Long, Long> getWatermarks(Long userId, ReadScope scope) {
+        return lambdaQuery()
+                .eq(ReadWatermark::getUserId, userId)
+                .eq(ReadWatermark::getScope, scope.getValue())
+                .list()
+                .stream()
+                .collect(Collectors.toMap(ReadWatermark::getPeerId, ReadWatermark::getReadUpToId, Math::max));
+    }
+
+    @Override
+    public long getReadUpTo(Long userId, ReadScope scope, Long peerId) {
+        long peer = scope == ReadScope.RECORD_ALL || peerId == null ? 0L : peerId;
+        ReadWatermark watermark = lambdaQuery()
+                .eq(ReadWatermark::getUserId, userId)
+                .eq(ReadWatermark::getScope, scope.getValue())
+                .eq(ReadWatermark::getPeerId, peer)
+                .one();
+        return watermark == null || watermark.getReadUpToId() == null ? 0L : watermark.getReadUpToId();
+    }
+
+    /**
+     * 将水位补写到消息行
+     */
+    @Scheduled(fixedDelayString = "${message.read.applyIntervalMs:1000}")
+    public void applyPending() {
+        int rows = 0;
+        try {
+            for (ReadWatermark watermark : baseMapper.selectPending(PENDING_BATCH)) {
+                rows += apply(watermark);
+            }
+        } catch (Exception e) {
+            logger.error("Failed to apply read watermarks: {}", e.getMessage());
+        }
+        if (rows > 0) {
+            logger.debug("Applied read watermarks to {} messages", rows);
+        }
+    }
+
+    private int apply(ReadWatermark watermark) {
+        ReadScope scope = ReadScope.of(watermark.getScope());
+        if (scope == null) {
+            baseMapper.markApplied(watermark.getId(), watermark.getReadUpToId());
+            return 0;
+        }
+        int rows = 0;
+        for (int i = 0; i < MAX_BATCHES_PER_WATERMARK; i++) {
+            int selected = applyBatch(scope, watermark);
+            rows += selected;
+            if (selected < APPLY_BATCH) {
+                // 只记录本次读到的水位，期间被推进的部分下一轮再处理
+                baseMapper.markApplied(watermark.getId(), watermark.getReadUpToId());
+                return rows;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * 补写一批消息行
+     *
+     * @return 本批查出的未读消息数
+     */
+    private int applyBatch(ReadScope scope, ReadWatermark watermark) {
+        if (scope == ReadScope.CHAT) {
+            List<Long> ids = toIds(chatMsgMapper.selectObjs(new LambdaQueryWrapper<ChatMsg>()
+                    .select(ChatMsg::getId)
+                    .eq(ChatMsg::getToId, watermark.getUserId())
+                    .eq(ChatMsg::getFromId, watermark.getPeerId())
+                    .eq(ChatMsg::getReadStatus, false)
+                    .le(ChatMsg::getId, watermark.getReadUpToId())
+                    .orderByAsc(ChatMsg::getId)
+                    .last("LIMIT " + APPLY_BATCH)));
+            if (!ids.isEmpty()) {
+                chatMsgMapper.update(null, new LambdaUpdateWrapper<ChatMsg>()
+                        .in(ChatMsg::getId, ids)
+                        .eq(ChatMsg::getReadStatus, false)
+                        .set(ChatMsg::getReadStatus, true));
+            }
+            return ids.size();
+        }
+        List<Long> ids = toIds(messageRecordMapper.selectObjs(new LambdaQueryWrapper<MessageRecord>()
+                .select(MessageRecord::getId)
+                .eq(MessageRecord::getReceiverId, watermark.getUserId())
+                .eq(scope == ReadScope.RECORD, MessageRecord::getSenderId, watermark.getPeerId())
+                .eq(MessageRecord::getReadStatus, 0)
+                .le(MessageRecord::getId, watermark.getReadUpToId())
+                .orderByAsc(MessageRecord::getId)
+                .last("LIMIT " + APPLY_BATCH)));
+        if (!ids.isEmpty()) {
+            messageRecordMapper.update(null, new LambdaUpdateWrapper<MessageRecord>()
+                    .in(MessageRecord::getId, ids)
+                    .eq(MessageRecord::getReadStatus, 0)
+                    .set(MessageRecord::getReadStatus, 1));
+        }
+        return ids.size();
+    }
+
+    /**
+     * 范围内当前最新的消息ID
+     */
+    private Long latestId(ReadScope scope) {
+        List<Object> ids = scope == ReadScope.CHAT
+                ? chatMsgMapper.selectObjs(new LambdaQueryWrapper<ChatMsg>()
+                        .select(ChatMsg::getId).orderByDesc(ChatMsg::getId).last("LIMIT 1"))
+                : messageRecordMapper.selectObjs(new LambdaQueryWrapper<MessageRecord>()
+                        .select(MessageRecord::getId).orderByDesc(MessageRecord::getId).last("LIMIT 1"));
+        return ids.isEmpty() ? null : ((Number) ids.get(0)).longValue();
+    }
+
+    private static List<Long> toIds(List<Object> objs) {
+        return objs.stream().map(id -> ((Number) id).longValue()).collect(Collectors.toList());
+    }
+}
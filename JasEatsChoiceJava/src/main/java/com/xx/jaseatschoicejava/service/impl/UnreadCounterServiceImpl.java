@@ -0,0 +1,259 @@
+package com.xx.jaseatschoicejava.service.impl;
+
+import com.xx.jaseatschoicejava.mapper.MessageRecordMapper;
+import com.xx.jaseatschoicejava.service.UnreadCounterService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消息未读计数服务实现
+ * unread:msg:total:{userId}保存未读总数，unread:msg:conv:{userId}按发送者保存未读数；
+ * 总数键存在即表示该用户的计数已初始化，未初始化时增减操作直接忽略，读取时再从MySQL加载。
+ * 计数键在加载后过期，长期不活跃用户的计数不会一直占用Redis，过期后重新加载也顺带纠正了偏差
+ */
+@Service
+public class UnreadCounterServiceImpl implements UnreadCounterService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UnreadCounterServiceImpl.class);
+
+    private static final String TOTAL_KEY_PREFIX = "unread:msg:total:";
+    private static final String CONVERSATION_KEY_PREFIX = "unread:msg:conv:";
+
+    /**
+     * 计数键的过期时间
+     */
+    private static final long COUNTER_TTL_MS = TimeUnit.DAYS.toMillis(7);
+
+    /**
+     * 每次校准的用户数
+     */
+    private static final int RECONCILE_BATCH = 200;
+
+    /**
+     * 调整计数：未初始化时返回-1不做处理；计数不会小于0，会话计数为0时删除该字段
+     */
+    private static final RedisScript<Long> ADJUST = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 0 then return -1 end "
+                    + "local total = redis.call('incrby', KEYS[1], ARGV[2]) "
+                    + "if total < 0 then redis.call('incrby', KEYS[1], -total) total = 0 end "
+                    + "if ARGV[1] ~= '' then "
+                    + "  local conv = redis.call('hincrby', KEYS[2], ARGV[1], ARGV[2]) "
+                    + "  if conv <= 0 then redis.call('hdel', KEYS[2], ARGV[1]) "
+                    + "  elseif redis.call('pttl', KEYS[2]) == -1 then "
+                    + "    local ttl = redis.call('pttl', KEYS[1]) "
+                    + "    if ttl > 0 then redis.call('pexpire', KEYS[2], ttl) end "
+                    + "  end "
+                    + "end "
+                    + "return total",
+            Long.class);
+
+    /**
+     * 清零会话计数并从总数中扣除：未初始化时返回-1不做处理，否则返回扣除的数量
+     */
+    private static final RedisScript<Long> CLEAR_CONVERSATION = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 0 then return -1 end "
+                    + "local conv = tonumber(redis.call('hget', KEYS[2], ARGV[1]) or '0') "
+                    + "if conv > 0 then "
+                    + "  redis.call('hdel', KEYS[2], ARGV[1]) "
+                    + "  local total = redis.call('decrby', KEYS[1], conv) "
+                    + "  if total < 0 then redis.call('incrby', KEYS[1], -total) end "
+                    + "end "
+                    + "return conv",
+            Long.class);
+
+    /**
+     * 写入计数：ARGV[1]为0时只在未初始化时写入，为1时只覆盖已有计数，为2时总是写入，覆盖时保留原过期时间；
+     * ARGV[2]为新键的过期时间，ARGV[3]为总数，之后依次为发送者ID和未读数
+     */
+    private static final RedisScript<Long> LOAD = new DefaultRedisScript<>(
+            "local ttl = redis.call('pttl', KEYS[1]) "
+                    + "if ttl == -2 then "
+                    + "  if ARGV[1] == '1' then return 0 end "
+                    + "  ttl = tonumber(ARGV[2]) "
+                    + "elseif ARGV[1] == '0' then return 0 end "
+                    + "redis.call('del', KEYS[2]) "
+                    + "redis.call('set', KEYS[1], ARGV[3]) "
+                    + "for i = 4, #ARGV, 2 do redis.call('hset', KEYS[2], ARGV[i], ARGV[i + 1]) end "
+                    + "if ttl > 0 then "
+                    + "  redis.call('pexpire', KEYS[1], ttl) "
+                    + "  if #ARGV >= 4 then redis.call('pexpire', KEYS[2], ttl) end "
+                    + "end "
+                    + "return 1",
+            Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final MessageRecordMapper messageRecordMapper;
+
+    public UnreadCounterServiceImpl(StringRedisTemplate redisTemplate, MessageRecordMapper messageRecordMapper) {
+        this.redisTemplate = redisTemplate;
+        this.messageRecordMapper = messageRecordMapper;
+    }
+
+    @Override
+    public long getUnreadCount(Long userId) {
+        try {
+            String value = redisTemplate.opsForValue().get(TOTAL_KEY_PREFIX + userId);
+            if (value != null) {
+                return Long.parseLong(value);
+            }
+            return load(Collections.singletonList(userId), false).get(userId).total;
+        } catch (Exception e) {
+            // Redis不可用时直接查询MySQL
+            logger.error("Failed to read unread count of user {} from Redis: {}", userId, e.getMessage());
+            Integer count = messageRecordMapper.getUnreadMessageCountByUserId(userId);
+            return count != null ? count : 0;
+        }
+    }
+
+    @Override
+    public Map<String, Long> getConversationUnreadCounts(Long userId) {
+        try {
+            if (Boolean.TRUE.equals(redisTemplate.hasKey(TOTAL_KEY_PREFIX + userId))) {
+                Map<Object, Object> entries = redisTemplate.opsForHash().entries(CONVERSATION_KEY_PREFIX + userId);
+                Map<String, Long> counts = new HashMap<>(entries.size() * 2);
+                entries.forEach((senderId, count) -> counts.put((String) senderId, Long.parseLong((String) count)));
+                return counts;
+            }
+            return load(Collections.singletonList(userId), false).get(userId).bySender;
+        } catch (Exception e) {
+            logger.error("Failed to read conversation unread counts of user {} from Redis: {}", userId, e.getMessage());
+            return countFromDatabase(Collections.singletonList(userId)).get(userId).bySender;
+        }
+    }
+
+    @Override
+    public void adjust(Long userId, Long senderId, long delta) {
+        if (userId == null || delta == 0) {
+            return;
+        }
+        try {
+            redisTemplate.execute(ADJUST, Arrays.asList(TOTAL_KEY_PREFIX + userId, CONVERSATION_KEY_PREFIX + userId),
+                    senderId != null ? String.valueOf(senderId) : "", String.valueOf(delta));
+        } catch (Exception e) {
+            // 计数偏差由定期校准纠正
+            logger.error("Failed to adjust unread count of user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    @Override
+    public void clear(Long userId) {
+        try {
+            redisTemplate.execute(LOAD, Arrays.asList(TOTAL_KEY_PREFIX + userId, CONVERSATION_KEY_PREFIX + userId),
+                    "2", String.valueOf(COUNTER_TTL_MS), "0");
+        } catch (Exception e) {
+            logger.error("Failed to clear unread count of user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    @Override
+    public void clearConversation(Long userId, Long senderId) {
+        if (userId == null || senderId == null) {
+            return;
+        }
+        try {
+            redisTemplate.execute(CLEAR_CONVERSATION, Arrays.asList(TOTAL_KEY_PREFIX + userId,
+                    CONVERSATION_KEY_PREFIX + userId), String.valueOf(senderId));
+        } catch (Exception e) {
+            logger.error("Failed to clear conversation unread count of user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    /**
+     * 定期用MySQL中的未读数覆盖已加载用户的计数，纠正Redis写入失败、并发加载等造成的偏差
+     */
+    @Scheduled(fixedDelayString = "${message.unread.reconcileIntervalMs:300000}")
+    public void reconcile() {
+        int users = 0;
+        try (Cursor<String> keys = redisTemplate.scan(ScanOptions.scanOptions()
+                .match(TOTAL_KEY_PREFIX + "*").count(RECONCILE_BATCH).build())) {
+            List<Long> batch = new ArrayList<>(RECONCILE_BATCH);
+            while (keys.hasNext()) {
+                try {
+                    batch.add(Long.valueOf(keys.next().substring(TOTAL_KEY_PREFIX.length())));
+                } catch (NumberFormatException ignored) {
+                    continue;
+                }
+                if (batch.size() >= RECONCILE_BATCH) {
+                    users += load(batch, true).size();
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                users += load(batch, true).size();
+            }
+        } catch (Exception e) {
+            logger.error("Failed to reconcile unread counts: {}", e.getMessage());
+        }
+        logger.debug("Reconciled unread counts of {} users", users);
+    }
+
+    /**
+     * 从MySQL统计用户的未读数并写入Redis
+     *
+     * @param force 是否覆盖已有计数；为false时只写入尚未初始化的用户
+     */
+    private Map<Long, Counts> load(List<Long> userIds, boolean force) {
+        Map<Long, Counts> counts = countFromDatabase(userIds);
+        for (Map.Entry<Long, Counts> entry : counts.entrySet()) {
+            Counts userCounts = entry.getValue();
+            List<String> args = new ArrayList<>(3 + userCounts.bySender.size() * 2);
+            args.add(force ? "1" : "0");
+            args.add(String.valueOf(COUNTER_TTL_MS));
+            args.add(String.valueOf(userCounts.total));
+            userCounts.bySender.forEach((senderId, unread) -> {
+                args.add(senderId);
+                args.add(String.valueOf(unread));
+            });
+            redisTemplate.execute(LOAD, Arrays.asList(TOTAL_KEY_PREFIX + entry.getKey(),
+                    CONVERSATION_KEY_PREFIX + entry.getKey()), args.toArray());
+        }
+        return counts;
+    }
+
+    /**
+     * 从MySQL统计用户的未读数，结果包含每个用户
+     */
+    private Map<Long, Counts> countFromDatabase(List<Long> userIds) {
+        Map<Long, Counts> counts = new LinkedHashMap<>();
+        for (Long userId : userIds) {
+            counts.put(userId, new Counts());
+        }
+        for (Map<String, Object> row : messageRecordMapper.getUnreadCountsByReceiverIds(userIds)) {
+            Counts userCounts = counts.get(((Number) row.get("receiverId")).longValue());
+            if (userCounts == null) {
+                continue;
+            }
+            long unread = ((Number) row.get("unreadCount")).longValue();
+            userCounts.total += unread;
+            Object senderId = row.get("senderId");
+            if (senderId != null) {
+                userCounts.bySender.merge(String.valueOf(senderId), unread, Long::sum);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * 从MySQL统计的用户未读数
+     */
+    private static final class Counts {
+        private long total;
+        private final Map<String, Long> bySender = new HashMap<>();
+    }
+}
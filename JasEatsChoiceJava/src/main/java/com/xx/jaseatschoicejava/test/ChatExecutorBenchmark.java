@@ -0,0 +1,99 @@
+package com.xx.jaseatschoicejava.test;
+
+import com.xx.jaseatschoicejava.netty.ChatTaskExecutor;
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 对比业务线程模式：固定16线程的group模式与虚拟线程模式
+ * 模拟多个连接各自连续发送消息，每条消息的处理包含一次阻塞的数据库写入（sleep模拟），
+ * 统计总耗时、吞吐量、最大并发阻塞数，并校验同一连接内的处理顺序
+ *
+ * 参数：[连接数] [每个连接的消息数] [每条消息阻塞毫秒数]，默认 500 20 5
+ */
+public class ChatExecutorBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int channels = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int messages = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int blockMillis = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        System.out.println("连接数: " + channels + "，每个连接消息数: " + messages + "，每条消息阻塞: " + blockMillis + "ms");
+
+        // 预热
+        run(ChatTaskExecutor.Mode.GROUP, 16, 1, 1, true);
+        run(ChatTaskExecutor.Mode.VIRTUAL, 16, 1, 1, true);
+
+        run(ChatTaskExecutor.Mode.GROUP, channels, messages, blockMillis, false);
+        run(ChatTaskExecutor.Mode.VIRTUAL, channels, messages, blockMillis, false);
+    }
+
+    private static void run(ChatTaskExecutor.Mode mode, int channelCount, int messages, int blockMillis,
+                            boolean warmup) throws Exception {
+        ChatTaskExecutor executor = new ChatTaskExecutor(mode, 16);
+        List<Channel> channels = new ArrayList<>(channelCount);
+        for (int i = 0; i < channelCount; i++) {
+            channels.add(new EmbeddedChannel());
+        }
+
+        int total = channelCount * messages;
+        CountDownLatch done = new CountDownLatch(total);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        AtomicInteger outOfOrder = new AtomicInteger();
+        AtomicLong latencySum = new AtomicLong();
+        int[] lastSeq = new int[channelCount];
+
+        long start = System.nanoTime();
+        // 与I/O线程一样按连接轮流提交消息
+        for (int seq = 1; seq <= messages; seq++) {
+            for (int c = 0; c < channelCount; c++) {
+                int channelIndex = c;
+                int messageSeq = seq;
+                long submitted = System.nanoTime();
+                executor.execute(channels.get(c), () -> {
+                    // 同一连接的任务串行执行，这里无需同步
+                    if (lastSeq[channelIndex] != messageSeq - 1) {
+                        outOfOrder.incrementAndGet();
+                    }
+                    lastSeq[channelIndex] = messageSeq;
+
+                    int current = inFlight.incrementAndGet();
+                    maxInFlight.accumulateAndGet(current, Math::max);
+                    try {
+                        Thread.sleep(blockMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    inFlight.decrementAndGet();
+                    latencySum.addAndGet(System.nanoTime() - submitted);
+                    done.countDown();
+                });
+            }
+        }
+        if (!done.await(5, TimeUnit.MINUTES)) {
+            System.err.println(mode + " 未在5分钟内完成");
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        executor.shutdownGracefully(15, TimeUnit.SECONDS);
+        for (Channel channel : channels) {
+            channel.close();
+        }
+
+        if (warmup) {
+            return;
+        }
+        System.out.println("=== " + mode + " ===");
+        System.out.println("总耗时: " + elapsedMs + "ms，吞吐量: " + (total * 1000L / Math.max(1, elapsedMs)) + " 条/秒");
+        System.out.println("平均排队+处理耗时: " + TimeUnit.NANOSECONDS.toMillis(latencySum.get() / total) + "ms");
+        System.out.println("最大并发阻塞数: " + maxInFlight.get());
+        System.out.println("乱序条数: " + outOfOrder.get());
+    }
+}
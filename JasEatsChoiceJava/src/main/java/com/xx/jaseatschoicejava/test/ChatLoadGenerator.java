@@ -0,0 +1,499 @@
+package com.xx.jaseatschoicejava.test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolConfig;
+import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolHandler;
+import io.netty.handler.codec.http.websocketx.WebSocketFrameAggregator;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * WebSocket聊天服务压测工具
+ * 在本机建立N个到/ws的WebSocket连接并各自绑定用户ID，按配比持续发送单聊、群聊和拼单同步消息，接收方收到后回复client_ack；
+ * 结束后统计发送吞吐量、服务端确认延迟、投递延迟（p50/p99/p999）和各类失败数。
+ * 发送方和接收方都在本进程内，投递延迟直接用同一时钟计算；只允许连接回环地址，除被测服务外不依赖其他服务
+ *
+ * 参数为key=value形式，均可省略，默认值：
+ * host=127.0.0.1 port=9091 connections=200 seconds=30 rate=2 mix=single:70,group:20,order_sync:10 groups=1
+ * userBase=900000 drainSeconds=5
+ * rate为每个连接每秒发送的消息数，注意服务端默认限流为每个连接每秒10个令牌、群消息计5个；
+ * 群消息只投递给t_contact中该群的在线成员，需要事先把压测用户（userBase起的连续ID）加入groups中的群
+ */
+public class ChatLoadGenerator {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    // 压测消息内容前缀，后面是消息序号
+    private static final String CONTENT_PREFIX = "load:";
+
+    private static final List<String> TRAFFIC_TYPES = List.of("single", "group", "order_sync");
+
+    private final String host;
+    private final int port;
+    private final int connections;
+    private final int seconds;
+    private final double rate;
+    private final String[] mixTypes;
+    private final int[] mixWeights;
+    private final List<String> groupIds;
+    private final long userBase;
+    private final int drainSeconds;
+
+    // 消息序号 -> 在途消息
+    private final ConcurrentHashMap<Long, Pending> pending = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final Map<String, LongAdder> sent = new LinkedHashMap<>();
+    private final Map<String, LongAdder> deliveries = new LinkedHashMap<>();
+    private final Map<String, LatencyRecorder> deliveryLatency = new LinkedHashMap<>();
+    private final LatencyRecorder ackLatency = new LatencyRecorder();
+
+    // 失败统计
+    private final LongAdder connectFailures = new LongAdder();
+    private final LongAdder sendFailures = new LongAdder();
+    private final LongAdder errorReplies = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder disconnects = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+
+    // 连接不可写时跳过的发送次数
+    private final LongAdder skipped = new LongAdder();
+
+    private final List<Client> clients = new ArrayList<>();
+    private String[] boundUserIds = new String[0];
+
+    private ChatLoadGenerator(Map<String, String> options) {
+        this.host = options.getOrDefault("host", "127.0.0.1");
+        this.port = Integer.parseInt(options.getOrDefault("port", "9091"));
+        this.connections = Integer.parseInt(options.getOrDefault("connections", "200"));
+        this.seconds = Integer.parseInt(options.getOrDefault("seconds", "30"));
+        this.rate = Double.parseDouble(options.getOrDefault("rate", "2"));
+        this.groupIds = Arrays.asList(options.getOrDefault("groups", "1").split(","));
+        this.userBase = Long.parseLong(options.getOrDefault("userBase", "900000"));
+        this.drainSeconds = Integer.parseInt(options.getOrDefault("drainSeconds", "5"));
+
+        // 解析流量配比，如single:70,group:20,order_sync:10
+        String[] entries = options.getOrDefault("mix", "single:70,group:20,order_sync:10").split(",");
+        this.mixTypes = new String[entries.length];
+        this.mixWeights = new int[entries.length];
+        int total = 0;
+        for (int i = 0; i < entries.length; i++) {
+            String[] parts = entries[i].trim().split(":");
+            if (!TRAFFIC_TYPES.contains(parts[0])) {
+                throw new IllegalArgumentException("不支持的消息类型: " + parts[0]);
+            }
+            total += parts.length > 1 ? Integer.parseInt(parts[1]) : 1;
+            mixTypes[i] = parts[0];
+            mixWeights[i] = total;
+        }
+        if (total <= 0 || rate <= 0) {
+            throw new IllegalArgumentException("流量配比和发送速率必须大于0");
+        }
+
+        for (String type : TRAFFIC_TYPES) {
+            sent.put(type, new LongAdder());
+            deliveries.put(type, new LongAdder());
+            deliveryLatency.put(type, new LatencyRecorder());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int index = arg.indexOf('=');
+            if (index <= 0) {
+                System.err.println("参数格式应为key=value: " + arg);
+                return;
+            }
+            options.put(arg.substring(0, index), arg.substring(index + 1));
+        }
+
+        ChatLoadGenerator generator = new ChatLoadGenerator(options);
+        // 只压测本机服务
+        if (!InetAddress.getByName(generator.host).isLoopbackAddress()) {
+            System.err.println("只允许连接本机地址: " + generator.host);
+            return;
+        }
+        generator.run();
+    }
+
+    private void run() throws Exception {
+        EventLoopGroup group = new NioEventLoopGroup();
+        try {
+            connect(group);
+            System.out.println("连接成功: " + clients.size() + "，失败: " + connectFailures.sum());
+            if (clients.isEmpty()) {
+                return;
+            }
+
+            // 每个连接按固定速率发送，起始时间随机错开
+            long periodNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+            List<ScheduledFuture<?>> tasks = new ArrayList<>(clients.size());
+            long start = System.nanoTime();
+            for (Client client : clients) {
+                long delay = ThreadLocalRandom.current().nextLong(periodNanos);
+                tasks.add(client.channel.eventLoop().scheduleAtFixedRate(client::sendNext, delay, periodNanos,
+                        TimeUnit.NANOSECONDS));
+            }
+            System.out.println("开始发送，持续" + seconds + "秒...");
+            Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+            for (ScheduledFuture<?> task : tasks) {
+                task.cancel(false);
+            }
+            long elapsedNanos = System.nanoTime() - start;
+
+            // 等待在途消息的确认和投递
+            awaitDrain();
+            report(elapsedNanos);
+        } finally {
+            for (Client client : clients) {
+                client.channel.close();
+            }
+            group.shutdownGracefully(0, 5, TimeUnit.SECONDS).syncUninterruptibly();
+        }
+    }
+
+    /**
+     * 建立连接，握手完成后发送auth消息绑定用户，收到服务端回复后视为绑定完成
+     */
+    private void connect(EventLoopGroup group) throws Exception {
+        URI uri = new URI("ws://" + host + ":" + port + "/ws");
+        Bootstrap bootstrap = new Bootstrap()
+                .group(group)
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 10000);
+
+        List<Client> connecting = new ArrayList<>(connections);
+        for (int i = 0; i < connections; i++) {
+            Client client = new Client(String.valueOf(userBase + i));
+            connecting.add(client);
+            bootstrap.clone()
+                    .handler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            ChannelPipeline pipeline = ch.pipeline();
+                            pipeline.addLast(new HttpClientCodec());
+                            pipeline.addLast(new HttpObjectAggregator(65536));
+                            pipeline.addLast(new WebSocketClientProtocolHandler(WebSocketClientProtocolConfig.newBuilder()
+                                    .webSocketUri(uri)
+                                    .subprotocol("chat.json")
+                                    .build()));
+                            pipeline.addLast(new WebSocketFrameAggregator(65536));
+                            pipeline.addLast(client);
+                        }
+                    })
+                    .connect(host, port)
+                    .addListener(future -> {
+                        if (!future.isSuccess()) {
+                            client.bound.completeExceptionally(future.cause());
+                        }
+                    });
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        List<String> userIds = new ArrayList<>(connections);
+        for (Client client : connecting) {
+            try {
+                client.bound.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                clients.add(client);
+                userIds.add(client.userId);
+            } catch (Exception e) {
+                connectFailures.increment();
+                if (client.channel != null) {
+                    client.channel.close();
+                }
+            }
+        }
+        boundUserIds = userIds.toArray(new String[0]);
+    }
+
+    private void awaitDrain() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(drainSeconds);
+        while (System.nanoTime() < deadline) {
+            boolean drained = true;
+            for (Pending message : pending.values()) {
+                if (!message.acked || (!"group".equals(message.type) && message.deliveries.get() == 0)) {
+                    drained = false;
+                    break;
+                }
+            }
+            if (drained) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+    }
+
+    private void report(long elapsedNanos) {
+        double elapsedSeconds = elapsedNanos / 1e9;
+        long totalSent = 0;
+        for (LongAdder count : sent.values()) {
+            totalSent += count.sum();
+        }
+        long unacked = 0;
+        long undelivered = 0;
+        for (Pending message : pending.values()) {
+            if (!message.acked) {
+                unacked++;
+            }
+            // 单聊和拼单同步的接收方都在线，应当恰好收到一次
+            if (!"group".equals(message.type) && message.deliveries.get() == 0) {
+                undelivered++;
+            }
+        }
+
+        System.out.println("=== 压测结果 ===");
+        System.out.printf("连接数: %d，持续: %.1fs，每连接速率: %.1f 条/秒%n", clients.size(), elapsedSeconds, rate);
+        System.out.printf("发送: %d 条，吞吐量: %.0f 条/秒，连接不可写跳过: %d%n",
+                totalSent, totalSent / elapsedSeconds, skipped.sum());
+        System.out.println("服务端确认: " + (totalSent - unacked) + "/" + totalSent + "，延迟 " + ackLatency.summary());
+        long totalDelivered = 0;
+        for (String type : TRAFFIC_TYPES) {
+            long count = sent.get(type).sum();
+            if (count == 0) {
+                continue;
+            }
+            long delivered = deliveries.get(type).sum();
+            totalDelivered += delivered;
+            System.out.printf("投递 %s: 发送 %d，收到 %d（平均扇出 %.1f），延迟 %s%n",
+                    type, count, delivered, (double) delivered / count, deliveryLatency.get(type).summary());
+        }
+        System.out.printf("投递吞吐量: %.0f 条/秒%n", totalDelivered / elapsedSeconds);
+        System.out.println("失败: 连接失败 " + connectFailures.sum() + "，发送失败 " + sendFailures.sum()
+                + "，错误回复 " + errorReplies.sum() + "，未确认 " + unacked + "，未投递 " + undelivered
+                + "，重复投递 " + duplicates.sum() + "，连接断开 " + disconnects.sum() + "，收到重连通知 " + reconnects.sum());
+    }
+
+    private String pickType() {
+        int value = ThreadLocalRandom.current().nextInt(mixWeights[mixWeights.length - 1]);
+        for (int i = 0; i < mixWeights.length; i++) {
+            if (value < mixWeights[i]) {
+                return mixTypes[i];
+            }
+        }
+        return mixTypes[mixTypes.length - 1];
+    }
+
+    /**
+     * 在途消息
+     */
+    private static final class Pending {
+        private final String type;
+        private final long sentAt;
+        private volatile boolean acked;
+        private final AtomicInteger deliveries = new AtomicInteger();
+
+        private Pending(String type, long sentAt) {
+            this.type = type;
+            this.sentAt = sentAt;
+        }
+    }
+
+    /**
+     * 压测连接，收发都在连接的EventLoop上执行
+     */
+    private final class Client extends SimpleChannelInboundHandler<TextWebSocketFrame> {
+
+        private final String userId;
+        private final CompletableFuture<Void> bound = new CompletableFuture<>();
+
+        // 已收到的投递ID，用于识别重传
+        private final Set<Long> received = new HashSet<>();
+
+        private volatile Channel channel;
+
+        private Client(String userId) {
+            this.userId = userId;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            channel = ctx.channel();
+            super.channelActive(ctx);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            if (!bound.completeExceptionally(new ClosedChannelException())) {
+                disconnects.increment();
+            }
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt == WebSocketClientProtocolHandler.ClientHandshakeStateEvent.HANDSHAKE_COMPLETE) {
+                // 与前端一样用auth消息绑定用户
+                ObjectNode auth = OBJECT_MAPPER.createObjectNode();
+                auth.put("msgType", "auth");
+                auth.put("fromId", userId);
+                ctx.writeAndFlush(new TextWebSocketFrame(OBJECT_MAPPER.writeValueAsString(auth)));
+            } else if (evt == WebSocketClientProtocolHandler.ClientHandshakeStateEvent.HANDSHAKE_TIMEOUT) {
+                bound.completeExceptionally(new IllegalStateException("WebSocket handshake timeout"));
+            }
+            super.userEventTriggered(ctx, evt);
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, TextWebSocketFrame frame) throws Exception {
+            long now = System.nanoTime();
+            JsonNode json = OBJECT_MAPPER.readTree(frame.text());
+            String msgType = json.path("msgType").asText();
+            switch (msgType) {
+                case "auth":
+                    // auth不是服务端定义的消息类型，回复到达时用户已绑定
+                    bound.complete(null);
+                    break;
+                case "server_ack":
+                    Pending message = pending.get(json.path("clientMsgId").asLong(-1));
+                    if (message != null && !message.acked) {
+                        message.acked = true;
+                        ackLatency.record(now - message.sentAt);
+                    }
+                    break;
+                case "error":
+                    errorReplies.increment();
+                    break;
+                case "reconnect":
+                    reconnects.increment();
+                    break;
+                default:
+                    onDelivery(ctx, json, now);
+                    break;
+            }
+        }
+
+        private void onDelivery(ChannelHandlerContext ctx, JsonNode json, long now) throws Exception {
+            String content = json.path("content").asText();
+            if (!content.startsWith(CONTENT_PREFIX)) {
+                return;
+            }
+            // 回复确认，避免服务端重传
+            if (json.hasNonNull("msgId")) {
+                long msgId = json.get("msgId").asLong();
+                ObjectNode ack = OBJECT_MAPPER.createObjectNode();
+                ack.put("msgType", "client_ack");
+                ack.put("msgId", String.valueOf(msgId));
+                ctx.writeAndFlush(new TextWebSocketFrame(OBJECT_MAPPER.writeValueAsString(ack)), ctx.voidPromise());
+                if (!received.add(msgId)) {
+                    duplicates.increment();
+                    return;
+                }
+            }
+            Pending message = pending.get(Long.parseLong(content.substring(CONTENT_PREFIX.length())));
+            if (message != null) {
+                message.deliveries.incrementAndGet();
+                deliveries.get(message.type).increment();
+                deliveryLatency.get(message.type).record(now - message.sentAt);
+            }
+        }
+
+        /**
+         * 按配比发送一条消息，由定时任务在EventLoop上调用
+         */
+        private void sendNext() {
+            if (!channel.isActive()) {
+                return;
+            }
+            if (!channel.isWritable()) {
+                skipped.increment();
+                return;
+            }
+            String type = pickType();
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            String toId = "group".equals(type)
+                    ? groupIds.get(random.nextInt(groupIds.size())).trim()
+                    : boundUserIds[random.nextInt(boundUserIds.length)];
+
+            long id = sequence.incrementAndGet();
+            ObjectNode request = OBJECT_MAPPER.createObjectNode();
+            request.put("msgType", type);
+            request.put("fromId", userId);
+            request.put("toId", toId);
+            request.put("content", CONTENT_PREFIX + id);
+            request.put("clientMsgId", String.valueOf(id));
+            String text;
+            try {
+                text = OBJECT_MAPPER.writeValueAsString(request);
+            } catch (Exception e) {
+                sendFailures.increment();
+                return;
+            }
+
+            pending.put(id, new Pending(type, System.nanoTime()));
+            sent.get(type).increment();
+            channel.writeAndFlush(new TextWebSocketFrame(text)).addListener(future -> {
+                if (!future.isSuccess()) {
+                    sendFailures.increment();
+                    pending.remove(id);
+                }
+            });
+        }
+    }
+
+    /**
+     * 记录延迟样本，结束后排序计算分位数
+     */
+    private static final class LatencyRecorder {
+
+        private long[] samples = new long[1024];
+        private int size;
+
+        synchronized void record(long nanos) {
+            if (size == samples.length) {
+                samples = Arrays.copyOf(samples, size * 2);
+            }
+            samples[size++] = nanos;
+        }
+
+        synchronized String summary() {
+            if (size == 0) {
+                return "无样本";
+            }
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            return String.format("p50 %.2fms，p99 %.2fms，p999 %.2fms，max %.2fms",
+                    percentile(sorted, 0.5), percentile(sorted, 0.99), percentile(sorted, 0.999),
+                    sorted[sorted.length - 1] / 1e6);
+        }
+
+        private static double percentile(long[] sorted, double quantile) {
+            int index = (int) Math.ceil(quantile * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.xx.jaseatschoicejava.util;
+
+import com.xx.jaseatschoicejava.entity.ChatMsg;
+import com.xx.jaseatschoicejava.enums.MsgType;
+
+/**
+ * 会话键工具类
+ * 同一会话的消息使用相同的会话键，便于按(conversation_key, id)索引分页：
+ * 单聊为"s:较小用户ID_较大用户ID"，与收发方向无关；群聊为"g:群ID"
+ */
+public final class ConversationKeys {
+
+    private ConversationKeys() {
+    }
+
+    /**
+     * 单聊会话键
+     */
+    public static String single(long userId, long peerId) {
+        return "s:" + Math.min(userId, peerId) + "_" + Math.max(userId, peerId);
+    }
+
+    /**
+     * 群聊会话键
+     */
+    public static String group(long groupId) {
+        return "g:" + groupId;
+    }
+
+    /**
+     * 按消息类型计算消息所属会话的键
+     */
+    public static String of(ChatMsg chatMsg) {
+        return MsgType.GROUP.getValue().equals(chatMsg.getMsgType())
+                ? group(chatMsg.getToId())
+                : single(chatMsg.getFromId(), chatMsg.getToId());
+    }
+
+    /**
+     * 将聊天记录接口的会话ID转换为会话键
+     * @param sessionId 单聊为两个用户ID用"_"拼接，群聊为群ID
+     * @return 会话键，格式不正确时返回null
+     */
+    public static String fromSessionId(String sessionId) {
+        try {
+            if (sessionId.contains("_")) {
+                String[] userIds = sessionId.split("_");
+                return userIds.length == 2 ? single(Long.parseLong(userIds[0]), Long.parseLong(userIds[1])) : null;
+            }
+            return group(Long.parseLong(sessionId));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
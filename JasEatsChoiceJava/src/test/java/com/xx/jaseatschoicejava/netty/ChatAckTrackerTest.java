@@ -0,0 +1,150 @@
+package com.xx.jaseatschoicejava.netty;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xx.jaseatschoicejava.config.NettyConfig;
+import com.xx.jaseatschoicejava.netty.cluster.ChatClusterRouter;
+import com.xx.jaseatschoicejava.netty.cluster.InMemoryClusterTransport;
+import com.xx.jaseatschoicejava.netty.codec.ChatMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试投递确认：超时重传、确认后停止重传、多次未确认后转存离线
+ */
+class ChatAckTrackerTest {
+
+    private final List<ChatMessage> stored = new ArrayList<>();
+
+    private ChatAckTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        NettyConfig nettyConfig = new NettyConfig();
+        nettyConfig.setAckEnabled(true);
+        nettyConfig.setAckTimeoutMs(1);
+        nettyConfig.setAckMaxRetries(1);
+        nettyConfig.setAckWindowSize(1);
+        nettyConfig.setSlowConsumerPendingLimit(16);
+        nettyConfig.setSlowConsumerPolicy("drop");
+        nettyConfig.setOfflineBatchSize(1);
+        nettyConfig.setOfflineFlushIntervalMs(1);
+        nettyConfig.setOfflineQueueCapacity(1);
+
+        ChatMetrics chatMetrics = new ChatMetrics(new SimpleMeterRegistry());
+        // 记录转存离线的消息，不写数据库
+        InMemoryClusterTransport transport = new InMemoryClusterTransport();
+        OfflineMessageWriter offlineMessageWriter = new OfflineMessageWriter(null,
+                new MissedMessageBuffer(transport, nettyConfig), new UserChannelRegistry(),
+                new ChatClusterRouter(transport, false, "test", 30000), chatMetrics, nettyConfig) {
+            @Override
+            public boolean submit(ChatMessage message, String receiverId) {
+                stored.add(message);
+                return true;
+            }
+        };
+        ChatChannelWriter chatChannelWriter = new ChatChannelWriter(offlineMessageWriter, new UserChannelRegistry(),
+                chatMetrics, nettyConfig);
+        tracker = new ChatAckTracker(chatChannelWriter, offlineMessageWriter, chatMetrics, nettyConfig);
+    }
+
+    @Test
+    void testRetransmitUntilAcked() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel(tracker.handler());
+        ChatMessage message = ChatMessage.forward("single", "U1", "U2", "你好", 100L);
+        assertTrue(tracker.isTracked(message));
+
+        tracker.send(List.of(channel), "2", message, true);
+        assertEquals("100", readMsgId(channel));
+
+        // 超时未确认，以相同的投递ID重传
+        expireTimeouts(channel);
+        assertEquals("100", readMsgId(channel));
+
+        tracker.ack(channel, 100L);
+        expireTimeouts(channel);
+        assertNull(channel.readOutbound());
+        assertTrue(stored.isEmpty());
+    }
+
+    @Test
+    void testUnackedMessageStoredOffline() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel(tracker.handler());
+        tracker.send(List.of(channel), "2", ChatMessage.forward("single", "U1", "U2", "你好", 200L), true);
+        readMsgId(channel);
+
+        // 重传一次后仍未确认，转存离线
+        expireTimeouts(channel);
+        readMsgId(channel);
+        expireTimeouts(channel);
+        assertEquals(1, stored.size());
+        assertEquals(200L, stored.get(0).msgId());
+    }
+
+    @Test
+    void testWindowQueuesUntilAck() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel(tracker.handler());
+        tracker.send(List.of(channel), "2", ChatMessage.forward("single", "U1", "U2", "第一条", 300L), true);
+        tracker.send(List.of(channel), "2", ChatMessage.forward("single", "U1", "U2", "第二条", 301L), true);
+
+        // 窗口大小为1，第二条等待第一条确认后才发出
+        assertEquals("300", readMsgId(channel));
+        assertNull(channel.readOutbound());
+
+        tracker.ack(channel, 300L);
+        assertEquals("301", readMsgId(channel));
+    }
+
+    @Test
+    void testOtherDeviceAckSuppressesOfflineStore() throws Exception {
+        EmbeddedChannel phone = new EmbeddedChannel(tracker.handler());
+        EmbeddedChannel desktop = new EmbeddedChannel(tracker.handler());
+        tracker.send(Arrays.asList(phone, desktop), "2", ChatMessage.forward("single", "U1", "U2", "你好", 400L), true);
+        readMsgId(phone);
+        readMsgId(desktop);
+
+        // 手机确认后桌面端断开，不应转存离线
+        tracker.ack(phone, 400L);
+        desktop.close();
+        assertTrue(stored.isEmpty());
+    }
+
+    @Test
+    void testOnlyOptedInChannelsTracked() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel(tracker.handler());
+        assertFalse(tracker.isTracked(channel));
+        tracker.enableFor(channel);
+        assertTrue(tracker.isTracked(channel));
+
+        // 消息同时写给了不支持确认的设备，未确认时不转存离线
+        tracker.send(List.of(channel), "2", ChatMessage.forward("single", "U1", "U2", "你好", 500L), false);
+        readMsgId(channel);
+        expireTimeouts(channel);
+        readMsgId(channel);
+        expireTimeouts(channel);
+        assertTrue(stored.isEmpty());
+    }
+
+    private static String readMsgId(EmbeddedChannel channel) throws Exception {
+        TextWebSocketFrame frame = channel.readOutbound();
+        assertNotNull(frame);
+        try {
+            return new ObjectMapper().readTree(frame.text()).get("msgId").asText();
+        } finally {
+            frame.release();
+        }
+    }
+
+    private static void expireTimeouts(EmbeddedChannel channel) throws InterruptedException {
+        Thread.sleep(5);
+        channel.runScheduledPendingTasks();
+    }
+}
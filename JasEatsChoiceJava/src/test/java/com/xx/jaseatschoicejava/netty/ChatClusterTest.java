@@ -0,0 +1,270 @@
+package com.xx.jaseatschoicejava.netty;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xx.jaseatschoicejava.config.NettyConfig;
+import com.xx.jaseatschoicejava.entity.ChatMsg;
+import com.xx.jaseatschoicejava.netty.cluster.ChatClusterRouter;
+import com.xx.jaseatschoicejava.netty.cluster.ClusterTransport;
+import com.xx.jaseatschoicejava.netty.cluster.InMemoryClusterTransport;
+import com.xx.jaseatschoicejava.netty.codec.ChatMessage;
+import com.xx.jaseatschoicejava.service.ChatMsgService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试多节点消息路由，两个节点共享进程内的集群通信实现
+ */
+class ChatClusterTest {
+
+    private final ClusterTransport transport = new InMemoryClusterTransport();
+
+    // 各节点共享的t_chat_msg
+    private final List<ChatMsg> storedMessages = new ArrayList<>();
+    private final List<Long> replayQueries = new ArrayList<>();
+    private final List<Long> deliveredIds = new ArrayList<>();
+    private final ChatMsgService chatMsgService = stubChatMsgService();
+
+    @Test
+    void testRelayToUserOnOtherNode() throws Exception {
+        ChatDispatcher nodeA = newNode("node-a").dispatcher();
+        ChatDispatcher nodeB = newNode("node-b").dispatcher();
+
+        EmbeddedChannel receiver = new EmbeddedChannel();
+        assertTrue(nodeB.bindUser("U1002", receiver));
+        assertEquals(Set.of("node-b"), transport.getPresence("1002"));
+
+        // 发送方在节点A，接收方在节点B
+        nodeA.sendToUser("U1002", ChatMessage.forward("single", "U1001", "U1002", "你好"));
+
+        TextWebSocketFrame frame = receiver.readOutbound();
+        assertNotNull(frame);
+        JsonNode json = new ObjectMapper().readTree(frame.text());
+        assertEquals("你好", json.get("content").asText());
+        assertEquals("U1001", json.get("fromId").asText());
+        frame.release();
+    }
+
+    @Test
+    void testLocalDeliveryStaysOnNode() {
+        ChatDispatcher nodeA = newNode("node-a").dispatcher();
+        newNode("node-b");
+
+        EmbeddedChannel first = new EmbeddedChannel();
+        EmbeddedChannel second = new EmbeddedChannel();
+        nodeA.bindUser("U2001", first);
+        nodeA.bindUser("U2001", second);
+
+        nodeA.sendToUser("U2001", ChatMessage.forward("single", "U2002", "U2001", "本节点"));
+
+        // 同一用户在本节点的每个设备都会收到
+        TextWebSocketFrame firstFrame = first.readOutbound();
+        TextWebSocketFrame secondFrame = second.readOutbound();
+        assertNotNull(firstFrame);
+        assertNotNull(secondFrame);
+        firstFrame.release();
+        secondFrame.release();
+    }
+
+    @Test
+    void testPresenceRemovedWhenLastChannelCloses() {
+        ChatDispatcher nodeB = newNode("node-b").dispatcher();
+
+        EmbeddedChannel first = new EmbeddedChannel();
+        EmbeddedChannel second = new EmbeddedChannel();
+        nodeB.bindUser("U3001", first);
+        nodeB.bindUser("U3001", second);
+
+        nodeB.unbindChannel(first);
+        assertEquals(Set.of("node-b"), transport.getPresence("3001"));
+
+        nodeB.unbindChannel(second);
+        assertTrue(transport.getPresence("3001").isEmpty());
+    }
+
+    @Test
+    void testStalePresenceDoesNotRemoveNewNode() {
+        ChatDispatcher nodeA = newNode("node-a").dispatcher();
+        ChatDispatcher nodeB = newNode("node-b").dispatcher();
+
+        // 用户从节点A切换到节点B，节点A随后才感知到旧连接断开
+        EmbeddedChannel oldChannel = new EmbeddedChannel();
+        EmbeddedChannel newChannel = new EmbeddedChannel();
+        nodeA.bindUser("U4001", oldChannel);
+        nodeB.bindUser("U4001", newChannel);
+        nodeA.unbindChannel(oldChannel);
+
+        assertEquals(Set.of("node-b"), transport.getPresence("4001"));
+    }
+
+    @Test
+    void testRelayToDevicesOnEveryNode() throws Exception {
+        ChatDispatcher nodeA = newNode("node-a").dispatcher();
+        ChatDispatcher nodeB = newNode("node-b").dispatcher();
+
+        // 用户的手机连在节点A、桌面端连在节点B，节点A续期不覆盖节点B的登记
+        EmbeddedChannel phone = new EmbeddedChannel();
+        EmbeddedChannel desktop = new EmbeddedChannel();
+        nodeA.bindUser("U6001", phone);
+        nodeB.bindUser("U6001", desktop);
+        nodeA.refreshPresence();
+        assertEquals(Set.of("node-a", "node-b"), transport.getPresence("6001"));
+
+        // 节点A本地已写出，仍需转发给节点B
+        nodeA.sendToUser("U6001", ChatMessage.forward("single", "U6002", "U6001", "多端"));
+        TextWebSocketFrame phoneFrame = phone.readOutbound();
+        TextWebSocketFrame desktopFrame = desktop.readOutbound();
+        assertNotNull(phoneFrame);
+        assertNotNull(desktopFrame);
+        assertEquals("多端", new ObjectMapper().readTree(desktopFrame.text()).get("content").asText());
+        phoneFrame.release();
+        desktopFrame.release();
+
+        // 手机断开后只移除节点A的登记
+        nodeA.unbindChannel(phone);
+        assertEquals(Set.of("node-b"), transport.getPresence("6001"));
+    }
+
+    @Test
+    void testResumeDeliversMissedMessagesOnOtherNode() throws Exception {
+        Node nodeA = newNode("node-a");
+        Node nodeB = newNode("node-b");
+
+        // 用户此前离线期间收到的消息已落库
+        storedMessages.add(new ChatMsg(7L, 5003L, 5001L, "single", "离线期间", false, false, "s:5001_5003",
+                LocalDateTime.now()));
+
+        // 用户在节点B上线，没有令牌时从数据库补发离线消息并下发会话令牌
+        EmbeddedChannel oldChannel = new EmbeddedChannel();
+        assertTrue(nodeB.dispatcher().bindUser("U5001", oldChannel));
+        nodeB.sessions().onBound(oldChannel, "U5001", null, Runnable::run);
+        assertEquals(List.of(5001L), replayQueries);
+        TextWebSocketFrame replayed = oldChannel.readOutbound();
+        assertNotNull(replayed);
+        JsonNode offline = new ObjectMapper().readTree(replayed.text());
+        replayed.release();
+        assertEquals("离线期间", offline.get("content").asText());
+        assertEquals(7L, offline.get("id").asLong());
+        assertTrue(offline.get("offline").asBoolean());
+        assertEquals(List.of(7L), deliveredIds);
+
+        TextWebSocketFrame sessionFrame = oldChannel.readOutbound();
+        JsonNode session = new ObjectMapper().readTree(sessionFrame.text());
+        sessionFrame.release();
+        assertEquals(ChatMessage.SESSION, session.get("msgType").asText());
+        String token = session.get("content").asText();
+
+        // 节点B停机，用户断线期间节点A发来的消息进入会话缓冲区
+        nodeB.sessions().onUnbound(oldChannel);
+        nodeB.dispatcher().unbindChannel(oldChannel);
+        nodeA.dispatcher().sendToUser("U5001", ChatMessage.forward("single", "U5002", "U5001", "断线期间", 42L));
+
+        // 携带令牌重连到节点A，从缓冲区补发
+        EmbeddedChannel newChannel = new EmbeddedChannel();
+        assertTrue(nodeA.dispatcher().bindUser("U5001", newChannel));
+        nodeA.sessions().onBound(newChannel, "U5001", token, Runnable::run);
+
+        TextWebSocketFrame missed = newChannel.readOutbound();
+        assertNotNull(missed);
+        JsonNode json = new ObjectMapper().readTree(missed.text());
+        missed.release();
+        assertEquals("断线期间", json.get("content").asText());
+        assertEquals("42", json.get("msgId").asText());
+
+        // 令牌只能使用一次
+        TextWebSocketFrame newSession = newChannel.readOutbound();
+        assertEquals(ChatMessage.SESSION, new ObjectMapper().readTree(newSession.text()).get("msgType").asText());
+        newSession.release();
+        assertNull(transport.takeResumeToken(token));
+    }
+
+    private Node newNode(String nodeId) {
+        NettyConfig nettyConfig = new NettyConfig();
+        nettyConfig.setSlowConsumerPendingLimit(16);
+        nettyConfig.setSlowConsumerPolicy("drop");
+        nettyConfig.setOfflineBatchSize(1);
+        nettyConfig.setOfflineFlushIntervalMs(1);
+        nettyConfig.setOfflineQueueCapacity(1);
+        nettyConfig.setOfflineReplayPageSize(16);
+        nettyConfig.setResumeEnabled(true);
+        nettyConfig.setResumeWindowMs(60000);
+        nettyConfig.setResumeBufferSize(16);
+
+        ChatMetrics chatMetrics = new ChatMetrics(new SimpleMeterRegistry());
+        MissedMessageBuffer missedMessageBuffer = new MissedMessageBuffer(transport, nettyConfig);
+        UserChannelRegistry userChannelRegistry = new UserChannelRegistry();
+        ChatClusterRouter chatClusterRouter = new ChatClusterRouter(transport, true, nodeId, 30000);
+        OfflineMessageWriter offlineMessageWriter = new OfflineMessageWriter(chatMsgService,
+                missedMessageBuffer, userChannelRegistry, chatClusterRouter, chatMetrics, nettyConfig);
+        ChatChannelWriter chatChannelWriter = new ChatChannelWriter(offlineMessageWriter, userChannelRegistry,
+                chatMetrics, nettyConfig);
+        ChatDispatcher dispatcher = new ChatDispatcher(userChannelRegistry,
+                new GroupChannelRegistry(null, userChannelRegistry),
+                chatChannelWriter,
+                offlineMessageWriter,
+                chatClusterRouter,
+                new ChatAckTracker(chatChannelWriter, offlineMessageWriter, chatMetrics, nettyConfig),
+                new AvatarUpdateNotifier(null, userChannelRegistry, chatChannelWriter, chatClusterRouter,
+                        chatMetrics, nettyConfig),
+                chatMetrics);
+        dispatcher.subscribe();
+        ChatSessionManager sessions = new ChatSessionManager(transport, missedMessageBuffer, dispatcher,
+                offlineMessageWriter, new OfflineMessageReplayer(chatMsgService, offlineMessageWriter, chatMetrics, nettyConfig),
+                userChannelRegistry, chatMetrics, nettyConfig);
+        return new Node(dispatcher, sessions);
+    }
+
+    /**
+     * 只实现离线消息读写用到的方法，数据保存在storedMessages中
+     */
+    private ChatMsgService stubChatMsgService() {
+        return (ChatMsgService) Proxy.newProxyInstance(ChatMsgService.class.getClassLoader(),
+                new Class<?>[]{ChatMsgService.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "listUndelivered": {
+                            Long toId = (Long) args[0];
+                            long afterId = (Long) args[1];
+                            replayQueries.add(toId);
+                            return storedMessages.stream()
+                                    .filter(m -> m.getToId().equals(toId) && m.getId() > afterId && !m.getDelivered())
+                                    .sorted(Comparator.comparing(ChatMsg::getId))
+                                    .limit((Integer) args[2])
+                                    .collect(Collectors.toList());
+                        }
+                        case "markDelivered": {
+                            @SuppressWarnings("unchecked")
+                            List<Long> ids = (List<Long>) args[0];
+                            deliveredIds.addAll(ids);
+                            storedMessages.stream().filter(m -> ids.contains(m.getId())).forEach(m -> m.setDelivered(true));
+                            return null;
+                        }
+                        case "saveMessage": {
+                            ChatMsg chatMsg = (ChatMsg) args[0];
+                            chatMsg.setId(100L + storedMessages.size());
+                            chatMsg.setDelivered(false);
+                            storedMessages.add(chatMsg);
+                            return true;
+                        }
+                        case "toString":
+                            return "StubChatMsgService";
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private record Node(ChatDispatcher dispatcher, ChatSessionManager sessions) {
+    }
+}
@@ -0,0 +1,83 @@
+package com.xx.jaseatschoicejava.service;
+
+import com.xx.jaseatschoicejava.entity.Dish;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试菜品特征列存：位图筛选结果与逐个菜品比较的结果一致
+ */
+class DishFeaturesTest {
+
+    private static final String[] CATEGORIES = {"川菜", "粤菜", "轻食", null};
+
+    @Test
+    void testFiltersMatchPerDishComparison() {
+        // 跨越多个64位字且末尾不满一个字
+        List<Dish> dishes = randomDishes(150, new Random(42));
+        DishFeatures features = DishFeatures.of(dishes);
+        assertEquals(150, features.size());
+        assertEquals(150, features.cardinality(features.all()));
+
+        BigDecimal minPrice = new BigDecimal("12.345");
+        BigDecimal maxPrice = new BigDecimal("60");
+        long[] matched = features.all();
+        features.retainOnSale(matched);
+        features.retainCategory(matched, features.categoryId("轻食"));
+        features.retainCalorieBetween(matched, 200, 699);
+        features.retainPriceBetween(matched, DishFeatures.toCents(minPrice, RoundingMode.CEILING),
+                DishFeatures.toCents(maxPrice, RoundingMode.FLOOR));
+
+        List<Dish> expected = dishes.stream()
+                .filter(dish -> Boolean.TRUE.equals(dish.getStatus()))
+                .filter(dish -> "轻食".equals(dish.getCategory()))
+                .filter(dish -> dish.getCalorie() != null && dish.getCalorie() >= 200 && dish.getCalorie() <= 699)
+                .filter(dish -> dish.getPrice() != null
+                        && dish.getPrice().compareTo(minPrice) >= 0 && dish.getPrice().compareTo(maxPrice) <= 0)
+                .toList();
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, features.select(matched, dishes));
+    }
+
+    @Test
+    void testUnknownCategoryMatchesNothing() {
+        List<Dish> dishes = randomDishes(10, new Random(7));
+        DishFeatures features = DishFeatures.of(dishes);
+        long[] matched = features.all();
+        features.retainCategory(matched, features.categoryId("不存在的分类"));
+        assertEquals(0, features.cardinality(matched));
+        assertTrue(features.select(matched, dishes).isEmpty());
+    }
+
+    @Test
+    void testEmptyCatalog() {
+        DishFeatures features = DishFeatures.of(List.of());
+        long[] matched = features.all();
+        features.retainOnSale(matched);
+        features.retainCalorieBetween(matched, 0, 100);
+        assertEquals(0, matched.length);
+        assertTrue(features.select(matched, List.of()).isEmpty());
+    }
+
+    private static List<Dish> randomDishes(int count, Random random) {
+        List<Dish> dishes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Dish dish = new Dish();
+            dish.setId((long) i + 1);
+            dish.setName("菜品" + i);
+            dish.setCategory(CATEGORIES[random.nextInt(CATEGORIES.length)]);
+            dish.setCalorie(random.nextInt(10) == 0 ? null : random.nextInt(1000));
+            dish.setPrice(random.nextInt(10) == 0 ? null : BigDecimal.valueOf(random.nextInt(10000), 2));
+            dish.setStatus(random.nextInt(4) != 0);
+            dishes.add(dish);
+        }
+        return dishes;
+    }
+}
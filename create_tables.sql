@@ -14,3 +14,85 @@ CREATE TABLE IF NOT EXISTS `t_message_record` (
   KEY `idx_receiver_id` (`receiver_id`),
   KEY `idx_read_status` (`read_status`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='消息记录表';
+
+-- 消息记录游标分页索引：发出和收到的消息分别按(send_time, id)有序，替换原单列索引
+ALTER TABLE `t_message_record`
+  DROP KEY `idx_sender_id`, ADD KEY `idx_sender_time_id` (`sender_id`, `send_time`, `id`),
+  DROP KEY `idx_receiver_id`, ADD KEY `idx_receiver_time_id` (`receiver_id`, `send_time`, `id`);
+
+-- 已读水位补写索引：按接收者查询未读消息并按ID分批更新
+ALTER TABLE `t_message_record` ADD KEY `idx_receiver_read_id` (`receiver_id`, `read_status`, `id`);
+
+-- 已读水位表：批量标记已读只推进水位，消息行的read_status由后台任务分批补写
+CREATE TABLE IF NOT EXISTS `t_read_watermark` (
+  `id` bigint NOT NULL AUTO_INCREMENT COMMENT '主键ID',
+  `user_id` bigint NOT NULL COMMENT '用户ID',
+  `scope` varchar(20) NOT NULL COMMENT '水位范围 (record_all: 全部消息记录, record: 单个发送者的消息记录, chat: 单聊消息)',
+  `peer_id` bigint NOT NULL DEFAULT '0' COMMENT '对方用户ID，全部消息记录时为0',
+  `read_up_to_id` bigint NOT NULL COMMENT '已读到的消息ID',
+  `applied_up_to_id` bigint NOT NULL DEFAULT '0' COMMENT '已补写到消息行的水位',
+  `pending` tinyint NOT NULL DEFAULT '1' COMMENT '是否有待补写的消息行 (0: 否, 1: 是)',
+  `update_time` datetime DEFAULT NULL COMMENT '更新时间',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_user_scope_peer` (`user_id`, `scope`, `peer_id`),
+  KEY `idx_pending_time` (`pending`, `update_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='已读水位表';
+
+-- 聊天消息未读索引：按接收方查询未读消息并按ID分批
+ALTER TABLE `t_chat_msg` ADD KEY `idx_to_read_id` (`to_id`, `read_status`, `id`);
+
+-- 会话摘要表：每个用户的每个会话一行，随消息写入原子更新，会话列表按最后消息时间分页读取
+CREATE TABLE IF NOT EXISTS `t_chat_conversation` (
+  `id` bigint NOT NULL AUTO_INCREMENT COMMENT '主键ID',
+  `user_id` bigint NOT NULL COMMENT '会话所属用户ID',
+  `conv_type` varchar(20) NOT NULL COMMENT '会话类型 (single: 单聊, group: 群聊)',
+  `peer_id` bigint NOT NULL COMMENT '对方用户ID或群ID',
+  `last_msg_id` bigint DEFAULT NULL COMMENT '最后一条消息ID',
+  `last_from_id` bigint DEFAULT NULL COMMENT '最后一条消息的发送者ID',
+  `last_msg_type` varchar(20) DEFAULT NULL COMMENT '最后一条消息的类型',
+  `last_content` varchar(255) DEFAULT NULL COMMENT '最后一条消息内容摘要',
+  `unread_count` int NOT NULL DEFAULT '0' COMMENT '未读消息数',
+  `last_time` datetime(3) NOT NULL COMMENT '最后一条消息时间',
+  `update_time` datetime DEFAULT NULL COMMENT '更新时间',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_user_conv` (`user_id`, `conv_type`, `peer_id`),
+  KEY `idx_user_last_time` (`user_id`, `last_time`, `id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='会话摘要表';
+
+-- 由历史消息初始化会话摘要（只需执行一次）：单聊按双方各一行，群聊只为发过言的成员生成
+INSERT INTO `t_chat_conversation` (`user_id`, `conv_type`, `peer_id`, `last_msg_id`, `last_from_id`, `last_msg_type`,
+                                   `last_content`, `unread_count`, `last_time`, `update_time`)
+SELECT t.user_id, t.conv_type, t.peer_id, t.id, t.from_id, t.msg_type, LEFT(t.content, 255), t.unread_count, t.create_time, NOW()
+FROM (
+  SELECT s.*,
+         ROW_NUMBER() OVER (PARTITION BY s.user_id, s.conv_type, s.peer_id ORDER BY s.create_time DESC, s.id DESC) AS rn,
+         SUM(s.unread) OVER (PARTITION BY s.user_id, s.conv_type, s.peer_id) AS unread_count
+  FROM (
+    SELECT m.id, m.from_id, m.msg_type, m.content, m.create_time, m.from_id AS user_id,
+           IF(m.msg_type = 'group', 'group', 'single') AS conv_type, m.to_id AS peer_id, 0 AS unread
+    FROM `t_chat_msg` m WHERE m.from_id <> 0
+    UNION ALL
+    SELECT m.id, m.from_id, m.msg_type, m.content, m.create_time, m.to_id AS user_id,
+           'single' AS conv_type, m.from_id AS peer_id, IF(m.read_status = 0, 1, 0) AS unread
+    FROM `t_chat_msg` m WHERE m.msg_type <> 'group' AND m.to_id <> m.from_id
+  ) s
+) t
+WHERE t.rn = 1
+ON DUPLICATE KEY UPDATE `user_id` = `user_id`;
+
+-- 聊天记录游标分页：会话键（单聊为s:较小用户ID_较大用户ID，群聊为g:群ID）及(conversation_key, id)索引
+ALTER TABLE `t_chat_msg` ADD COLUMN `conversation_key` varchar(64) DEFAULT NULL COMMENT '会话键' AFTER `read_status`,
+  ADD KEY `idx_conversation_id` (`conversation_key`, `id`);
+
+-- 回填历史消息的会话键（只需执行一次）
+UPDATE `t_chat_msg`
+SET `conversation_key` = IF(`msg_type` = 'group', CONCAT('g:', `to_id`),
+                            CONCAT('s:', LEAST(`from_id`, `to_id`), '_', GREATEST(`from_id`, `to_id`)))
+WHERE `conversation_key` IS NULL;
+
+-- 离线消息投递状态：与已读状态分开，补发按(to_id, delivered, id)分页查询未投递消息
+ALTER TABLE `t_chat_msg` ADD COLUMN `delivered` tinyint NOT NULL DEFAULT '0' COMMENT '投递状态 (0: 未投递, 1: 已投递)' AFTER `read_status`,
+  ADD KEY `idx_to_delivered_id` (`to_id`, `delivered`, `id`);
+
+-- 迁移前的历史消息已由旧的补发流程处理过，全部视为已投递，避免上线后被当作未投递消息再次补发（只需在加列后执行一次）
+UPDATE `t_chat_msg` SET `delivered` = 1;